@@ -0,0 +1,66 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.ExpressionClassGenerator;
+import org.juancampos.engine.ExpressionCompiler;
+import org.juancampos.engine.GeneratedExpression;
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.LexerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of one row by the interpreter (interpreted) and by the class generated for the expression (generated),
+ * and the one time cost of generating and loading the class (generate).
+ * The fork disables the generation threshold, so the interpreted score is never served by the generated class.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-D" + CompiledExpression.GENERATION_THRESHOLD_PROPERTY + "=0")
+@State(Scope.Thread)
+public class BytecodeTierBenchmark {
+    @Param({"formula", "readmeNestedLet", "letChain100"})
+    public String expression;
+
+    private CompiledExpression compiled;
+    private GeneratedExpression generated;
+    private final long[] row = {123_456, 789, 42};
+
+    @Setup
+    public void setUp() {
+        if ("formula".equals(expression)) {
+            compiled = EvaluatorService.getInstance().compile(ColumnarBenchmark.FORMULA, "a", "b", "c");
+        } else { //not optimized, the optimizer folds them into a single PUSH
+            compiled = ExpressionCompiler.compile(LexerService.getInstance().lex(Expressions.of(expression)).getCommand());
+        }
+        generated = ExpressionClassGenerator.generate(compiled);
+    }
+
+    @Benchmark
+    public long interpreted() {
+        return compiled.evaluate(row);
+    }
+
+    @Benchmark
+    public long generated() {
+        return generated.evaluate(row);
+    }
+
+    @Benchmark
+    public GeneratedExpression generate() {
+        return ExpressionClassGenerator.generate(compiled);
+    }
+}
@@ -0,0 +1,84 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.engine.ColumnarEvaluator;
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.services.CalculatorService;
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.ICalculatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One formula over columns of a, b and c: evaluated a block of rows at a time (columnar), a row at a time with the
+ * values bound to the parameters (rowAtATime), and as before parameters, one let wrapped string per row through
+ * CalculatorService.calculate (letWrappedRows). The score is the time of the whole batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColumnarBenchmark {
+    static final String FORMULA = "let(t, mult(a, b), add(t, sub(div(t, c), mult(c, 3))))";
+    static final String NORMALIZED_FORMULA = "#(T,*(A,B),+(T,_(/(T,C),*(C,3))))";
+
+    @Param({"1000", "65536", "1048576"})
+    public int rows;
+
+    private long[][] columns;
+    private long[] results;
+    private CompiledExpression compiled;
+    private ColumnarEvaluator columnar;
+    private final ICalculatorService calculator = CalculatorService.getInstance();
+    private final StringBuilder row = new StringBuilder();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(rows);
+        columns = new long[3][rows];
+        for (int i = 0; i < rows; i++) {
+            columns[0][i] = random.nextInt(1_000_000);
+            columns[1][i] = random.nextInt(1_000);
+            columns[2][i] = random.nextInt(100) + 1;
+        }
+        results = new long[rows];
+        compiled = EvaluatorService.getInstance().compile(FORMULA, "a", "b", "c");
+        columnar = new ColumnarEvaluator(compiled);
+    }
+
+    @Benchmark
+    public long[] columnar() {
+        columnar.evaluate(columns, results);
+        return results;
+    }
+
+    @Benchmark
+    public long[] rowAtATime() {
+        compiled.evaluate(columns, results);
+        return results;
+    }
+
+    @Benchmark
+    public long[] letWrappedRows() {
+        for (int i = 0; i < rows; i++) {
+            row.setLength(0);
+            row.append("#(A,").append(columns[0][i]).append(",#(B,").append(columns[1][i]).append(",#(C,")
+                    .append(columns[2][i]).append(',').append(NORMALIZED_FORMULA).append(")))");
+            results[i] = calculator.calculate(row.toString());
+        }
+        return results;
+    }
+}
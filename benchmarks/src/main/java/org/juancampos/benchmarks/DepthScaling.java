@@ -0,0 +1,88 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.ExpressionCompiler;
+import org.juancampos.engine.ExpressionOptimizer;
+import org.juancampos.enums.EvaluationStatus;
+import org.juancampos.services.LexerService;
+import org.juancampos.services.ValidatorService;
+import org.juancampos.utils.LexedCommand;
+
+/**
+ * Scaling of the engine with the nesting depth of the expression, to check the time per level stays flat:
+ * java -cp benchmarks/target/benchmarks.jar org.juancampos.benchmarks.DepthScaling [depths...]
+ * For an add chain and a let chain of every depth (10, 1000, 100000 and 1000000 by default) it lexes, validates,
+ * compiles and evaluates the expression, without the cache, then optimizes the compiled expression, and prints
+ * the nanoseconds per level of both with a bar of the pipeline time per level.
+ * Every measure is repeated until it has run over at least two million levels, after a warm up of as many.
+ */
+public class DepthScaling {
+    private static final long LEVELS_PER_MEASURE = 2_000_000;
+    private static final double NANOS_PER_BAR_CHARACTER = 20;
+
+    public static void main(String[] args) {
+        int[] depths = {10, 1000, 100000, 1000000};
+        if (args.length > 0) {
+            depths = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                depths[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.printf("%-9s %9s %14s %14s%n", "shape", "depth", "pipeline ns/lv", "optimize ns/lv");
+        for (String shape : new String[] {"addChain", "letChain"}) {
+            for (int depth : depths) {
+                String expression = Expressions.of(shape + depth);
+                int repetitions = (int) Math.max(1, LEVELS_PER_MEASURE / depth);
+                pipeline(expression, repetitions);
+                double pipeline = pipeline(expression, repetitions) / repetitions / depth;
+                CompiledExpression compiled = compile(expression);
+                optimize(compiled, repetitions);
+                double optimize = optimize(compiled, repetitions) / repetitions / depth;
+                System.out.printf("%-9s %9d %14.1f %14.1f %s%n", shape, depth, pipeline, optimize, bar(pipeline));
+            }
+        }
+    }
+
+    private static double pipeline(String expression, int repetitions) {
+        long sum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            sum += compile(expression).evaluate();
+        }
+        double elapsed = System.nanoTime() - start;
+        if (sum == 0) {
+            throw new IllegalStateException("Unexpected result " + sum);
+        }
+        return elapsed;
+    }
+
+    private static double optimize(CompiledExpression compiled, int repetitions) {
+        long sum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            sum += ExpressionOptimizer.optimize(compiled).size();
+        }
+        double elapsed = System.nanoTime() - start;
+        if (sum == 0) {
+            throw new IllegalStateException("Empty optimized program");
+        }
+        return elapsed;
+    }
+
+    private static CompiledExpression compile(String expression) {
+        LexedCommand command = LexerService.getInstance().lex(expression);
+        EvaluationStatus status = ValidatorService.getInstance().check(command);
+        if (status != EvaluationStatus.OK) {
+            throw new IllegalStateException(status.getMessage());
+        }
+        return ExpressionCompiler.compile(command.getCommand());
+    }
+
+    private static String bar(double nanosPerLevel) {
+        StringBuilder bar = new StringBuilder();
+        for (int i = 0; i < Math.round(nanosPerLevel / NANOS_PER_BAR_CHARACTER); i++) {
+            bar.append('#');
+        }
+        return bar.toString();
+    }
+}
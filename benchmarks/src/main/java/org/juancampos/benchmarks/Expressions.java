@@ -0,0 +1,114 @@
+package org.juancampos.benchmarks;
+
+/**
+ * The inputs of the benchmarks, by name: the README examples, let chains where every let binds the
+ * previous variable plus one and add chains adding one constant per level.
+ * letChain100 is let(Q, 1, let(W, add(Q, 1), ... add(.., 1))) with 100 lets, addChain100 is add(1, add(2, ... add(99, 100))).
+ * multChain100 is mult(3, mult(3, ... mult(3, 3))) with 100 mults, a long overflows after 39 of them.
+ * repeated100 adds 100 copies of the constant subtree mult(add(2, 2), div(9, 3)), the shape of the generated expressions.
+ */
+final class Expressions {
+    static final String README_ADD = "add(1, 2)";
+    static final String README_MULT = "mult(add(2, 2), div(9, 3))";
+    static final String README_LET = "let(a, 5, let(b, mult(a, 10), add(b, a)))";
+    static final String README_NESTED_LET = "let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))";
+    private static final String LET_CHAIN = "letChain";
+    private static final String ADD_CHAIN = "addChain";
+    private static final String MULT_CHAIN = "multChain";
+    private static final String REPEATED = "repeated";
+    private static final String REPEATED_SUBTREE = "mult(add(2, 2), div(9, 3))";
+    private static final char[] NAME_LETTERS = {'Q', 'W', 'X', 'Y', 'Z'}; //not in any keyword, so never substituted
+
+    private Expressions() {
+        // static inputs only
+    }
+
+    /**
+     * @param name readmeAdd, readmeMult, readmeLet, readmeNestedLet, letChain{n}, addChain{n}, multChain{n} or repeated{n}
+     * @return The raw expression, as typed on the command line.
+     */
+    static String of(String name) {
+        switch (name) {
+            case "readmeAdd":
+                return README_ADD;
+            case "readmeMult":
+                return README_MULT;
+            case "readmeLet":
+                return README_LET;
+            case "readmeNestedLet":
+                return README_NESTED_LET;
+            default:
+                if (name.startsWith(LET_CHAIN)) {
+                    return letChain(Integer.parseInt(name.substring(LET_CHAIN.length())));
+                }
+                if (name.startsWith(ADD_CHAIN)) {
+                    return addChain(Integer.parseInt(name.substring(ADD_CHAIN.length())));
+                }
+                if (name.startsWith(MULT_CHAIN)) {
+                    return multChain(Integer.parseInt(name.substring(MULT_CHAIN.length())));
+                }
+                if (name.startsWith(REPEATED)) {
+                    return repeated(Integer.parseInt(name.substring(REPEATED.length())));
+                }
+                throw new IllegalArgumentException("Unknown expression " + name);
+        }
+    }
+
+    static String letChain(int lets) {
+        StringBuilder expression = new StringBuilder();
+        expression.append("let(").append(variable(0)).append(", 1, ");
+        for (int i = 1; i < lets; i++) {
+            expression.append("let(").append(variable(i)).append(", add(").append(variable(i - 1)).append(", 1), ");
+        }
+        expression.append("add(").append(variable(lets - 1)).append(", 1)");
+        for (int i = 0; i < lets; i++) {
+            expression.append(')');
+        }
+        return expression.toString();
+    }
+
+    static String addChain(int adds) {
+        StringBuilder expression = new StringBuilder();
+        for (int i = 1; i <= adds; i++) {
+            expression.append("add(").append(i).append(", ");
+        }
+        expression.append(adds + 1);
+        for (int i = 0; i < adds; i++) {
+            expression.append(')');
+        }
+        return expression.toString();
+    }
+
+    static String multChain(int mults) {
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < mults; i++) {
+            expression.append("mult(3, ");
+        }
+        expression.append(3);
+        for (int i = 0; i < mults; i++) {
+            expression.append(')');
+        }
+        return expression.toString();
+    }
+
+    static String repeated(int copies) {
+        StringBuilder expression = new StringBuilder();
+        for (int i = 1; i < copies; i++) {
+            expression.append("add(").append(REPEATED_SUBTREE).append(", ");
+        }
+        expression.append(REPEATED_SUBTREE);
+        for (int i = 1; i < copies; i++) {
+            expression.append(')');
+        }
+        return expression.toString();
+    }
+
+    static String variable(int index) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append(NAME_LETTERS[index % NAME_LETTERS.length]);
+            index /= NAME_LETTERS.length;
+        } while (index > 0);
+        return name.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.journal.EvaluationJournal;
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.IEvaluatorService;
+import org.juancampos.utils.EvaluationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the evaluation journal on EvaluatorService.evaluate: without a journal, and with one written to a
+ * temporary directory. The teardown prints how many records the writer thread wrote and how many were dropped
+ * because it fell behind; on one core it shares the core with the benchmark thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JournalBenchmark {
+    @Param({"readmeAdd", "readmeNestedLet", "letChain100"})
+    public String expression;
+
+    @Param({"off", "on"})
+    public String journal;
+
+    private final IEvaluatorService evaluator = EvaluatorService.getInstance();
+    private String raw;
+    private Path directory;
+    private EvaluationJournal evaluationJournal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        raw = Expressions.of(expression);
+        if ("on".equals(journal)) {
+            directory = Files.createTempDirectory("journal-benchmark");
+            evaluationJournal = new EvaluationJournal(directory);
+            evaluator.setJournal(evaluationJournal);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (evaluationJournal != null) {
+            evaluator.setJournal(null);
+            evaluationJournal.close();
+            System.out.println("Journal: " + evaluationJournal.getWritten() + " written, " + evaluationJournal.getDropped() + " dropped");
+            File[] segments = directory.toFile().listFiles();
+            if (segments != null) {
+                for (File segment : segments) {
+                    segment.delete();
+                }
+            }
+            directory.toFile().delete();
+        }
+    }
+
+    @Benchmark
+    public EvaluationResult evaluate() {
+        return evaluator.evaluate(raw);
+    }
+}
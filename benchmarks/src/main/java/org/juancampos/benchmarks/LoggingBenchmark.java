@@ -0,0 +1,65 @@
+package org.juancampos.benchmarks;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.services.CalculatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the engine diagnostics with the default ERROR level of log4j2.xml.
+ * eagerDebugFormat is the pattern the engine used before, formatting the message and boxing the
+ * argument before LOGGER.debug throws it away. guardedDebugFormat is the pattern it uses now.
+ * evaluateTraced is the compiled evaluation, which only checks the DEBUG level once per call.
+ * Run with -prof gc to see the allocation of each pattern.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoggingBenchmark {
+    private static final Logger LOGGER = LogManager.getLogger(CalculatorService.class.getName());
+
+    private long value;
+    private CompiledExpression compiled;
+
+    @Setup
+    public void setUp() {
+        compiled = CalculatorService.getInstance().compile("#(A,#(B,10,+(B,B)),#(B,20,+(A,B)))");
+    }
+
+    @Benchmark
+    public long eagerDebugFormat() {
+        value++;
+        LOGGER.debug(MessageFormat.format(CalculatorService.NUMBER_STACK_PUSH, value));
+        return value;
+    }
+
+    @Benchmark
+    public long guardedDebugFormat() {
+        value++;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format(CalculatorService.NUMBER_STACK_PUSH, value));
+        }
+        return value;
+    }
+
+    @Benchmark
+    public long evaluateTraced() {
+        return compiled.evaluate();
+    }
+}
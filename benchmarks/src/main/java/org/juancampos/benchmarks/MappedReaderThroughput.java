@@ -0,0 +1,133 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.batch.BatchRunner;
+import org.juancampos.batch.MappedExpressionReader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Throughput of the batch mode over a generated expression file, read with a BufferedReader
+ * (a String per line) and with the MappedExpressionReader (lines lexed from the mapped bytes).
+ * This is a single pass over a multi GB file, so it is a plain program instead of a JMH benchmark:
+ * java -cp benchmarks/target/benchmarks.jar org.juancampos.benchmarks.MappedReaderThroughput [megabytes] [file] [buffered|mapped]
+ * The file is generated once and kept, so the operating system cache is warm for both readers.
+ * Run each reader in its own JVM: in the same JVM the lexer sees two CharSequence classes and the
+ * reader measured second pays for the call sites the first one left behind.
+ */
+public class MappedReaderThroughput {
+    private static final String[] TEMPLATES = {
+            "add(%d, %d)",
+            "add(%d, mult(%d, 3))",
+            "mult(add(%d, 2), div(%d, 3))",
+            "let(a, %d, add(a, %d))",
+            "let(a, %d, let(b, mult(a, 10), add(b, %d)))",
+            "let(a, let(b, %d, add(b, b)), let(b, %d, add(a, b)))"};
+
+    public static void main(String[] args) throws IOException {
+        long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 2048;
+        Path file = Paths.get(args.length > 1 ? args[1] : "target/expressions-" + megabytes + "mb.txt");
+        if (!Files.exists(file) || Files.size(file) < megabytes << 20) {
+            generate(file, megabytes << 20);
+        }
+        double size = Files.size(file) / (double) (1 << 20);
+        System.out.printf("File %s, %.0f MB%n", file, size);
+        String readers = args.length > 2 ? args[2] : "buffered,mapped";
+        for (int round = 1; round <= 2; round++) { //the first round warms up the JIT
+            if (readers.contains("buffered")) {
+                report("BufferedReader read", round, size, readBuffered(file));
+                report("BufferedReader evaluate", round, size, bufferedReader(file));
+            }
+            if (readers.contains("mapped")) {
+                report("Mapped read", round, size, readMapped(file));
+                report("Mapped evaluate", round, size, mapped(file));
+            }
+        }
+    }
+
+    private static long[] readBuffered(Path file) throws IOException {
+        long lines = 0;
+        long characters = 0;
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                characters += line.length();
+            }
+        }
+        return new long[]{lines, System.nanoTime() - start, characters};
+    }
+
+    private static long[] readMapped(Path file) throws IOException {
+        long[] characters = new long[1];
+        long start = System.nanoTime();
+        long lines = new MappedExpressionReader(file).forEachLine(line -> characters[0] += line.length());
+        return new long[]{lines, System.nanoTime() - start, characters[0]};
+    }
+
+    private static long[] bufferedReader(Path file) throws IOException {
+        BatchRunner batchRunner = new BatchRunner();
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            batchRunner.run(reader, new NullWriter());
+        }
+        return new long[]{batchRunner.getLines(), System.nanoTime() - start};
+    }
+
+    private static long[] mapped(Path file) throws IOException {
+        BatchRunner batchRunner = new BatchRunner();
+        long start = System.nanoTime();
+        batchRunner.run(new MappedExpressionReader(file), new NullWriter());
+        return new long[]{batchRunner.getLines(), System.nanoTime() - start};
+    }
+
+    private static void report(String reader, int round, double megabytes, long[] linesAndNanos) {
+        double seconds = linesAndNanos[1] / 1e9;
+        System.out.printf("round %d %-24s %,d expressions in %.2f s: %,.0f expressions/s, %.1f MB/s%n",
+                round, reader, linesAndNanos[0], seconds, linesAndNanos[0] / seconds, megabytes / seconds);
+    }
+
+    static void generate(Path file, long bytes) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Random random = new Random(42);
+        long written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            while (written < bytes) {
+                String line = String.format(TEMPLATES[random.nextInt(TEMPLATES.length)], random.nextInt(1000), random.nextInt(1000) + 1);
+                writer.write(line);
+                writer.write('\n');
+                written += line.length() + 1;
+            }
+        }
+    }
+
+    static final class NullWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            // results are discarded
+        }
+
+        @Override
+        public void write(String text) {
+            // results are discarded
+        }
+
+        @Override
+        public void flush() {
+            // nothing to flush
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
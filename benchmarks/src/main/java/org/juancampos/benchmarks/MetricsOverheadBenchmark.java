@@ -0,0 +1,60 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.metrics.CalculatorMetrics;
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.IEvaluatorService;
+import org.juancampos.utils.EvaluationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics on the whole pipeline of EvaluatorService.evaluate, lexer, validator and cached
+ * calculation. The metrics are configured when the JVM starts, so every variant has its own fork:
+ * disabled, the default sampling, and every evaluation timed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class MetricsOverheadBenchmark {
+    @Param({"readmeAdd", "readmeMult", "readmeNestedLet", "letChain100"})
+    public String expression;
+
+    private final IEvaluatorService evaluator = EvaluatorService.getInstance();
+    private String raw;
+
+    @Setup
+    public void setUp() {
+        raw = Expressions.of(expression);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-D" + CalculatorMetrics.ENABLED_PROPERTY + "=false")
+    public EvaluationResult disabled() {
+        return evaluator.evaluate(raw);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public EvaluationResult sampled() {
+        return evaluator.evaluate(raw);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-D" + CalculatorMetrics.SAMPLE_PROPERTY + "=1")
+    public EvaluationResult everyEvaluationTimed() {
+        return evaluator.evaluate(raw);
+    }
+}
@@ -0,0 +1,63 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.ExpressionCompiler;
+import org.juancampos.engine.NumericEvaluator;
+import org.juancampos.services.LexerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of the program of the compiler in the three numeric modes, without the cache or the optimizer:
+ * wrapping longs, checked longs and BigInteger promotion. multChain100 overflows, so the checked mode measures
+ * failing fast and the big mode the promoted arithmetic.
+ * The fork disables the generation threshold, so the wrapping score is the interpreter's.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-D" + CompiledExpression.GENERATION_THRESHOLD_PROPERTY + "=0")
+@State(Scope.Thread)
+public class NumericModeBenchmark {
+    @Param({"readmeAdd", "readmeMult", "readmeNestedLet", "letChain100", "addChain1000", "multChain100"})
+    public String expression;
+
+    private CompiledExpression compiled;
+
+    @Setup
+    public void setUp() {
+        compiled = ExpressionCompiler.compile(LexerService.getInstance().lex(Expressions.of(expression)).getCommand());
+    }
+
+    @Benchmark
+    public long wrapping() {
+        return compiled.evaluate();
+    }
+
+    @Benchmark
+    public long checked() {
+        try {
+            return NumericEvaluator.evaluateChecked(compiled);
+        } catch (ArithmeticException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    @Benchmark
+    public BigInteger big() {
+        return NumericEvaluator.evaluateBig(compiled);
+    }
+}
@@ -0,0 +1,58 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.ExpressionCompiler;
+import org.juancampos.engine.ExpressionOptimizer;
+import org.juancampos.services.LexerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of the compiled program as it comes from the compiler (evaluateCompiled) and once optimized
+ * (evaluateOptimized), without the cached results, and the one time cost of the optimization (optimize).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OptimizerBenchmark {
+    @Param({"readmeNestedLet", "letChain100", "addChain100", "repeated100"})
+    public String expression;
+
+    private CompiledExpression compiled;
+    private CompiledExpression optimized;
+
+    @Setup
+    public void setUp() {
+        compiled = ExpressionCompiler.compile(LexerService.getInstance().lex(Expressions.of(expression)).getCommand());
+        optimized = ExpressionOptimizer.optimize(compiled);
+    }
+
+    @Benchmark
+    public long evaluateCompiled() {
+        return compiled.evaluate();
+    }
+
+    @Benchmark
+    public long evaluateOptimized() {
+        return optimized.evaluate();
+    }
+
+    @Benchmark
+    public CompiledExpression optimize() {
+        return ExpressionOptimizer.optimize(compiled);
+    }
+}
@@ -0,0 +1,51 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.batch.BatchRunner;
+import org.juancampos.batch.MappedExpressionReader;
+import org.juancampos.batch.ParallelBatchRunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Scaling of the parallel batch mode with the number of threads, over a generated expression file:
+ * java -cp benchmarks/target/benchmarks.jar org.juancampos.benchmarks.ParallelBatchScaling [megabytes] [file] [max threads]
+ * The sequential BatchRunner is the baseline, then the ParallelBatchRunner runs with 1, 2, 4... threads up to the
+ * number of cores. Every run goes over the whole file once after a warm up run.
+ */
+public class ParallelBatchScaling {
+    public static void main(String[] args) throws IOException {
+        long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 512;
+        Path file = Paths.get(args.length > 1 ? args[1] : "target/expressions-" + megabytes + "mb.txt");
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        if (!Files.exists(file) || Files.size(file) < megabytes << 20) {
+            MappedReaderThroughput.generate(file, megabytes << 20);
+        }
+        System.out.printf("File %s, %d MB, %d cores%n", file, Files.size(file) >> 20, Runtime.getRuntime().availableProcessors());
+        sequential(file);
+        double baseline = sequential(file);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            parallel(file, threads, baseline);
+            parallel(file, threads, baseline);
+        }
+    }
+
+    private static double sequential(Path file) throws IOException {
+        BatchRunner batchRunner = new BatchRunner();
+        long start = System.nanoTime();
+        batchRunner.run(new MappedExpressionReader(file), new MappedReaderThroughput.NullWriter());
+        double rate = batchRunner.getLines() / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("sequential          %,12.0f expressions/s%n", rate);
+        return rate;
+    }
+
+    private static void parallel(Path file, int threads, double baseline) throws IOException {
+        ParallelBatchRunner batchRunner = new ParallelBatchRunner(threads);
+        long start = System.nanoTime();
+        batchRunner.run(new MappedExpressionReader(file), new MappedReaderThroughput.NullWriter());
+        double rate = batchRunner.getLines() / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("parallel %3d threads %,12.0f expressions/s, speedup %.2f%n", threads, rate, rate / baseline);
+    }
+}
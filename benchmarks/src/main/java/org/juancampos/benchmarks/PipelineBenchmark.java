@@ -0,0 +1,127 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.engine.ExpressionCache;
+import org.juancampos.services.CalculatorService;
+import org.juancampos.services.ICalculatorService;
+import org.juancampos.services.IValidatorService;
+import org.juancampos.services.LexerService;
+import org.juancampos.services.ValidatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of every step of the command line path, for the README examples and for let and add chains
+ * of growing depth (see Expressions).
+ * validate is ValidatorService.validate on the substituted command, substituteOperators is
+ * Calculator.substituteOperators on the normalized command, calculate is CalculatorService.calculate,
+ * served by the expression cache after the first call, compileAndEvaluate is the same without the cache,
+ * and call is Calculator.call() end to end, printing to a discarded System.out.
+ * Run with -prof gc to get the allocation rate and the bytes allocated per operation next to the ops/s:
+ * java -jar benchmarks/target/benchmarks.jar PipelineBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineBenchmark {
+    @Param({"readmeAdd", "readmeMult", "readmeLet", "readmeNestedLet",
+            "letChain10", "letChain100", "letChain1000", "addChain10", "addChain100", "addChain1000"})
+    public String expression;
+
+    private final IValidatorService validator = ValidatorService.getInstance();
+    private final ICalculatorService calculator = CalculatorService.getInstance();
+    private final ExpressionCache noCache = new ExpressionCache(0);
+    private String normalized;
+    private String command;
+    private MethodHandle substituteOperators;
+    private Callable<?> commandLine;
+    private PrintStream standardOutput;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        String raw = Expressions.of(expression);
+        normalized = LexerService.getInstance().normalize(Collections.singletonList(raw));
+        command = LexerService.getInstance().substituteOperators(normalized);
+        //Calculator lives in the default package, so it can only be reached by reflection
+        Class<?> calculatorClass = Class.forName("Calculator");
+        Object instance = calculatorClass.getDeclaredConstructor().newInstance();
+        field(calculatorClass, "operations").set(instance, Collections.singletonList(new StringBuilder(raw)));
+        field(calculatorClass, "loglevel").set(instance, "ERROR");
+        field(calculatorClass, "threads").set(instance, 1);
+        commandLine = (Callable<?>) instance;
+        Method substitute = calculatorClass.getDeclaredMethod("substituteOperators", String.class);
+        substitute.setAccessible(true);
+        substituteOperators = MethodHandles.lookup().unreflect(substitute).bindTo(instance);
+        standardOutput = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // the results of call() are discarded
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                // the results of call() are discarded
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(standardOutput);
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return validator.validate(command);
+    }
+
+    @Benchmark
+    public String substituteOperators() throws Throwable {
+        return (String) substituteOperators.invokeExact(normalized);
+    }
+
+    @Benchmark
+    public long calculate() {
+        return calculator.calculate(command);
+    }
+
+    @Benchmark
+    public long compileAndEvaluate() {
+        return noCache.evaluate(command);
+    }
+
+    @Benchmark
+    public Object call() throws Exception {
+        return commandLine.call();
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+}
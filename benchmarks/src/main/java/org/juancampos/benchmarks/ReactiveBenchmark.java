@@ -0,0 +1,98 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.ReactiveExpression;
+import org.juancampos.services.CalculatorService;
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.ICalculatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of a pricing formula over many inputs, where a single input changes per tick: the formula is a balanced
+ * sum of one product per input. The tick recomputes it incrementally with a ReactiveExpression (reactiveTick),
+ * evaluates the whole row with the compiled expression (rowTick), or calculates the whole let wrapped string, as
+ * before parameters (letWrappedTick), which compiles a new string on every tick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReactiveBenchmark {
+    @Param({"16", "256", "4096"})
+    public int inputs;
+
+    private String[] names;
+    private long[] row;
+    private String formula;
+    private CompiledExpression compiled;
+    private ReactiveExpression reactive;
+    private final ICalculatorService calculator = CalculatorService.getInstance();
+    private final StringBuilder letWrapped = new StringBuilder();
+    private final Random random = new Random(20);
+
+    @Setup
+    public void setUp() {
+        names = new String[inputs];
+        row = new long[inputs];
+        for (int i = 0; i < inputs; i++) {
+            names[i] = Expressions.variable(i);
+            row[i] = random.nextInt(1000);
+        }
+        formula = sum(0, inputs);
+        compiled = EvaluatorService.getInstance().compile(formula, names);
+        reactive = new ReactiveExpression(compiled, row);
+    }
+
+    @Benchmark
+    public long reactiveTick() {
+        int input = random.nextInt(inputs);
+        row[input] = random.nextInt(1000);
+        reactive.set(input, row[input]);
+        return reactive.recompute();
+    }
+
+    @Benchmark
+    public long rowTick() {
+        int input = random.nextInt(inputs);
+        row[input] = random.nextInt(1000);
+        return compiled.evaluate(row);
+    }
+
+    @Benchmark
+    public long letWrappedTick() {
+        int input = random.nextInt(inputs);
+        row[input] = random.nextInt(1000);
+        letWrapped.setLength(0);
+        for (int i = 0; i < inputs; i++) {
+            letWrapped.append("#(").append(names[i]).append(',').append(row[i]).append(',');
+        }
+        letWrapped.append(compiled.getSource());
+        for (int i = 0; i < inputs; i++) {
+            letWrapped.append(')');
+        }
+        return calculator.calculate(letWrapped.toString());
+    }
+
+    private String sum(int from, int to) {
+        if (to - from == 1) {
+            return "mult(" + names[from] + ", " + (from % 7 + 1) + ")";
+        }
+        int middle = (from + to) >>> 1;
+        return "add(" + sum(from, middle) + ", " + sum(middle, to) + ")";
+    }
+}
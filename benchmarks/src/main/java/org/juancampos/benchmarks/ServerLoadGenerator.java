@@ -0,0 +1,108 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.server.CalculatorServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for the server mode. It opens many connections and keeps every one of them busy with
+ * pipelined expressions: each round writes a window of lines to every connection of a client thread and
+ * then reads back all the replies, checking their values and order.
+ * java -cp benchmarks/target/benchmarks.jar org.juancampos.benchmarks.ServerLoadGenerator [connections] [pipeline] [seconds] [port]
+ * Without a port a server is started in the same JVM with one reactor per core. Start one with
+ * java -jar target/Calculator-1.0-SNAPSHOT-jar-with-dependencies.jar --server 7070 to measure it on its own.
+ */
+public class ServerLoadGenerator {
+    private static final int CONNECTIONS_PER_THREAD = 64;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int pipeline = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        CalculatorServer server = args.length > 3 ? null : new CalculatorServer(0, Runtime.getRuntime().availableProcessors());
+        int port = server == null ? Integer.parseInt(args[3]) : server.getPort();
+        AtomicLong replies = new AtomicLong();
+        AtomicLong rounds = new AtomicLong();
+        AtomicLong roundNanos = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> clients = new ArrayList<>();
+        for (int first = 0; first < connections; first += CONNECTIONS_PER_THREAD) {
+            int count = Math.min(CONNECTIONS_PER_THREAD, connections - first);
+            Thread client = new Thread(() -> {
+                try {
+                    run(port, count, pipeline, deadline, replies, rounds, roundNanos);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, "load-generator-" + clients.size());
+            clients.add(client);
+            client.start();
+        }
+        long start = System.nanoTime();
+        for (Thread client : clients) {
+            client.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d connections, pipeline of %d, %d client threads: %,.0f expressions/s, mean round trip %.2f ms%n",
+                connections, pipeline, clients.size(), replies.get() / elapsed, roundNanos.get() / 1e6 / Math.max(1, rounds.get()));
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private static void run(int port, int count, int pipeline, long deadline,
+                            AtomicLong replies, AtomicLong rounds, AtomicLong roundNanos) throws IOException {
+        Socket[] sockets = new Socket[count];
+        OutputStream[] outputs = new OutputStream[count];
+        BufferedReader[] inputs = new BufferedReader[count];
+        for (int i = 0; i < count; i++) {
+            sockets[i] = new Socket(InetAddress.getLoopbackAddress(), port);
+            sockets[i].setTcpNoDelay(true);
+            outputs[i] = sockets[i].getOutputStream();
+            inputs[i] = new BufferedReader(new InputStreamReader(sockets[i].getInputStream(), StandardCharsets.UTF_8));
+        }
+        Random random = new Random(count);
+        long[][] expected = new long[count][pipeline];
+        StringBuilder window = new StringBuilder();
+        try {
+            while (System.nanoTime() < deadline) {
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    window.setLength(0);
+                    for (int line = 0; line < pipeline; line++) {
+                        int a = random.nextInt(1000);
+                        int b = random.nextInt(1000);
+                        expected[i][line] = a + b * 3L;
+                        window.append("let(x, ").append(b).append(", add(").append(a).append(", mult(x, 3)))\n");
+                    }
+                    outputs[i].write(window.toString().getBytes(StandardCharsets.US_ASCII));
+                }
+                for (int i = 0; i < count; i++) {
+                    for (int line = 0; line < pipeline; line++) {
+                        String reply = inputs[i].readLine();
+                        if (!("RESULT = " + expected[i][line]).equals(reply)) {
+                            throw new IllegalStateException("Expected RESULT = " + expected[i][line] + " but got " + reply);
+                        }
+                    }
+                }
+                replies.addAndGet((long) count * pipeline);
+                rounds.incrementAndGet();
+                roundNanos.addAndGet(System.nanoTime() - start);
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+}
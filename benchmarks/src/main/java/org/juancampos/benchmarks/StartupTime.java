@@ -0,0 +1,77 @@
+package org.juancampos.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Time to first result of a one shot calculation, from starting the JVM until the RESULT line is read:
+ * java -cp benchmarks/target/benchmarks.jar org.juancampos.benchmarks.StartupTime [runs] [jar] [archive]
+ * It runs "add(1,2)" in a new JVM, the given number of times (20 by default), in three ways:
+ * - picocli: the Calculator main class, picocli parsing the command line and log4j-core reading log4j2.xml;
+ * - fast path: java -jar, the CalculatorLauncher main class without picocli or log4j-core;
+ * - fast path + CDS: the same with the class data sharing archive of mvn package -Pcds, if there is one.
+ * and prints the minimum, median and mean milliseconds of every way.
+ */
+public class StartupTime {
+    private static final String EXPRESSION = "add(1,2)";
+    private static final String RESULT = "RESULT = ";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        String jar = args.length > 1 ? args[1] : "target/Calculator-1.0-SNAPSHOT-jar-with-dependencies.jar";
+        String archive = args.length > 2 ? args[2] : "target/calculator.jsa";
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        System.out.printf("%-18s %8s %8s %8s%n", "path", "min ms", "median", "mean");
+        measure("picocli", runs, java, "-cp", jar, "Calculator", EXPRESSION);
+        measure("fast path", runs, java, "-jar", jar, EXPRESSION);
+        if (new File(archive).exists()) {
+            measure("fast path + CDS", runs, java, "-XX:SharedArchiveFile=" + archive, "-jar", jar, EXPRESSION);
+        } else {
+            System.out.println("No class data sharing archive " + archive + ", build it with mvn package -Pcds");
+        }
+    }
+
+    private static void measure(String name, int runs, String... command) throws IOException, InterruptedException {
+        run(command); //the first run warms the file system cache
+        double[] millis = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            millis[i] = run(command);
+        }
+        Arrays.sort(millis);
+        double sum = 0;
+        for (double run : millis) {
+            sum += run;
+        }
+        System.out.printf("%-18s %8.1f %8.1f %8.1f%n", name, millis[0], millis[runs / 2], sum / runs);
+    }
+
+    /**
+     * @return The milliseconds from the start of the process to its RESULT line.
+     */
+    private static double run(String... command) throws IOException, InterruptedException {
+        List<String> output = new ArrayList<>();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long elapsed = -1;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (elapsed < 0 && line.startsWith(RESULT)) {
+                    elapsed = System.nanoTime() - start;
+                }
+                output.add(line);
+            }
+        }
+        process.waitFor();
+        if (elapsed < 0) {
+            throw new IllegalStateException("No result from " + String.join(" ", command) + ": " + output);
+        }
+        return elapsed / 1e6;
+    }
+}
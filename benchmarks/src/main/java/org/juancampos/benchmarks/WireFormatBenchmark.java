@@ -0,0 +1,88 @@
+package org.juancampos.benchmarks;
+
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.ExpressionCache;
+import org.juancampos.engine.ExpressionDecoder;
+import org.juancampos.engine.ExpressionEncoder;
+import org.juancampos.services.CalculatorService;
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.IEvaluatorService;
+import org.juancampos.services.ILexerService;
+import org.juancampos.services.LexerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of an expression received as text and as a binary frame (see ExpressionEncoder).
+ * textCompileAndEvaluate lexes the text and compiles it every time, as a server does with expressions it has not seen,
+ * textCached is the evaluator with the expression cache, and binaryDecodeAndEvaluate evaluates the frame while decoding it.
+ * The main method prints the bytes on the wire of every input, as text and as a frame:
+ * java -cp benchmarks/target/benchmarks.jar org.juancampos.benchmarks.WireFormatBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WireFormatBenchmark {
+    static final String[] INPUTS = {"readmeAdd", "readmeMult", "readmeLet", "readmeNestedLet", "letChain100", "addChain100"};
+
+    @Param({"readmeAdd", "readmeNestedLet", "letChain100", "addChain100"})
+    public String expression;
+
+    private final ILexerService lexer = LexerService.getInstance();
+    private final IEvaluatorService evaluator = EvaluatorService.getInstance();
+    private final ExpressionCache noCache = new ExpressionCache(0);
+    private String text;
+    private ByteBuffer frame;
+
+    @Setup
+    public void setUp() {
+        text = Expressions.of(expression);
+        frame = ByteBuffer.wrap(ExpressionEncoder.encode(compile(text)));
+    }
+
+    @Benchmark
+    public long textCompileAndEvaluate() {
+        return noCache.evaluate(lexer.lex(text).getCommand());
+    }
+
+    @Benchmark
+    public void textCached(Blackhole blackhole) {
+        blackhole.consume(evaluator.evaluate(text));
+    }
+
+    @Benchmark
+    public long binaryDecodeAndEvaluate() {
+        frame.position(0);
+        return ExpressionDecoder.evaluate(frame);
+    }
+
+    static CompiledExpression compile(String text) {
+        return CalculatorService.getInstance().compile(LexerService.getInstance().lex(text).getCommand());
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%-16s %12s %12s%n", "expression", "text bytes", "frame bytes");
+        for (String input : INPUTS) {
+            String text = Expressions.of(input);
+            System.out.printf("%-16s %12d %12d%n", input, text.getBytes(StandardCharsets.UTF_8).length + 1,
+                    ExpressionEncoder.frameSize(compile(text)));
+        }
+    }
+}
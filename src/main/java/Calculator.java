@@ -1,15 +1,29 @@
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.juancampos.batch.BatchRunner;
+import org.juancampos.batch.ParallelBatchRunner;
+import org.juancampos.enums.NumericMode;
+import org.juancampos.exceptions.CalculatorException;
+import org.juancampos.journal.EvaluationJournal;
+import org.juancampos.journal.JournalReplay;
+import org.juancampos.metrics.CalculatorMetrics;
+import org.juancampos.script.ScriptEvaluator;
+import org.juancampos.server.CalculatorServer;
 import org.juancampos.services.CalculatorService;
+import org.juancampos.services.EvaluatorService;
 import org.juancampos.services.ICalculatorService;
 import org.juancampos.services.IValidatorService;
 import org.juancampos.services.ValidatorService;
-import org.juancampos.enums.Operators;
 import org.juancampos.services.ILogService;
+import org.juancampos.services.LexerService;
 import org.juancampos.services.LogService;
+import org.juancampos.utils.LexedCommand;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Paths;
 import java.text.MessageFormat;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -30,18 +44,46 @@ public class Calculator implements Callable<Long> {
     @CommandLine.Option(names = {"-l", "--loglevel"}, description = "set the loglevel in the logger.Log levels allowed are ERROR, INFO and DEBUG. Default is set to INFO")
     String loglevel;
 
+    @CommandLine.Option(names = {"-b", "--batch"}, paramLabel = "<file>", description = "Evaluate the newline delimited expressions of a file, printing one result per line. Use - to read the expressions from the standard input")
+    String batch;
+
+    @CommandLine.Option(names = {"--script"}, paramLabel = "<file>", description = "Evaluate a script of definitions, one name = expression per line, that can read each other by name. Every definition is evaluated once, the independent ones on all the threads. Use - to read the script from the standard input")
+    String script;
+
+    @CommandLine.Option(names = {"-s", "--server"}, paramLabel = "<port>", description = "Run as a server on the loopback interface, evaluating the newline delimited expressions sent by the clients until the process is stopped")
+    Integer server;
+
+    @CommandLine.Option(names = {"-t", "--threads"}, description = "The number of threads evaluating a batch or a script, or serving the clients in server mode. Default is the number of cores, 1 evaluates a batch on the main thread")
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--in-flight"}, paramLabel = "<chunks>", description = "The number of chunks of " + ParallelBatchRunner.DEFAULT_CHUNK_LINES + " lines a parallel batch holds in memory. Default is 4 per thread")
+    Integer inFlight;
+
+    @CommandLine.Option(names = {"-m", "--numeric-mode"}, paramLabel = "<mode>", description = "The arithmetic: WRAPPING longs that wrap around on overflow, CHECKED longs that fail on overflow, or BIG for arbitrary precision. Default is WRAPPING")
+    NumericMode numericMode = NumericMode.WRAPPING;
+
+    @CommandLine.Option(names = {"--metrics"}, paramLabel = "<seconds>", description = "Print a snapshot of the metrics to the standard error every number of seconds, and once more at the end of a batch. The metrics are also exposed as MBeans")
+    Integer metrics;
+
+    @CommandLine.Option(names = {"-j", "--journal"}, paramLabel = "<directory>", description = "Journal every expression of the batch or the server mode, with its result and the time its calculation took, to binary segment files in the directory")
+    String journal;
+
+    @CommandLine.Option(names = {"--replay"}, paramLabel = "<directory>", description = "Evaluate the expressions of a journal again, printing the results that are different and the latencies of the journal and of the replay")
+    String replay;
+
     @CommandLine.Parameters (description = "The command for the calculator. The command is accepted if it's in quotes. A valid command is \"add(1,2)\"")
     List<StringBuilder> operations;
 
 
     public static void main(String[] args) {
         LOGGER.debug(ENTERING_MAIN_ROUTINE_OF_CALCULATOR);
-        new CommandLine(new Calculator()).execute(args);
+        new CommandLine(new Calculator()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
     }
      private static final Logger LOGGER = LogManager.getLogger(Calculator.class.getName());
 
     /**
      * Picocli overriden method to call the calculation.
+     * The command line is lexed in a single pass into the normalized command (see LexerService).
      * First step is to validate the command
      * Then if valid call the calculator engine
      * to get the result.
@@ -49,61 +91,181 @@ public class Calculator implements Callable<Long> {
      * for invalid arithmetic operations
      * @return A long value with the result. Even though individual operands are int
      * a value can be calculated that is bigger then Integer.MAX_VALUE
+     * In the BIG numeric mode the exact result is printed, and the low 64 bits of it are returned.
      * @throws Exception It can throw a runtime calculator exception
      */
     @Override
     public Long call() throws Exception {
         ILogService logService = LogService.getInstance();
         logService.setLogLevel(loglevel);
+        startMetrics();
+        if (replay != null) {
+            return new JournalReplay(System.out).run(Paths.get(replay));
+        }
+        if (server != null) {
+            return runServer();
+        }
+        if (script != null) {
+            return new ScriptEvaluator(threads, numericMode).run(script, System.out);
+        }
+        if (batch != null) {
+            EvaluationJournal evaluationJournal = startJournal();
+            try {
+                return runBatch();
+            } finally {
+                if (evaluationJournal != null) {
+                    evaluationJournal.close();
+                }
+            }
+        }
         IValidatorService validator = ValidatorService.getInstance();
-        String calculateCommand = getCommandString(operations);
-        boolean validCharactersCommand = validator.validateCharacters(calculateCommand);
-        long result = 0;
-        if (validCharactersCommand){
-            calculateCommand = substituteOperators(calculateCommand);
-            boolean validatorResultContainer = validator.validate(calculateCommand);
-            if(validatorResultContainer) {
-                ICalculatorService calculatorEngine = CalculatorService.getInstance();
-                result = calculatorEngine.calculate(calculateCommand);
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(MessageFormat.format(CALCULATE_COMMAND_SENT_TO_CALCULATOR, operations));
+        }
+        LexedCommand calculateCommand = LexerService.getInstance().lex(operations);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format(PROCESSED_CALCULATOR_COMMAND, calculateCommand));
+        }
+        BigInteger result = BigInteger.ZERO;
+        if (validator.validateCharacters(calculateCommand)){
+            if(validator.validate(calculateCommand)) {
+                result = calculate(calculateCommand.getCommand());
+            }
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("RESULT = " + result);
             }
-            LOGGER.info("RESULT = " + result);
             System.out.println("RESULT = " + result);
         }
-        return result;
+        return result.longValue();
     }
 
 
     /**
-     * The method will format a command string to replace multi-letter word
-     * command with a single character. This will allow faster processing and
-     * also use a single character as a trigger as opposed to have to parse the line
-     * to look ahead for the command.
+     * @param command The normalized command
+     * @return The result in the selected numeric mode. A CHECKED overflow throws an ArithmeticException.
+     */
+    private BigInteger calculate(String command) {
+        ICalculatorService calculatorEngine = CalculatorService.getInstance();
+        try {
+            switch (numericMode) {
+                case CHECKED:
+                    return BigInteger.valueOf(calculatorEngine.calculateChecked(command));
+                case BIG:
+                    return calculatorEngine.calculateBig(command);
+                default:
+                    return BigInteger.valueOf(calculatorEngine.calculate(command));
+            }
+        } catch (CalculatorException e) { //the engine does not log its exceptions, the single command does
+            LOGGER.error(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Registers the metrics MBeans in server mode or when the metrics option is given, and starts the
+     * periodic dump of the snapshots.
+     */
+    private void startMetrics() {
+        if (server != null || metrics != null) {
+            CalculatorMetrics.getInstance().registerMBeans();
+        }
+        if (metrics != null && metrics > 0) {
+            CalculatorMetrics.getInstance().startDump(metrics * 1000L, System.err);
+        }
+    }
+
+    /**
+     * Opens the journal of the journal option, if any, and sets it on the evaluator of the batch and the server modes.
+     * @return The journal, or null without the option.
+     * @throws IOException if the journal directory or its first segment can not be created.
+     */
+    private EvaluationJournal startJournal() throws IOException {
+        if (journal == null) {
+            return null;
+        }
+        EvaluationJournal evaluationJournal = new EvaluationJournal(Paths.get(journal));
+        EvaluatorService.getInstance().setJournal(evaluationJournal);
+        return evaluationJournal;
+    }
+
+    /**
+     * Server mode. The services stay resident and the clients send newline delimited expressions
+     * over TCP (see CalculatorServer). The server runs until the process is stopped.
+     * @return Zero once the server is stopped.
+     * @throws IOException if the port can not be bound.
+     * @throws InterruptedException if the main thread is interrupted.
+     */
+    private Long runServer() throws IOException, InterruptedException {
+        EvaluationJournal evaluationJournal = startJournal();
+        CalculatorServer calculatorServer = new CalculatorServer(server, threads, numericMode);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            calculatorServer.close();
+            if (evaluationJournal != null) {
+                evaluationJournal.close();
+            }
+        }));
+        System.out.println("Listening on port " + calculatorServer.getPort());
+        calculatorServer.await();
+        return 0L;
+    }
+
+    /**
+     * Batch mode. The expressions are streamed line by line from the batch file, or the standard input,
+     * and the results are printed one per line. An invalid line is reported on its own line and does
+     * not stop the batch.
+     * With more than one thread the lines are evaluated in chunks on all the threads (see ParallelBatchRunner)
+     * and printed in the same order.
+     * With the metrics option the final snapshot of the metrics is printed to the standard error.
+     * @return The number of expressions evaluated.
+     * @throws IOException if the batch file can not be read.
+     */
+    private Long runBatch() throws IOException {
+        long lines;
+        if (threads > 1) {
+            ParallelBatchRunner batchRunner = new ParallelBatchRunner(threads, ParallelBatchRunner.DEFAULT_CHUNK_LINES,
+                    inFlight == null ? threads * ParallelBatchRunner.CHUNKS_IN_FLIGHT_PER_THREAD : inFlight, numericMode);
+            batchRunner.run(batch, System.out);
+            lines = batchRunner.getLines();
+        } else {
+            BatchRunner batchRunner = new BatchRunner(numericMode);
+            batchRunner.run(batch, System.out);
+            lines = batchRunner.getLines();
+        }
+        if (metrics != null) {
+            CalculatorMetrics.getInstance().stopDump();
+            System.err.println(CalculatorMetrics.getInstance().getSnapshot());
+        }
+        return lines;
+    }
+
+    /**
+     * The method will format a command string to upper case without spaces.
+     * The operators are substituted by substituteOperators, the call method does both
+     * in a single pass with LexerService.lex
      * @param operations The list of tokens that represent the string in operation from the command line
      * @return A formatted string.
      */
     String getCommandString(List<StringBuilder> operations) {
-        LOGGER.debug(MessageFormat.format(RAW_OPERATIONS_TEXT_FROM_COMMAND_LINE,operations));
-        StringBuilder calculateCommandBuilder = new StringBuilder();
-        String calculateCommand = "";
-        if (operations != null) {
-            for (StringBuilder operation : operations) {
-                calculateCommandBuilder.append(operation);
-            }
-            LOGGER.info(MessageFormat.format(CALCULATE_COMMAND_SENT_TO_CALCULATOR, calculateCommandBuilder.toString()));
-            calculateCommand = calculateCommandBuilder.toString().toUpperCase();
-            calculateCommand = calculateCommand.replaceAll("\\s+", "");
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format(RAW_OPERATIONS_TEXT_FROM_COMMAND_LINE,operations));
+        }
+        String calculateCommand = LexerService.getInstance().normalize(operations);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format(PROCESSED_CALCULATOR_COMMAND,calculateCommand));
         }
-        LOGGER.debug(MessageFormat.format(PROCESSED_CALCULATOR_COMMAND,calculateCommand));
         return calculateCommand;
     }
 
+    /**
+     * The method will replace multi-letter word command with a single character.
+     * This will allow faster processing and also use a single character as a trigger
+     * as opposed to have to parse the line to look ahead for the command.
+     * @param calculateCommand The formatted command string
+     * @return The command string with the operators substituted.
+     */
     protected String substituteOperators(String calculateCommand) {
         if (StringUtils.isNotEmpty(calculateCommand)) {
-            calculateCommand = calculateCommand.replaceAll("ADD+", String.valueOf(Operators.ADD.getSymbol()));
-            calculateCommand = calculateCommand.replaceAll("SUB+", String.valueOf(Operators.SUB.getSymbol()));
-            calculateCommand = calculateCommand.replaceAll("MULT+", String.valueOf(Operators.MULT.getSymbol()));
-            calculateCommand = calculateCommand.replaceAll("DIV+", String.valueOf(Operators.DIV.getSymbol()));
-            calculateCommand = calculateCommand.replaceAll("LET+", String.valueOf(Operators.LET.getSymbol()));
+            calculateCommand = LexerService.getInstance().substituteOperators(calculateCommand);
         }
         return calculateCommand;
     }
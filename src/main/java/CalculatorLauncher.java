@@ -0,0 +1,70 @@
+import org.juancampos.logging.ConsoleLoggerContextFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Main class of the jar, a fast start path for the one shot calculations.
+ * Most of the time of "java -jar ... add(1,2)" goes to starting up, not to the arithmetic: log4j-core reading its
+ * configuration on the first logger and picocli building its command model from the annotations of Calculator by
+ * reflection. When the arguments are only the expression, without any option, neither is needed: the logging
+ * stays at the ERROR level, so the loggers are bound to the light ConsoleLoggerContextFactory, and the expression is
+ * handed straight to Calculator.call. Any option goes through Calculator.main and picocli as before.
+ * The output is the same on both paths.
+ */
+public class CalculatorLauncher {
+    static final String LOGGER_CONTEXT_FACTORY_PROPERTY = "log4j2.loggerContextFactory";
+    static final String CONFIGURATION_FILE_PROPERTY = "log4j.configurationFile";
+    private static final char OPTION = '-';
+
+    private CalculatorLauncher() {
+        // static launcher
+    }
+
+    public static void main(String[] args) {
+        if (!isExpressionOnly(args)) {
+            Calculator.main(args);
+            return;
+        }
+        if (System.getProperty(LOGGER_CONTEXT_FACTORY_PROPERTY) == null && System.getProperty(CONFIGURATION_FILE_PROPERTY) == null) {
+            System.setProperty(LOGGER_CONTEXT_FACTORY_PROPERTY, ConsoleLoggerContextFactory.class.getName());
+        }
+        calculate(args);
+    }
+
+    /**
+     * @param args The command line arguments
+     * @return True if there are arguments and none of them is an option, they are the parts of an expression.
+     */
+    static boolean isExpressionOnly(String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+        for (String arg : args) {
+            if (arg.isEmpty() || arg.charAt(0) == OPTION) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculates the expression as picocli would: one operation per argument, and an exception printed with its stack
+     * trace to the standard error.
+     * @return The result, or null if the calculation threw.
+     */
+    static Long calculate(String[] args) {
+        Calculator calculator = new Calculator();
+        List<StringBuilder> operations = new ArrayList<>(args.length);
+        for (String arg : args) {
+            operations.add(new StringBuilder(arg));
+        }
+        calculator.operations = operations;
+        try {
+            return calculator.call();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.juancampos.batch;
+
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.IEvaluatorService;
+import org.juancampos.utils.EvaluationResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Evaluates a batch of expressions on a pool of worker threads and returns the results
+ * in the same order as the expressions.
+ * The batch is cut in contiguous partitions, a few per worker so a slow partition does not
+ * leave the other workers idle, and every worker evaluates its partitions with its own
+ * scratch state (see EvaluationContext). The pool is sized to the available cores by default.
+ * A BatchEvaluator can run any number of batches, also concurrently, and must be closed to stop the workers.
+ */
+public class BatchEvaluator implements AutoCloseable {
+    private static final int PARTITIONS_PER_THREAD = 4;
+    private static final int MINIMAL_PARTITION = 64;
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+    private final IEvaluatorService evaluator = EvaluatorService.getInstance();
+    private final ExecutorService executor;
+    private final int threads;
+
+    public BatchEvaluator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads The number of worker threads.
+     */
+    public BatchEvaluator(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A batch evaluator needs at least one thread: " + threads);
+        }
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+    }
+
+    /**
+     * @param expressions The raw expressions, i.e. "add(1, mult(2, 3))"
+     * @return The result of each expression, in the same order.
+     */
+    public List<EvaluationResult> evaluate(List<? extends CharSequence> expressions) {
+        int size = expressions.size();
+        EvaluationResult[] results = new EvaluationResult[size];
+        int partitions = Math.max(1, Math.min(threads * PARTITIONS_PER_THREAD, size / MINIMAL_PARTITION));
+        if (partitions == 1) {
+            evaluate(expressions, results, 0, size);
+            return Arrays.asList(results);
+        }
+        List<Future<?>> futures = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            final int from = (int) ((long) size * partition / partitions);
+            final int to = (int) ((long) size * (partition + 1) / partitions);
+            futures.add(executor.submit(() -> evaluate(expressions, results, from, to)));
+        }
+        for (Future<?> future : futures) {
+            await(future);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @param expressions The raw expressions, i.e. "add(1, mult(2, 3))"
+     * @return The result of each expression, in the same order.
+     */
+    public List<EvaluationResult> evaluate(Stream<? extends CharSequence> expressions) {
+        return evaluate(expressions.collect(Collectors.toList()));
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void evaluate(List<? extends CharSequence> expressions, EvaluationResult[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = evaluator.evaluate(expressions.get(i));
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the batch", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch evaluation failed", e.getCause());
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final int pool = POOL_NUMBER.incrementAndGet();
+        private final AtomicInteger thread = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread worker = new Thread(runnable, "calculator-batch-" + pool + "-" + thread.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.juancampos.batch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.enums.NumericMode;
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.IEvaluatorService;
+import org.juancampos.utils.EvaluationResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.text.MessageFormat;
+
+/**
+ * Streams newline delimited expressions through the evaluator, one result line per expression line.
+ * Only one line is held in memory at a time and the results go through a buffered writer,
+ * so the memory used does not depend on the size of the input.
+ * A line that can not be evaluated is reported on its own output line, with its line number,
+ * and the run goes on with the next line.
+ */
+public class BatchRunner {
+    private static final Logger LOGGER = LogManager.getLogger(BatchRunner.class.getName());
+    public static final String STANDARD_INPUT = "-";
+    public static final String BATCH_SUMMARY = "Batch evaluated {0} expressions, {1} errors";
+    public static final String LINE_ERROR = "ERROR = {0} (line {1})";
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final IEvaluatorService evaluator = EvaluatorService.getInstance();
+    private final NumericMode mode;
+    private long lines;
+    private long errors;
+
+    public BatchRunner() {
+        this(NumericMode.WRAPPING);
+    }
+
+    /**
+     * @param mode The arithmetic of the evaluations.
+     */
+    public BatchRunner(NumericMode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Evaluates the expressions of a file, or of the standard input when the file name is "-",
+     * and writes the results to the output stream. A file is read through memory mapped regions
+     * (see MappedExpressionReader), the standard input through a buffered reader.
+     * @param file The file name, or "-" for the standard input
+     * @param output The stream for the results. It is flushed, not closed.
+     * @throws IOException if the input can not be read or the output written.
+     */
+    public void run(String file, OutputStream output) throws IOException {
+        Writer writer = writer(output);
+        if (STANDARD_INPUT.equals(file)) {
+            run(reader(System.in), writer);
+        } else {
+            run(new MappedExpressionReader(Paths.get(file)), writer);
+        }
+    }
+
+    /**
+     * Evaluates every line read by the mapped reader and writes one result line per input line.
+     * The lines are lexed straight from the mapped bytes.
+     * @param reader The reader of the newline delimited expressions
+     * @param writer The results. It is flushed, not closed.
+     * @throws IOException if the input can not be read or the output written.
+     */
+    public void run(MappedExpressionReader reader, Writer writer) throws IOException {
+        reader.forEachLine(line -> write(evaluator.evaluate(line, mode), writer));
+        finish(writer);
+    }
+
+    /**
+     * Evaluates every line of the reader and writes one result line per input line.
+     * @param reader The newline delimited expressions
+     * @param writer The results. It is flushed, not closed.
+     * @throws IOException if the input can not be read or the output written.
+     */
+    public void run(BufferedReader reader, Writer writer) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            write(evaluator.evaluate(line, mode), writer);
+        }
+        finish(writer);
+    }
+
+    private void finish(Writer writer) throws IOException {
+        writer.flush();
+        logSummary(lines, errors);
+    }
+
+    static void logSummary(long lines, long errors) {
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(MessageFormat.format(BATCH_SUMMARY, lines, errors));
+        }
+    }
+
+    /**
+     * Writes the result of the next line.
+     * @param result The result of the line
+     * @param writer The results
+     * @throws IOException if the output can not be written.
+     */
+    void write(EvaluationResult result, Writer writer) throws IOException {
+        lines++;
+        if (!append(result, lines, writer)) {
+            errors++;
+        }
+    }
+
+    /**
+     * Appends the result line of an input line.
+     * @param result The result of the line
+     * @param line The number of the line, from 1
+     * @param output The results
+     * @return true if the line was evaluated, false if it is an error line.
+     * @throws IOException if the output can not be written.
+     */
+    static boolean append(EvaluationResult result, long line, Appendable output) throws IOException {
+        if (result.isOk()) {
+            output.append("RESULT = ").append(result.getValueString()).append('\n');
+            return true;
+        }
+        output.append(MessageFormat.format(LINE_ERROR, result.getMessage(), String.valueOf(line))).append('\n');
+        return false;
+    }
+
+    /**
+     * @return The number of lines evaluated so far.
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return The number of lines that could not be evaluated so far.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    static Writer writer(OutputStream output) {
+        return new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    static BufferedReader reader(InputStream input) {
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,99 @@
+package org.juancampos.batch;
+
+import org.juancampos.utils.AsciiSequence;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the newline delimited expressions of a file through memory mapped regions of the file.
+ * The mapped bytes are moved block by block into one reusable array, and every line is handed over
+ * as an AsciiSequence over that array, so the lines are lexed without being decoded into Strings.
+ * Copying a block in bulk costs less than reading the mapping one byte at a time for the line split
+ * and again for the lexer.
+ * The file is mapped one region at a time, so files bigger than the 2 GB a single mapping can hold
+ * are read as well. A line longer than the block makes the block grow until the line fits.
+ */
+public class MappedExpressionReader {
+    public static final int DEFAULT_REGION_SIZE = 64 << 20;
+    static final int BLOCK_SIZE = 1 << 16;
+    private static final byte NEW_LINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final Path file;
+    private final int regionSize;
+
+    /**
+     * Consumer of the lines of the file. The sequence is only valid during the call.
+     */
+    public interface LineConsumer {
+        void accept(CharSequence line) throws IOException;
+    }
+
+    public MappedExpressionReader(Path file) {
+        this(file, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * @param file The file to read
+     * @param regionSize The size of the regions of the file mapped at a time.
+     */
+    public MappedExpressionReader(Path file, int regionSize) {
+        if (regionSize < 1) {
+            throw new IllegalArgumentException("The region size must be positive: " + regionSize);
+        }
+        this.file = file;
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Hands every line of the file, in order, to the consumer.
+     * The lines are split on \n, a trailing \r is dropped, and a last line without \n is a line too.
+     * @param consumer The consumer of the lines
+     * @return The number of lines read.
+     * @throws IOException if the file can not be read or the consumer fails.
+     */
+    public long forEachLine(LineConsumer consumer) throws IOException {
+        AsciiSequence line = new AsciiSequence();
+        byte[] block = new byte[Math.min(regionSize, BLOCK_SIZE)];
+        int filled = 0; //bytes of the block holding the start of a line not complete yet
+        long lines = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += regionSize) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, size - position));
+                while (region.hasRemaining()) {
+                    if (filled == block.length) { //not even one complete line in the block
+                        block = Arrays.copyOf(block, block.length * 2);
+                    }
+                    int read = Math.min(block.length - filled, region.remaining());
+                    region.get(block, filled, read);
+                    int end = filled + read;
+                    int start = 0;
+                    for (int i = filled; i < end; i++) {
+                        if (block[i] == NEW_LINE) {
+                            consumer.accept(line.wrap(block, start, trimCarriageReturn(block, start, i)));
+                            lines++;
+                            start = i + 1;
+                        }
+                    }
+                    filled = end - start;
+                    System.arraycopy(block, start, block, 0, filled);
+                }
+            }
+        }
+        if (filled > 0) { //last line of the file without a new line
+            consumer.accept(line.wrap(block, 0, trimCarriageReturn(block, 0, filled)));
+            lines++;
+        }
+        return lines;
+    }
+
+    private static int trimCarriageReturn(byte[] block, int start, int end) {
+        return end > start && block[end - 1] == CARRIAGE_RETURN ? end - 1 : end;
+    }
+}
@@ -0,0 +1,241 @@
+package org.juancampos.batch;
+
+import org.juancampos.enums.NumericMode;
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.IEvaluatorService;
+import org.juancampos.utils.AsciiSequence;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Evaluates newline delimited expressions on all the cores, one result line per expression line,
+ * in the order of the input.
+ * The input is cut at line boundaries into chunks of lines, and every chunk is evaluated on a fork join
+ * pool into its own block of result lines. Every worker has its own scratch state (see EvaluationContext).
+ * The reading thread writes the blocks back in the order of the chunks, and it stops reading while the
+ * configured number of chunks are in flight, so the memory used is bounded by the chunks in flight
+ * and does not depend on the size of the input.
+ * The output is the same as the one of BatchRunner.
+ */
+public class ParallelBatchRunner {
+    public static final int DEFAULT_CHUNK_LINES = 4096;
+    public static final int CHUNKS_IN_FLIGHT_PER_THREAD = 4;
+    private static final byte NOT_ASCII = '?';
+
+    private final IEvaluatorService evaluator = EvaluatorService.getInstance();
+    private final int threads;
+    private final int chunkLines;
+    private final int chunksInFlight;
+    private final NumericMode mode;
+    private final Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+    private ForkJoinPool pool;
+    private Writer writer;
+    private Chunk chunk;
+    private long lines;
+    private long errors;
+
+    public ParallelBatchRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads The number of worker threads.
+     */
+    public ParallelBatchRunner(int threads) {
+        this(threads, DEFAULT_CHUNK_LINES, threads * CHUNKS_IN_FLIGHT_PER_THREAD);
+    }
+
+    /**
+     * @param threads The number of worker threads.
+     * @param chunkLines The number of lines of a chunk.
+     * @param chunksInFlight The number of chunks read and not written yet, evaluated or waiting for a worker.
+     */
+    public ParallelBatchRunner(int threads, int chunkLines, int chunksInFlight) {
+        this(threads, chunkLines, chunksInFlight, NumericMode.WRAPPING);
+    }
+
+    /**
+     * @param threads The number of worker threads.
+     * @param chunkLines The number of lines of a chunk.
+     * @param chunksInFlight The number of chunks read and not written yet, evaluated or waiting for a worker.
+     * @param mode The arithmetic of the evaluations.
+     */
+    public ParallelBatchRunner(int threads, int chunkLines, int chunksInFlight, NumericMode mode) {
+        if (threads < 1 || chunkLines < 1 || chunksInFlight < 1) {
+            throw new IllegalArgumentException("The threads, chunk lines and chunks in flight must be positive: "
+                    + threads + ", " + chunkLines + ", " + chunksInFlight);
+        }
+        this.threads = threads;
+        this.chunkLines = chunkLines;
+        this.chunksInFlight = chunksInFlight;
+        this.mode = mode;
+    }
+
+    /**
+     * Evaluates the expressions of a file, or of the standard input when the file name is "-",
+     * and writes the results to the output stream.
+     * @param file The file name, or "-" for the standard input
+     * @param output The stream for the results. It is flushed, not closed.
+     * @throws IOException if the input can not be read or the output written.
+     */
+    public void run(String file, OutputStream output) throws IOException {
+        Writer results = BatchRunner.writer(output);
+        if (BatchRunner.STANDARD_INPUT.equals(file)) {
+            run(BatchRunner.reader(System.in), results);
+        } else {
+            run(new MappedExpressionReader(Paths.get(file)), results);
+        }
+    }
+
+    /**
+     * @param reader The reader of the newline delimited expressions
+     * @param writer The results. It is flushed, not closed.
+     * @throws IOException if the input can not be read or the output written.
+     */
+    public void run(MappedExpressionReader reader, Writer writer) throws IOException {
+        start(writer);
+        try {
+            reader.forEachLine(this::add);
+            finish();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @param reader The newline delimited expressions
+     * @param writer The results. It is flushed, not closed.
+     * @throws IOException if the input can not be read or the output written.
+     */
+    public void run(BufferedReader reader, Writer writer) throws IOException {
+        start(writer);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                add(line);
+            }
+            finish();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The number of lines evaluated and written so far.
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return The number of lines that could not be evaluated so far.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    private void start(Writer writer) {
+        this.writer = writer;
+        this.pool = new ForkJoinPool(threads);
+        this.chunk = new Chunk(lines + 1);
+    }
+
+    private void add(CharSequence line) throws IOException {
+        chunk.add(line);
+        if (chunk.lines == chunkLines) {
+            submit();
+        }
+    }
+
+    private void submit() throws IOException {
+        if (inFlight.size() == chunksInFlight) {
+            write(inFlight.removeFirst().join());
+        }
+        final Chunk full = chunk;
+        inFlight.addLast(pool.submit(ForkJoinTask.adapt(() -> full.evaluate(evaluator, mode), full)));
+        chunk = new Chunk(full.firstLine + full.lines);
+    }
+
+    private void finish() throws IOException {
+        if (chunk.lines > 0) {
+            submit();
+        }
+        while (!inFlight.isEmpty()) {
+            write(inFlight.removeFirst().join());
+        }
+        writer.flush();
+        BatchRunner.logSummary(lines, errors);
+    }
+
+    private void write(Chunk evaluated) throws IOException {
+        writer.append(evaluated.results);
+        lines += evaluated.lines;
+        errors += evaluated.errors;
+    }
+
+    /**
+     * A chunk of lines copied out of the input, and the result lines once it is evaluated.
+     * The lines are kept as ASCII bytes: a character out of ASCII is invalid for the lexer anyway,
+     * so it is kept as another invalid character.
+     */
+    private static final class Chunk {
+        private final long firstLine;
+        private byte[] bytes = new byte[1 << 12];
+        private int[] ends = new int[64];
+        private int size;
+        private int lines;
+        private StringBuilder results;
+        private int errors;
+
+        private Chunk(long firstLine) {
+            this.firstLine = firstLine;
+        }
+
+        private void add(CharSequence line) {
+            int length = line.length();
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+            for (int i = 0; i < length; i++) {
+                char c = line.charAt(i);
+                bytes[size++] = c < 0x80 ? (byte) c : NOT_ASCII;
+            }
+            if (lines == ends.length) {
+                ends = Arrays.copyOf(ends, lines * 2);
+            }
+            ends[lines++] = size;
+        }
+
+        private void evaluate(IEvaluatorService evaluator, NumericMode mode) {
+            results = new StringBuilder(lines * 16);
+            AsciiSequence line = new AsciiSequence();
+            int start = 0;
+            try {
+                for (int i = 0; i < lines; i++) {
+                    if (!BatchRunner.append(evaluator.evaluate(line.wrap(bytes, start, ends[i]), mode), firstLine + i, results)) {
+                        errors++;
+                    }
+                    start = ends[i];
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); //a StringBuilder does not throw
+            }
+            bytes = null;
+            ends = null;
+        }
+    }
+}
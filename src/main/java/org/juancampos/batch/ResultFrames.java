@@ -0,0 +1,106 @@
+package org.juancampos.batch;
+
+import org.juancampos.enums.EvaluationStatus;
+import org.juancampos.exceptions.CalculatorException;
+import org.juancampos.utils.EvaluationResult;
+import org.juancampos.utils.Varints;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary frame of the results of a batch: the varint number of results, a bitmap with one bit per result
+ * set when the result is an error, and one packed 8 byte long per result, the value of a result or the
+ * ordinal of the EvaluationStatus of an error.
+ * Only the status of an error is kept, so a read error carries the message of its status.
+ * A value that does not fit in a long, from the BIG numeric mode, has no place in a frame.
+ */
+public final class ResultFrames {
+    public static final String INVALID_RESULT_FRAME = "Invalid result frame";
+
+    private ResultFrames() {
+        // static helpers only
+    }
+
+    /**
+     * @param count The number of results
+     * @return The number of bytes of the frame of count results.
+     */
+    public static int frameSize(int count) {
+        return Varints.sizeOfUnsigned(count) + (count + 7) / 8 + count * Long.BYTES;
+    }
+
+    /**
+     * Writes the frame of the results at the position of the buffer.
+     * @param results The results
+     * @param buffer The buffer, with at least frameSize bytes remaining.
+     * @throws IllegalArgumentException if a value does not fit in a long.
+     */
+    public static void write(List<EvaluationResult> results, ByteBuffer buffer) {
+        int count = results.size();
+        for (EvaluationResult result : results) {
+            if (result.isBig()) {
+                throw new IllegalArgumentException("A result frame holds long values only: " + result.getValueString());
+            }
+        }
+        Varints.writeUnsigned(buffer, count);
+        for (int first = 0; first < count; first += 8) {
+            int errors = 0;
+            for (int i = first; i < Math.min(count, first + 8); i++) {
+                if (!results.get(i).isOk()) {
+                    errors |= 1 << (i - first);
+                }
+            }
+            buffer.put((byte) errors);
+        }
+        for (EvaluationResult result : results) {
+            buffer.putLong(result.isOk() ? result.getValue() : result.getStatus().ordinal());
+        }
+    }
+
+    /**
+     * @param results The results
+     * @return The frame of the results.
+     */
+    public static byte[] write(List<EvaluationResult> results) {
+        ByteBuffer buffer = ByteBuffer.allocate(frameSize(results.size()));
+        write(results, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Reads the frame at the position of the buffer. A count of results whose bitmap and values do not fit in
+     * the bytes remaining is rejected before anything else is read.
+     * @param buffer The buffer, left after the frame
+     * @return The results, in order.
+     */
+    public static List<EvaluationResult> read(ByteBuffer buffer) {
+        try {
+            long count = Varints.readUnsigned(buffer);
+            if (count < 0 || count > buffer.remaining() / Long.BYTES
+                    || count * Long.BYTES + (count + 7) / 8 > buffer.remaining()) {
+                throw new CalculatorException(INVALID_RESULT_FRAME);
+            }
+            int bitmap = buffer.position();
+            int values = bitmap + (int) ((count + 7) / 8);
+            EvaluationStatus[] statuses = EvaluationStatus.values();
+            List<EvaluationResult> results = new ArrayList<>((int) count);
+            for (int i = 0; i < count; i++) {
+                long value = buffer.getLong(values + i * Long.BYTES);
+                if ((buffer.get(bitmap + i / 8) & (1 << (i % 8))) == 0) {
+                    results.add(EvaluationResult.of(value));
+                } else if (value > 0 && value < statuses.length) {
+                    results.add(EvaluationResult.failure(statuses[(int) value]));
+                } else {
+                    throw new CalculatorException(INVALID_RESULT_FRAME);
+                }
+            }
+            buffer.position(values + (int) count * Long.BYTES);
+            return results;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new CalculatorException(INVALID_RESULT_FRAME);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package org.juancampos.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Evaluates one expression with parameters over whole columns of values, a block of rows at a time.
+ * The postfix program is walked once per block instead of once per row: every value of the stack is a block of
+ * BLOCK_ROWS numbers, and every instruction is a tight loop over the block, simple enough for the JIT to unroll
+ * and vectorize. An operation whose right operand is a constant, a parameter or a LET slot reads it in place,
+ * so only the left operands are copied into the stack blocks. A LET stores by swapping the stack block with the
+ * slot block, without copying.
+ * The plan of the program is built once, the evaluator is immutable and can be shared between threads;
+ * the blocks are the scratch state of the calling thread (see EvaluationContext).
+ * The results are the same as evaluating every row with CompiledExpression.evaluate(long[]). A division by zero
+ * throws the ArithmeticException and only the blocks before the one of the division have their results.
+ */
+public final class ColumnarEvaluator {
+    private static final Logger LOGGER = LogManager.getLogger(ColumnarEvaluator.class.getName());
+    public static final String COLUMNAR_EVALUATION = "Columnar evaluation of {0} over {1} rows";
+    public static final int BLOCK_ROWS = 1024;
+
+    //the steps of the plan
+    private static final int FILL = 0;
+    private static final int COPY_COLUMN = 1;
+    private static final int COPY_SLOT = 2;
+    private static final int STORE = 3;
+    private static final int OPERATE = 4;
+    private static final int OPERATE_CONSTANT = 5;
+    private static final int OPERATE_COLUMN = 6;
+    private static final int OPERATE_SLOT = 7;
+
+    private final CompiledExpression expression;
+    private final int[] steps;
+    private final int[] operations;
+    private final long[] operands;
+    private final int blockCount;
+
+    /**
+     * Builds the plan of the expression.
+     * @param expression The compiled expression, usually with parameters (see ExpressionCompiler.compile(String, String...))
+     */
+    public ColumnarEvaluator(CompiledExpression expression) {
+        this.expression = expression;
+        int size = expression.size();
+        int[] planSteps = new int[size];
+        int[] planOperations = new int[size];
+        long[] planOperands = new long[size];
+        int parameters = expression.getParameterCount();
+        int count = 0;
+        for (int pc = 0; pc < size; pc++) {
+            int opcode = expression.getOpcode(pc);
+            long operand = expression.getOperand(pc);
+            boolean fused = pc + 1 < size && isOperation(expression.getOpcode(pc + 1));
+            switch (opcode) {
+                case Opcodes.PUSH:
+                    planSteps[count] = fused ? OPERATE_CONSTANT : FILL;
+                    break;
+                case Opcodes.LOAD:
+                    if (operand < parameters) {
+                        planSteps[count] = fused ? OPERATE_COLUMN : COPY_COLUMN;
+                    } else {
+                        planSteps[count] = fused ? OPERATE_SLOT : COPY_SLOT;
+                    }
+                    break;
+                case Opcodes.STORE:
+                    planSteps[count] = STORE;
+                    fused = false;
+                    break;
+                default:
+                    planSteps[count] = OPERATE;
+                    planOperations[count] = opcode;
+                    fused = false;
+            }
+            if (fused) {
+                planOperations[count] = expression.getOpcode(++pc);
+            }
+            planOperands[count++] = opcode == Opcodes.LOAD || opcode == Opcodes.STORE ? slotBlock(operand, parameters) : operand;
+        }
+        this.steps = Arrays.copyOf(planSteps, count);
+        this.operations = Arrays.copyOf(planOperations, count);
+        this.operands = Arrays.copyOf(planOperands, count);
+        this.blockCount = stackBlocks() + expression.getSlotCount() - parameters;
+    }
+
+    /**
+     * The stack blocks come first, then the blocks of the LET slots. A parameter is read from its column.
+     * The fused operations need less stack than the program, so the stack blocks are enough.
+     */
+    private long slotBlock(long slot, int parameters) {
+        return slot < parameters ? slot : stackBlocks() + slot - parameters;
+    }
+
+    private int stackBlocks() {
+        return Math.max(1, expression.getMaxStackDepth());
+    }
+
+    /**
+     * Evaluates the expression with the scratch state of the calling thread.
+     * @param columns The values of every parameter, by parameter index, all of the same length
+     * @param results The result of every row, at least as long as the columns.
+     */
+    public void evaluate(long[][] columns, long[] results) {
+        evaluate(columns, results, EvaluationContext.current());
+    }
+
+    /**
+     * Evaluates the expression with the columns bound by the parameter names, resolved once per call.
+     * @param columns The values of every parameter by parameter name, in any case, all of the same length
+     * @param results The result of every row, at least as long as the columns.
+     */
+    public void evaluate(Map<String, long[]> columns, long[] results) {
+        long[][] byIndex = new long[expression.getParameterCount()][];
+        for (Map.Entry<String, long[]> column : columns.entrySet()) {
+            int index = expression.getParameterIndex(column.getKey());
+            if (index >= 0) {
+                byIndex[index] = column.getValue();
+            }
+        }
+        for (int p = 0; p < byIndex.length; p++) {
+            if (byIndex[p] == null) {
+                throw new IllegalArgumentException("No column for the parameter " + expression.getSlotName(p));
+            }
+        }
+        evaluate(byIndex, results);
+    }
+
+    /**
+     * @param columns The values of every parameter, by parameter index, all of the same length
+     * @param results The result of every row, at least as long as the columns.
+     * @param context The scratch state, owned by the calling thread.
+     */
+    public void evaluate(long[][] columns, long[] results, EvaluationContext context) {
+        int rows = expression.rows(columns, results);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format(COLUMNAR_EVALUATION, expression.getSource(), rows));
+        }
+        long[][] blocks = context.blocks(blockCount, BLOCK_ROWS);
+        for (int offset = 0; offset < rows; offset += BLOCK_ROWS) {
+            int length = Math.min(BLOCK_ROWS, rows - offset);
+            System.arraycopy(evaluateBlock(columns, offset, length, blocks), 0, results, offset, length);
+        }
+    }
+
+    /**
+     * @return The block with the results of the rows.
+     */
+    private long[] evaluateBlock(long[][] columns, int offset, int length, long[][] blocks) {
+        int top = -1;
+        for (int i = 0; i < steps.length; i++) {
+            int operand = (int) operands[i];
+            switch (steps[i]) {
+                case FILL:
+                    Arrays.fill(blocks[++top], 0, length, operands[i]);
+                    break;
+                case COPY_COLUMN:
+                    System.arraycopy(columns[operand], offset, blocks[++top], 0, length);
+                    break;
+                case COPY_SLOT:
+                    System.arraycopy(blocks[operand], 0, blocks[++top], 0, length);
+                    break;
+                case STORE:
+                    long[] stored = blocks[top];
+                    blocks[top--] = blocks[operand];
+                    blocks[operand] = stored;
+                    break;
+                case OPERATE:
+                    top--;
+                    operate(operations[i], blocks[top], blocks[top + 1], 0, length);
+                    break;
+                case OPERATE_CONSTANT:
+                    operate(operations[i], blocks[top], operands[i], length);
+                    break;
+                case OPERATE_COLUMN:
+                    operate(operations[i], blocks[top], columns[operand], offset, length);
+                    break;
+                case OPERATE_SLOT:
+                    operate(operations[i], blocks[top], blocks[operand], 0, length);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown step " + steps[i]);
+            }
+        }
+        return blocks[top];
+    }
+
+    /**
+     * first[i] = first[i] op second[offset + i], the same arithmetic as CompiledExpression.evaluate.
+     */
+    private static void operate(int op, long[] first, long[] second, int offset, int length) {
+        switch (op) {
+            case Opcodes.ADD:
+                for (int i = 0; i < length; i++) {
+                    first[i] += second[offset + i];
+                }
+                break;
+            case Opcodes.SUB:
+                for (int i = 0; i < length; i++) {
+                    first[i] -= second[offset + i];
+                }
+                break;
+            case Opcodes.MULT:
+                for (int i = 0; i < length; i++) {
+                    first[i] *= second[offset + i];
+                }
+                break;
+            case Opcodes.DIV:
+                for (int i = 0; i < length; i++) {
+                    first[i] /= second[offset + i];
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode " + op);
+        }
+    }
+
+    /**
+     * first[i] = first[i] op second.
+     */
+    private static void operate(int op, long[] first, long second, int length) {
+        switch (op) {
+            case Opcodes.ADD:
+                for (int i = 0; i < length; i++) {
+                    first[i] += second;
+                }
+                break;
+            case Opcodes.SUB:
+                for (int i = 0; i < length; i++) {
+                    first[i] -= second;
+                }
+                break;
+            case Opcodes.MULT:
+                for (int i = 0; i < length; i++) {
+                    first[i] *= second;
+                }
+                break;
+            case Opcodes.DIV:
+                for (int i = 0; i < length; i++) {
+                    first[i] /= second;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode " + op);
+        }
+    }
+
+    private static boolean isOperation(int opcode) {
+        return opcode == Opcodes.ADD || opcode == Opcodes.SUB || opcode == Opcodes.MULT || opcode == Opcodes.DIV;
+    }
+
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+}
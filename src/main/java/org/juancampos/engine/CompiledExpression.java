@@ -0,0 +1,334 @@
+package org.juancampos.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.exceptions.CalculatorException;
+
+import java.text.MessageFormat;
+
+/**
+ * An expression that has been parsed once into a flat postfix program.
+ * The program is immutable so a single instance can be evaluated any number of times,
+ * and from any number of threads, without parsing the command string again.
+ * Every LET variable has been resolved to a slot index at compile time, so the
+ * evaluation does not need a variables map or the expressions stack, only a primitive
+ * stack of numbers and a primitive slot table (see EvaluationContext).
+ * An expression compiled with parameters (see ExpressionCompiler.compile(String, String...)) has its free
+ * variables in the first slots. It is evaluated against rows of parameter values, copied straight into
+ * those slots, or against columns of them, so binding the variables needs no map of names either.
+ * An expression evaluated more than calculator.generation.threshold times (10000 by default, zero disables it) gets
+ * its own generated class (see ExpressionClassGenerator) and from then on it is evaluated by that class. The count is
+ * approximate when several threads evaluate the expression, and the interpreter stays as the fallback for the
+ * expressions too big to generate.
+ */
+public final class CompiledExpression {
+    private static final Logger LOGGER = LogManager.getLogger(CompiledExpression.class.getName());
+    public static final String NUMBER_STACK_PUSH = "Number stack push = {0}";
+    public static final String VARIABLE_ASSIGNED = "Variable assigned. {0} = {1}";
+    public static final String OPERATION = "OPERATION:{0}, FIRST OPERAND:{1}, SECOND OPERAND:{2}";
+    public static final String MISSING_VARIABLES_NOT_ASSIGNED = "Missing Variables Not assigned";
+    public static final String GENERATION_THRESHOLD_PROPERTY = "calculator.generation.threshold";
+    public static final int DEFAULT_GENERATION_THRESHOLD = 10000;
+    private static final int GENERATION_THRESHOLD = Integer.getInteger(GENERATION_THRESHOLD_PROPERTY, DEFAULT_GENERATION_THRESHOLD);
+    static final long[] NO_PARAMETERS = new long[0];
+
+    private final String source;
+    private final int[] opcodes;
+    private final long[] operands;
+    private final int maxStackDepth;
+    private final String[] slotNames;
+    private final int parameterCount;
+    private int countdown = GENERATION_THRESHOLD;
+    private volatile GeneratedExpression generated;
+
+    CompiledExpression(String source, int[] opcodes, long[] operands, int maxStackDepth, String[] slotNames, int parameterCount) {
+        this.source = source;
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.maxStackDepth = maxStackDepth;
+        this.slotNames = slotNames;
+        this.parameterCount = parameterCount;
+    }
+
+    /**
+     * Evaluates the compiled program with the scratch state of the calling thread.
+     * @return The result of the expression.
+     */
+    public long evaluate() {
+        return evaluate(EvaluationContext.current());
+    }
+
+    /**
+     * Evaluates the compiled program.
+     * A division will only result in using Javas default of rounding down to zero,
+     * and any arithmetic exception will be allowed to float up to the caller,
+     * the same as CalculatorService.operation
+     * The numbers and the LET variables live in the primitive arrays of the context,
+     * so the evaluation does not allocate once the context has grown to the size of the expression.
+     * With DEBUG enabled every instruction is traced before it is executed. The trace is the only
+     * logging, it costs a single check per evaluation when DEBUG is disabled.
+     * @param context The scratch state, owned by the calling thread.
+     * @return The result of the expression.
+     * @throws CalculatorException if the expression has parameters, they need a row of values.
+     */
+    public long evaluate(EvaluationContext context) {
+        if (parameterCount > 0) {
+            throw new CalculatorException(MISSING_VARIABLES_NOT_ASSIGNED);
+        }
+        GeneratedExpression code = generated(1);
+        return code != null ? code.evaluate(NO_PARAMETERS) : run(context.stack(maxStackDepth), context.slots(slotNames.length));
+    }
+
+    /**
+     * Evaluates the compiled program with the scratch state of the calling thread.
+     * @param row The value of every parameter, by parameter index
+     * @return The result of the expression.
+     */
+    public long evaluate(long[] row) {
+        return evaluate(row, EvaluationContext.current());
+    }
+
+    /**
+     * Evaluates the compiled program with the parameters bound to the values of the row.
+     * @param row The value of every parameter, by parameter index
+     * @param context The scratch state, owned by the calling thread.
+     * @return The result of the expression.
+     */
+    public long evaluate(long[] row, EvaluationContext context) {
+        checkParameters(row.length);
+        GeneratedExpression code = generated(1);
+        if (code != null) {
+            return code.evaluate(row);
+        }
+        long[] slots = context.slots(slotNames.length);
+        System.arraycopy(row, 0, slots, 0, parameterCount);
+        return run(context.stack(maxStackDepth), slots);
+    }
+
+    /**
+     * Evaluates the compiled program once per row of the columns, with the scratch state of the calling thread.
+     * @param columns The values of every parameter, by parameter index, all of the same length
+     * @param results The result of every row, at least as long as the columns.
+     */
+    public void evaluate(long[][] columns, long[] results) {
+        evaluate(columns, results, EvaluationContext.current());
+    }
+
+    /**
+     * Evaluates the compiled program once per row of the columns, a row at a time (ColumnarEvaluator runs
+     * every instruction over a block of rows instead). Any arithmetic exception floats up, the rows before it
+     * have their results.
+     * @param columns The values of every parameter, by parameter index, all of the same length
+     * @param results The result of every row, at least as long as the columns.
+     * @param context The scratch state, owned by the calling thread.
+     */
+    public void evaluate(long[][] columns, long[] results, EvaluationContext context) {
+        int rows = rows(columns, results);
+        GeneratedExpression code = generated(rows);
+        if (code != null) {
+            long[] values = new long[parameterCount];
+            for (int row = 0; row < rows; row++) {
+                for (int p = 0; p < parameterCount; p++) {
+                    values[p] = columns[p][row];
+                }
+                results[row] = code.evaluate(values);
+            }
+            return;
+        }
+        long[] stack = context.stack(maxStackDepth);
+        long[] slots = context.slots(slotNames.length);
+        for (int row = 0; row < rows; row++) {
+            for (int p = 0; p < parameterCount; p++) {
+                slots[p] = columns[p][row];
+            }
+            results[row] = run(stack, slots);
+        }
+    }
+
+    /**
+     * Checks there is a column for every parameter, all of the same length, and room for their results.
+     * @return The number of rows.
+     */
+    int rows(long[][] columns, long[] results) {
+        checkParameters(columns.length);
+        int rows = parameterCount == 0 ? results.length : columns[0].length;
+        for (int p = 0; p < parameterCount; p++) {
+            if (columns[p].length != rows) {
+                throw new IllegalArgumentException("Column " + p + " has " + columns[p].length + " rows instead of " + rows);
+            }
+        }
+        if (results.length < rows) {
+            throw new IllegalArgumentException("No room for " + rows + " results: " + results.length);
+        }
+        return rows;
+    }
+
+    /**
+     * Counts the evaluations and generates the class of the expression once they reach the threshold.
+     * @param evaluations The number of evaluations about to run
+     * @return The generated class, or null while the expression is interpreted.
+     */
+    private GeneratedExpression generated(int evaluations) {
+        GeneratedExpression code = generated;
+        if (code == null && countdown > 0) {
+            countdown -= evaluations;
+            if (countdown <= 0) {
+                code = ExpressionClassGenerator.generate(this);
+                generated = code;
+            }
+        }
+        return code;
+    }
+
+    /**
+     * @return True once the expression is evaluated by its generated class.
+     */
+    boolean isGenerated() {
+        return generated != null;
+    }
+
+    void checkParameters(int count) {
+        if (count < parameterCount) {
+            throw new IllegalArgumentException("The expression has " + parameterCount + " parameters, not " + count);
+        }
+    }
+
+    private long run(long[] stack, long[] slots) {
+        boolean debug = LOGGER.isDebugEnabled();
+        int top = -1;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            if (debug) {
+                trace(pc, stack, top, slots);
+            }
+            switch (opcodes[pc]) {
+                case Opcodes.PUSH:
+                    stack[++top] = operands[pc];
+                    break;
+                case Opcodes.LOAD:
+                    stack[++top] = slots[(int) operands[pc]];
+                    break;
+                case Opcodes.STORE:
+                    slots[(int) operands[pc]] = stack[top--];
+                    break;
+                case Opcodes.ADD:
+                    top--;
+                    stack[top] = stack[top] + stack[top + 1];
+                    break;
+                case Opcodes.SUB:
+                    top--;
+                    stack[top] = stack[top] - stack[top + 1];
+                    break;
+                case Opcodes.MULT:
+                    top--;
+                    stack[top] = stack[top] * stack[top + 1];
+                    break;
+                case Opcodes.DIV:
+                    top--;
+                    stack[top] = stack[top] / stack[top + 1];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + opcodes[pc]);
+            }
+        }
+        return stack[top];
+    }
+
+    private void trace(int pc, long[] stack, int top, long[] slots) {
+        switch (opcodes[pc]) {
+            case Opcodes.PUSH:
+                LOGGER.debug(MessageFormat.format(NUMBER_STACK_PUSH, operands[pc]));
+                break;
+            case Opcodes.LOAD:
+                LOGGER.debug(MessageFormat.format(NUMBER_STACK_PUSH, slots[(int) operands[pc]]));
+                break;
+            case Opcodes.STORE:
+                LOGGER.debug(MessageFormat.format(VARIABLE_ASSIGNED, slotNames[(int) operands[pc]], stack[top]));
+                break;
+            default:
+                LOGGER.debug(MessageFormat.format(OPERATION, Opcodes.name(opcodes[pc]), stack[top - 1], stack[top]));
+        }
+    }
+
+    /**
+     * @return The normalized command string the expression was compiled from.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return The number of instructions in the program.
+     */
+    public int size() {
+        return opcodes.length;
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    public int getSlotCount() {
+        return slotNames.length;
+    }
+
+    /**
+     * @param slot The slot index
+     * @return The name of the parameter or LET variable stored in the slot. The LET variables of sibling scopes
+     * share a slot, which is then named after them separated by "/".
+     */
+    public String getSlotName(int slot) {
+        return slotNames[slot];
+    }
+
+    /**
+     * @return The number of parameters, the first slots of the slot table.
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * Resolves a parameter name once, so the caller can fill the rows by index.
+     * The names are compared ignoring the case, as the lexer upper cases the variables.
+     * @param name The parameter name
+     * @return The index of the parameter in the rows, or -1 if the expression has no such parameter.
+     */
+    public int getParameterIndex(String name) {
+        for (int p = 0; p < parameterCount; p++) {
+            if (slotNames[p].equalsIgnoreCase(name)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A constant expression does not depend on any input, every LET variable it uses
+     * is assigned inside the expression itself, so it always evaluates to the same result.
+     * @return True if the expression always evaluates to the same result.
+     */
+    public boolean isConstant() {
+        return parameterCount == 0;
+    }
+
+    public int getOpcode(int index) {
+        return opcodes[index];
+    }
+
+    public long getOperand(int index) {
+        return operands[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder program = new StringBuilder();
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            program.append(Opcodes.name(opcodes[pc]));
+            if (opcodes[pc] == Opcodes.PUSH || opcodes[pc] == Opcodes.LOAD || opcodes[pc] == Opcodes.STORE) {
+                program.append(' ').append(operands[pc]);
+            }
+            program.append(pc < opcodes.length - 1 ? "; " : "");
+        }
+        return program.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package org.juancampos.engine;
+
+import java.util.Arrays;
+
+/**
+ * Scratch state for evaluating compiled expressions: the primitive stack of numbers and the
+ * primitive slot table that holds the LET variables, and the blocks of the columnar evaluation (see ColumnarEvaluator).
+ * Both arrays only grow, so once a thread has evaluated its largest expression every later
+ * evaluation runs without allocating anything on the heap.
+ * A context must not be shared between threads. current() gives each thread its own one.
+ */
+public final class EvaluationContext {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final ThreadLocal<EvaluationContext> CONTEXTS = new ThreadLocal<EvaluationContext>() {
+        @Override
+        protected EvaluationContext initialValue() {
+            return new EvaluationContext();
+        }
+    };
+
+    private long[] stack = new long[INITIAL_CAPACITY];
+    private long[] slots = new long[INITIAL_CAPACITY];
+    private long[][] blocks = new long[0][];
+
+    /**
+     * @return The context owned by the calling thread.
+     */
+    public static EvaluationContext current() {
+        return CONTEXTS.get();
+    }
+
+    /**
+     * @param depth The stack depth the evaluation needs
+     * @return The stack of numbers, with room for at least depth numbers.
+     */
+    long[] stack(int depth) {
+        if (stack.length < depth) {
+            stack = Arrays.copyOf(stack, Math.max(depth, stack.length * 2));
+        }
+        return stack;
+    }
+
+    /**
+     * @param count The number of slots the evaluation needs
+     * @return The slot table, with room for at least count variables.
+     */
+    long[] slots(int count) {
+        if (slots.length < count) {
+            slots = Arrays.copyOf(slots, Math.max(count, slots.length * 2));
+        }
+        return slots;
+    }
+
+    /**
+     * @param count The number of blocks the evaluation needs
+     * @param length The length of every block
+     * @return The blocks, at least count of them of the given length. The caller can swap them around.
+     */
+    long[][] blocks(int count, int length) {
+        if (blocks.length < count) {
+            blocks = Arrays.copyOf(blocks, Math.max(count, blocks.length * 2));
+        }
+        for (int i = 0; i < count; i++) {
+            if (blocks[i] == null || blocks[i].length < length) {
+                blocks[i] = new long[length];
+            }
+        }
+        return blocks;
+    }
+
+    public int getStackCapacity() {
+        return stack.length;
+    }
+
+    public int getSlotCapacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,280 @@
+package org.juancampos.engine;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded least recently used cache of compiled expressions.
+ * The key is the normalized command string, the one produced by Calculator.getCommandString
+ * and Calculator.substituteOperators, so "ADD(1, 2)" and "add(1,2)" share the same entry "+(1,2)".
+ * An expression without free variables always produces the same result, so the cache also keeps
+ * the result of the first successful evaluation and later lookups skip the evaluation entirely.
+ * Every numeric mode caches its own result: with a division, an expression can overflow in the WRAPPING mode
+ * and still have a result that fits in a long in the BIG mode, while the CHECKED mode fails.
+ * An expression is optimized (see ExpressionOptimizer) the first time it is found in the cache again, so the
+ * expressions evaluated only once, as most lines of a batch, do not pay for an optimization they can not use.
+ * The cache keeps hit, miss and eviction counters.
+ * A big cache is split in up to 16 segments by the hash of the key, each one its own LRU with its own lock,
+ * so threads evaluating different expressions seldom wait for each other. A cache of less than 128 entries
+ * is a single segment, an exact LRU.
+ */
+public final class ExpressionCache {
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+    static final int MAXIMUM_SEGMENTS = 16;
+    static final int MINIMUM_SEGMENT_SIZE = 64;
+
+    private final int maximumSize;
+    private final boolean cacheResults;
+    private final boolean optimize;
+    private final Segment[] segments;
+
+    /**
+     * @param maximumSize The maximum number of expressions kept. Zero disables the cache.
+     * @param cacheResults If the result of constant expressions is cached as well.
+     * @param optimize If the compiled expressions are optimized.
+     */
+    public ExpressionCache(int maximumSize, boolean cacheResults, boolean optimize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Cache size can not be negative: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.cacheResults = cacheResults;
+        this.optimize = optimize;
+        int count = 1;
+        while (count < MAXIMUM_SEGMENTS && maximumSize / (count * 2) >= MINIMUM_SEGMENT_SIZE) {
+            count *= 2;
+        }
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maximumSize / count + (i < maximumSize % count ? 1 : 0));
+        }
+    }
+
+    public ExpressionCache(int maximumSize, boolean cacheResults) {
+        this(maximumSize, cacheResults, true);
+    }
+
+    public ExpressionCache(int maximumSize) {
+        this(maximumSize, true);
+    }
+
+    /**
+     * Finds the compiled expression for the normalized command string, compiling it on a miss.
+     * @param s The normalized command string
+     * @return The compiled expression.
+     */
+    public CompiledExpression get(String s) {
+        return entry(s).expression;
+    }
+
+    /**
+     * Evaluates the normalized command string, reusing the compiled expression and,
+     * for constant expressions, the result of a previous evaluation.
+     * @param s The normalized command string
+     * @return The result of the expression.
+     */
+    public long evaluate(String s) {
+        CacheEntry entry = entry(s);
+        if (entry.evaluated) {
+            return entry.result;
+        }
+        long result = entry.expression.evaluate();
+        if (cacheResults && entry.expression.isConstant()) {
+            entry.result = result;
+            entry.evaluated = true;
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates the normalized command string in the CHECKED numeric mode (see NumericEvaluator), with the
+     * program of the compiler rather than the optimized one, so a LET value that is never used still overflows.
+     * @param s The normalized command string
+     * @return The result of the expression.
+     * @throws ArithmeticException if an operation overflows or divides by zero.
+     */
+    public long evaluateChecked(String s) {
+        CacheEntry entry = entry(s);
+        if (entry.checkedEvaluated) {
+            return entry.checkedResult;
+        }
+        long result = NumericEvaluator.evaluateChecked(entry.compiled);
+        if (cacheResults && entry.expression.isConstant()) {
+            entry.checkedResult = result;
+            entry.checkedEvaluated = true;
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates the normalized command string in the BIG numeric mode (see NumericEvaluator).
+     * @param s The normalized command string
+     * @return The exact result of the expression.
+     */
+    public BigInteger evaluateBig(String s) {
+        CacheEntry entry = entry(s);
+        BigInteger result = entry.bigResult;
+        if (result != null) {
+            return result;
+        }
+        result = NumericEvaluator.evaluateBig(entry.expression);
+        if (cacheResults && entry.expression.isConstant()) {
+            entry.bigResult = result;
+        }
+        return result;
+    }
+
+    private CacheEntry entry(String s) {
+        int hash = s.hashCode();
+        Segment segment = segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+        CacheEntry entry = segment.get(s);
+        if (entry != null) {
+            if (optimize && !entry.optimized) {
+                entry.optimize();
+            }
+            return entry;
+        }
+        entry = new CacheEntry(ExpressionCompiler.compile(s));
+        return maximumSize > 0 ? segment.putIfAbsent(s, entry) : entry;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    public long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    public long getEvictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    /**
+     * Removes every entry and resets the counters.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+                segment.hits = 0;
+                segment.misses = 0;
+                segment.evictions = 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache[size=" + size() + "/" + maximumSize + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+
+    /**
+     * One LRU part of the cache, guarded by its own monitor.
+     */
+    private static final class Segment {
+        private final int maximumSize;
+        private final LinkedHashMap<String, CacheEntry> entries;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        private Segment(int maximumSize) {
+            this.maximumSize = maximumSize;
+            this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 2594637283920518121L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    if (size() > Segment.this.maximumSize) {
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private synchronized CacheEntry get(String s) {
+            CacheEntry entry = entries.get(s);
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+            return entry;
+        }
+
+        private synchronized CacheEntry putIfAbsent(String s, CacheEntry entry) {
+            CacheEntry previous = entries.get(s);
+            if (previous != null) {
+                return previous; //another caller compiled it first, keep that one
+            }
+            entries.put(s, entry);
+            return entry;
+        }
+    }
+
+    private static final class CacheEntry {
+        //the optimizer drops the LET values that are never used, the CHECKED mode evaluates them for their overflow
+        private final CompiledExpression compiled;
+        private volatile CompiledExpression expression;
+        private volatile boolean optimized;
+        private long result;
+        private volatile boolean evaluated; //written after result, so a reader that sees it also sees the result
+        private long checkedResult;
+        private volatile boolean checkedEvaluated;
+        private volatile BigInteger bigResult;
+
+        private CacheEntry(CompiledExpression expression) {
+            this.compiled = expression;
+            this.expression = expression;
+        }
+
+        /**
+         * Two threads can optimize the same entry at once, they produce equivalent programs and either one is kept.
+         */
+        private void optimize() {
+            expression = ExpressionOptimizer.optimize(expression);
+            optimized = true;
+        }
+    }
+}
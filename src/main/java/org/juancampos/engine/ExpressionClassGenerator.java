@@ -0,0 +1,149 @@
+package org.juancampos.engine;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.ClassFileVersion;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
+import net.bytebuddy.jar.asm.MethodVisitor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.text.MessageFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.bytebuddy.jar.asm.Opcodes.ALOAD;
+import static net.bytebuddy.jar.asm.Opcodes.ICONST_0;
+import static net.bytebuddy.jar.asm.Opcodes.LADD;
+import static net.bytebuddy.jar.asm.Opcodes.LALOAD;
+import static net.bytebuddy.jar.asm.Opcodes.LCONST_0;
+import static net.bytebuddy.jar.asm.Opcodes.LDIV;
+import static net.bytebuddy.jar.asm.Opcodes.LLOAD;
+import static net.bytebuddy.jar.asm.Opcodes.LMUL;
+import static net.bytebuddy.jar.asm.Opcodes.LRETURN;
+import static net.bytebuddy.jar.asm.Opcodes.LSTORE;
+import static net.bytebuddy.jar.asm.Opcodes.LSUB;
+import static net.bytebuddy.jar.asm.Opcodes.SIPUSH;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+
+/**
+ * The bytecode tier of the evaluation: generates a class per hot expression whose evaluate method computes the
+ * expression directly, the postfix program becoming the same program on the operand stack of the JVM and every
+ * slot a long local. The JIT compiles and inlines the generated method like any other code, without the dispatch
+ * of the interpreter loop.
+ * - A parameter is read from the row once, into its local, before the program runs.
+ * - The arithmetic is the JVM one, the same as the interpreter: LDIV truncates and throws the same ArithmeticException.
+ * Every class is defined by its own class loader, so once the expression is dropped its class is unloaded and
+ * a long running process does not fill the metaspace. The generated code does not trace the instructions.
+ * Expressions of more than MAXIMUM_INSTRUCTIONS are left to the interpreter: the JIT does not compile huge methods.
+ * CompiledExpression generates its class once it has been evaluated calculator.generation.threshold times.
+ */
+public final class ExpressionClassGenerator {
+    private static final Logger LOGGER = LogManager.getLogger(ExpressionClassGenerator.class.getName());
+    public static final String GENERATED_CLASS = "Generated class {0} for expression {1}";
+    public static final String GENERATION_FAILED = "Class generation failed for expression {0}: {1}";
+    public static final int MAXIMUM_INSTRUCTIONS = 2000;
+    private static final String CLASS_NAME = "org.juancampos.engine.generated.Expression$";
+    private static final int ROW = 1;
+    private static final int FIRST_LOCAL = 2;
+    private static final AtomicLong CLASSES = new AtomicLong();
+
+    private ExpressionClassGenerator() {
+        // static helpers only
+    }
+
+    /**
+     * @param expression The compiled expression
+     * @return An instance of the class generated for the expression, or null if it is too big to generate or its
+     * generation failed, logged at DEBUG only.
+     */
+    public static GeneratedExpression generate(CompiledExpression expression) {
+        if (expression.size() + expression.getParameterCount() > MAXIMUM_INSTRUCTIONS) {
+            return null;
+        }
+        String name = CLASS_NAME + CLASSES.incrementAndGet();
+        try {
+            Class<? extends GeneratedExpression> type = new ByteBuddy(ClassFileVersion.JAVA_V8)
+                    .subclass(GeneratedExpression.class)
+                    .name(name)
+                    .method(named("evaluate"))
+                    .intercept(new Implementation.Simple((ByteCodeAppender) (method, context, description) -> evaluate(expression, method)))
+                    .make()
+                    .load(GeneratedExpression.class.getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                    .getLoaded();
+            GeneratedExpression generated = type.getDeclaredConstructor().newInstance();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(MessageFormat.format(GENERATED_CLASS, name, expression.getSource()));
+            }
+            return generated;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            if (LOGGER.isDebugEnabled()) { //the interpreter keeps evaluating it, nothing gets between the results
+                LOGGER.debug(MessageFormat.format(GENERATION_FAILED, expression.getSource(), e.getMessage()));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writes the body of evaluate(long[] row).
+     */
+    private static ByteCodeAppender.Size evaluate(CompiledExpression expression, MethodVisitor method) {
+        for (int p = 0; p < expression.getParameterCount(); p++) {
+            method.visitVarInsn(ALOAD, ROW);
+            pushInt(method, p);
+            method.visitInsn(LALOAD);
+            method.visitVarInsn(LSTORE, local(p));
+        }
+        for (int pc = 0; pc < expression.size(); pc++) {
+            long operand = expression.getOperand(pc);
+            switch (expression.getOpcode(pc)) {
+                case Opcodes.PUSH:
+                    pushLong(method, operand);
+                    break;
+                case Opcodes.LOAD:
+                    method.visitVarInsn(LLOAD, local((int) operand));
+                    break;
+                case Opcodes.STORE:
+                    method.visitVarInsn(LSTORE, local((int) operand));
+                    break;
+                case Opcodes.ADD:
+                    method.visitInsn(LADD);
+                    break;
+                case Opcodes.SUB:
+                    method.visitInsn(LSUB);
+                    break;
+                case Opcodes.MULT:
+                    method.visitInsn(LMUL);
+                    break;
+                case Opcodes.DIV:
+                    method.visitInsn(LDIV);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + expression.getOpcode(pc));
+            }
+        }
+        method.visitInsn(LRETURN);
+        //a long takes two words of the operand stack and two locals
+        return new ByteCodeAppender.Size(Math.max(2, 2 * expression.getMaxStackDepth()), local(expression.getSlotCount()));
+    }
+
+    private static int local(int slot) {
+        return FIRST_LOCAL + 2 * slot;
+    }
+
+    private static void pushInt(MethodVisitor method, int value) {
+        if (value <= 5) {
+            method.visitInsn(ICONST_0 + value);
+        } else { //there are less parameters than MAXIMUM_INSTRUCTIONS
+            method.visitIntInsn(SIPUSH, value);
+        }
+    }
+
+    private static void pushLong(MethodVisitor method, long value) {
+        if (value == 0 || value == 1) {
+            method.visitInsn(LCONST_0 + (int) value);
+        } else {
+            method.visitLdcInsn(value);
+        }
+    }
+}
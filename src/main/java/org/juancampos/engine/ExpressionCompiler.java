@@ -0,0 +1,333 @@
+package org.juancampos.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.enums.Operators;
+import org.juancampos.exceptions.CalculatorException;
+import org.juancampos.metrics.CalculatorMetrics;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles a normalized command string (the operators already substituted by their symbols,
+ * i.e. "+(1,*(2,3))") into a CompiledExpression.
+ * The string is parsed left to right once. Every operation emits its operands first and then
+ * the operation itself, which produces a postfix program that can be evaluated with a single stack.
+ * LET variables are resolved while parsing, so the evaluation reads a variable with an array index and never
+ * looks up a name. The scopes form a chain, one scope per LET body, each binding one variable, and a LET
+ * never outlives the evaluation of its body, so the chain is laid out on one slot table: the slot of a
+ * variable is the depth of its scope in the chain. A variable name is resolved to the slot of the innermost
+ * LET that declares it, which gives the shadowing of the README example
+ * let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b))) for free, and the LETs of sibling scopes share their
+ * slots, so the slot table is as big as the deepest chain, not as the number of LETs: the README example needs
+ * two slots, a and the second b, the first b having been released before a is stored.
+ * An expression can also be compiled with parameters, the free variables bound from outside at every
+ * evaluation: the parameters take the first slots, in the order they are given, and form the outermost scope,
+ * so a LET of the same name shadows them.
+ * The parser does not recurse: the operations and LETs still open are frames of an explicit stack, and a
+ * variable name is resolved with a map from the name to the slot of its innermost declaration, every LET
+ * restoring the slot it shadowed when it closes. So the time and the memory are linear in the length of the
+ * expression whatever its nesting, which is bounded by the system property calculator.max.depth
+ * (4194304 by default) instead of by the thread stack.
+ * A compiler instance holds the parsing state, so it is used once and thrown away.
+ * The CalculatorExceptions are thrown without being logged: the batch, server and script modes report them in the
+ * result of the expression, and only the callers know whether a failure is worth a log line.
+ */
+public final class ExpressionCompiler {
+    private static final Logger LOGGER = LogManager.getLogger(ExpressionCompiler.class.getName());
+    public static final String INVALID_ARGUMENT_FOR_CALCULATOR = "INVALID ARGUMENT FOR CALCULATOR";
+    public static final String MISSING_VARIABLES_NOT_ASSIGNED = "Missing Variables Not assigned";
+    public static final String COMPILED_EXPRESSION = "Compiled expression {0} into {1} instructions";
+    private static final String SHARED_SLOT = "/";
+    private static final int MAXIMUM_SLOT_NAME = 64;
+    public static final String EXPRESSION_TOO_DEEP = "Expression nested deeper than {0} levels";
+    public static final String MAXIMUM_DEPTH_PROPERTY = "calculator.max.depth";
+    public static final int DEFAULT_MAXIMUM_DEPTH = 1 << 22;
+    private static final int MAXIMUM_DEPTH = Integer.getInteger(MAXIMUM_DEPTH_PROPERTY, DEFAULT_MAXIMUM_DEPTH);
+    private static final int LET_FRAME = -1;
+    private static final int NONE = -1;
+
+    private static final char LET_OPERATOR = Operators.LET.getSymbol();
+    private static final char NEGATIVE = Operators.NEGATIVE.getSymbol();
+
+    private final String s;
+    private int position;
+    private int[] opcodes;
+    private long[] operands;
+    private int size;
+    private int depth;
+    private int maxDepth;
+    //the slot table: the name of every slot, and the depth of the scope chain, the next free slot
+    private String[] slotNames;
+    private int slotCount;
+    private int scopeDepth;
+    private final Map<String, Integer> scope;
+
+    //the frames of the operations and LETs still open: the opcode or LET_FRAME, if the second operand
+    //or the LET body is being parsed, and for a LET its variable and the slot it shadows
+    private final int maximumDepth;
+    private int[] frameOpcode = new int[16];
+    private boolean[] frameSecond = new boolean[16];
+    private String[] frameVariable = new String[16];
+    private int[] frameShadowed = new int[16];
+    private int frames;
+    private int maxFrames;
+
+    private ExpressionCompiler(String s, String[] parameters, int maximumDepth) {
+        this.s = s;
+        this.maximumDepth = maximumDepth;
+        this.opcodes = new int[Math.max(8, s.length() / 2)];
+        this.operands = new long[opcodes.length];
+        //sized for every LET up front, so a long let chain does not rehash the scope over and over
+        int slots = parameters.length + count(s, LET_OPERATOR);
+        this.slotNames = new String[Math.max(1, parameters.length)];
+        this.scope = new HashMap<>(slots * 4 / 3 + 1);
+        for (String parameter : parameters) {
+            if (parameter == null || parameter.isEmpty() || !parameter.chars().allMatch(Character::isAlphabetic)) {
+                throw new IllegalArgumentException("A parameter name must be made of letters: " + parameter);
+            }
+            if (scope.put(parameter, scopeDepth) != null) {
+                throw new IllegalArgumentException("Duplicate parameter name: " + parameter);
+            }
+            bind(parameter);
+        }
+    }
+
+    /**
+     * Compiles the normalized command string.
+     * @param s The normalized command string
+     * @return The compiled expression.
+     * @throws CalculatorException if the string is not a well formed expression or it uses a variable that is never assigned.
+     */
+    public static CompiledExpression compile(String s) {
+        return compile(s, new String[0]);
+    }
+
+    /**
+     * Compiles the normalized command string with free variables bound from outside.
+     * @param s The normalized command string, i.e. "+(X,*(Y,2))"
+     * @param parameters The names of the free variables, as in the command string. The index of a name is its
+     *                   column in the rows given to CompiledExpression.evaluate(long[]).
+     * @return The compiled expression.
+     * @throws CalculatorException if the string is not a well formed expression or it uses a variable that is
+     * neither a parameter nor assigned.
+     */
+    public static CompiledExpression compile(String s, String... parameters) {
+        return compile(s, MAXIMUM_DEPTH, parameters);
+    }
+
+    /**
+     * Compiles the normalized command string with free variables bound from outside.
+     * @param s The normalized command string
+     * @param maximumDepth The maximum number of operations and LETs nested in each other.
+     * @param parameters The names of the free variables, as in the command string.
+     * @return The compiled expression.
+     * @throws CalculatorException if the string is not a well formed expression, it is nested deeper than the
+     * maximum depth or it uses a variable that is neither a parameter nor assigned.
+     */
+    public static CompiledExpression compile(String s, int maximumDepth, String... parameters) {
+        if (s == null || s.length() == 0) {
+            throw new CalculatorException(INVALID_ARGUMENT_FOR_CALCULATOR);
+        }
+        ExpressionCompiler compiler = new ExpressionCompiler(s, parameters, maximumDepth);
+        compiler.expression();
+        if (compiler.position != s.length()) {
+            throw compiler.invalidArgument();
+        }
+        CompiledExpression compiled = new CompiledExpression(s, Arrays.copyOf(compiler.opcodes, compiler.size),
+                Arrays.copyOf(compiler.operands, compiler.size), compiler.maxDepth, Arrays.copyOf(compiler.slotNames, compiler.slotCount), parameters.length);
+        CalculatorMetrics.getInstance().expressionCompiled(compiled.size(), compiler.maxFrames);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format(COMPILED_EXPRESSION, s, compiled.size()));
+        }
+        return compiled;
+    }
+
+    /**
+     * Parses the expression at the current position. An operation or a LET opens a frame and the parser goes on
+     * with its first operand, or the value of the LET; a number or a variable is emitted, and then every frame
+     * whose operand is complete either goes on with its second operand, or the LET body, or is closed.
+     */
+    private void expression() {
+        operand();
+        while (frames > 0) {
+            int top = frames - 1;
+            if (frameOpcode[top] == LET_FRAME) {
+                String variableName = frameVariable[top];
+                if (!frameSecond[top]) {
+                    int slot = bind(variableName); //the value expression can not see the variable it assigns
+                    emit(Opcodes.STORE, slot);
+                    expect(',');
+                    Integer shadowed = scope.put(variableName, slot);
+                    frameShadowed[top] = shadowed == null ? NONE : shadowed;
+                    frameSecond[top] = true;
+                    operand();
+                } else {
+                    if (frameShadowed[top] == NONE) {
+                        scope.remove(variableName);
+                    } else {
+                        scope.put(variableName, frameShadowed[top]);
+                    }
+                    scopeDepth--; //the slot is free for the next sibling scope
+                    expect(')');
+                    frameVariable[top] = null;
+                    frames--;
+                }
+            } else if (!frameSecond[top]) {
+                expect(',');
+                frameSecond[top] = true;
+                operand();
+            } else {
+                expect(')');
+                emit(frameOpcode[top], 0);
+                frames--;
+            }
+        }
+    }
+
+    /**
+     * Opens the frames of the operations and LETs at the current position, down to the first number or variable,
+     * and emits it.
+     */
+    private void operand() {
+        while (true) {
+            char c = current();
+            int opcode = Opcodes.fromSymbol(c);
+            if (opcode >= 0) {
+                position++;
+                expect('(');
+                open(opcode, null);
+            } else if (c == LET_OPERATOR) {
+                position++;
+                expect('(');
+                String variableName = variableName();
+                expect(',');
+                open(LET_FRAME, variableName);
+            } else if (c == NEGATIVE || Character.isDigit(c)) {
+                emit(Opcodes.PUSH, number());
+                return;
+            } else if (Character.isAlphabetic(c)) {
+                emit(Opcodes.LOAD, resolve(variableName()));
+                return;
+            } else {
+                throw invalidArgument();
+            }
+        }
+    }
+
+    private void open(int opcode, String variableName) {
+        if (frames == maximumDepth) {
+            throw new CalculatorException(MessageFormat.format(EXPRESSION_TOO_DEEP, maximumDepth));
+        }
+        if (frames == frameOpcode.length) {
+            int capacity = frames * 2;
+            frameOpcode = Arrays.copyOf(frameOpcode, capacity);
+            frameSecond = Arrays.copyOf(frameSecond, capacity);
+            frameVariable = Arrays.copyOf(frameVariable, capacity);
+            frameShadowed = Arrays.copyOf(frameShadowed, capacity);
+        }
+        frameOpcode[frames] = opcode;
+        frameSecond[frames] = false;
+        frameVariable[frames] = variableName;
+        frames++;
+        maxFrames = Math.max(maxFrames, frames);
+    }
+
+    /**
+     * Opens the scope of a variable at the end of the scope chain.
+     * A slot shared by the variables of sibling scopes is named after all of them, up to MAXIMUM_SLOT_NAME characters.
+     * @return The slot of the variable.
+     */
+    private int bind(String variableName) {
+        int slot = scopeDepth++;
+        if (slot == slotCount) {
+            if (slotCount == slotNames.length) {
+                slotNames = Arrays.copyOf(slotNames, slotCount * 2);
+            }
+            slotNames[slotCount++] = variableName;
+        } else if (slotNames[slot].length() < MAXIMUM_SLOT_NAME
+                && !(SHARED_SLOT + slotNames[slot] + SHARED_SLOT).contains(SHARED_SLOT + variableName + SHARED_SLOT)) {
+            slotNames[slot] = slotNames[slot] + SHARED_SLOT + variableName;
+        }
+        return slot;
+    }
+
+    private static int count(String s, char symbol) {
+        int count = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == symbol) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private long number() {
+        int negate = 1;
+        if (current() == NEGATIVE) {
+            negate = -1;
+            position++;
+        }
+        if (!Character.isDigit(current())) {
+            throw invalidArgument();
+        }
+        long number = 0;
+        while (position < s.length() && Character.isDigit(s.charAt(position))) {
+            number = number * 10 + (s.charAt(position) - '0');
+            position++;
+        }
+        return number * negate;
+    }
+
+    private String variableName() {
+        int start = position;
+        while (position < s.length() && Character.isAlphabetic(s.charAt(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw invalidArgument();
+        }
+        return s.substring(start, position);
+    }
+
+    private int resolve(String variableName) {
+        Integer slot = scope.get(variableName);
+        if (slot != null) {
+            return slot;
+        }
+        throw new CalculatorException(MISSING_VARIABLES_NOT_ASSIGNED);
+    }
+
+    private char current() {
+        if (position >= s.length()) {
+            throw invalidArgument();
+        }
+        return s.charAt(position);
+    }
+
+    private void expect(char expected) {
+        if (current() != expected) {
+            throw invalidArgument();
+        }
+        position++;
+    }
+
+    private void emit(int opcode, long operand) {
+        if (size == opcodes.length) {
+            opcodes = Arrays.copyOf(opcodes, size * 2);
+            operands = Arrays.copyOf(operands, size * 2);
+        }
+        opcodes[size] = opcode;
+        operands[size] = operand;
+        size++;
+        depth += Opcodes.stackEffect(opcode);
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private CalculatorException invalidArgument() {
+        return new CalculatorException(INVALID_ARGUMENT_FOR_CALCULATOR);
+    }
+}
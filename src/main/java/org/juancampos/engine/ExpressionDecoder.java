@@ -0,0 +1,134 @@
+package org.juancampos.engine;
+
+import org.juancampos.exceptions.CalculatorException;
+import org.juancampos.utils.Varints;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Evaluates expressions straight from their binary frames (see ExpressionEncoder), without building a
+ * CompiledExpression: the instructions are executed as they are decoded, on the primitive stack and slots
+ * of an EvaluationContext.
+ * A frame comes from the network, so it is checked while it is evaluated: the header must fit the program,
+ * the stack must stay within the declared depth, every slot within the declared count, a slot must be stored
+ * before it is loaded, and the program must end exactly at the end of the frame with one value on the stack.
+ * The slots of the context are reused between evaluations, so a load of a slot never stored would otherwise read
+ * a value left by an earlier expression. A frame that breaks any of those rules
+ * throws a CalculatorException and a division by zero throws the ArithmeticException, as for text. The
+ * CalculatorException is not logged: a peer sending bad frames must not fill the output, the caller reports it.
+ */
+public final class ExpressionDecoder {
+    public static final String INVALID_FRAME = "Invalid expression frame";
+
+    private ExpressionDecoder() {
+        // static helpers only
+    }
+
+    /**
+     * Evaluates the frame at the position of the buffer with the scratch state of the calling thread.
+     * @param buffer The buffer, left after the frame
+     * @return The result of the expression.
+     */
+    public static long evaluate(ByteBuffer buffer) {
+        return evaluate(buffer, EvaluationContext.current());
+    }
+
+    /**
+     * Evaluates the frame at the position of the buffer.
+     * @param buffer The buffer, left after the frame
+     * @param context The scratch state, owned by the calling thread.
+     * @return The result of the expression.
+     */
+    public static long evaluate(ByteBuffer buffer, EvaluationContext context) {
+        try {
+            long bodySize = Varints.readUnsigned(buffer);
+            if (bodySize > buffer.remaining()) {
+                throw invalidFrame();
+            }
+            int end = buffer.position() + (int) bodySize;
+            long maxStackDepth = Varints.readUnsigned(buffer);
+            long slotCount = Varints.readUnsigned(buffer);
+            long instructions = Varints.readUnsigned(buffer);
+            //every instruction takes at least one byte and can push at most one value or store one slot
+            if (instructions > end - buffer.position() || maxStackDepth > instructions || slotCount > instructions) {
+                throw invalidFrame();
+            }
+            long[] stack = context.stack((int) maxStackDepth);
+            long[] slots = context.slots((int) slotCount);
+            //the slots stored so far, one bit each, in a long up to 64 slots so the common frames allocate nothing
+            long stored = 0L;
+            long[] storedWords = slotCount > Long.SIZE ? new long[(int) ((slotCount + Long.SIZE - 1) / Long.SIZE)] : null;
+            int top = -1;
+            for (long i = 0; i < instructions; i++) {
+                int opcode = buffer.get();
+                if (opcode == ExpressionEncoder.PUSH || opcode == ExpressionEncoder.LOAD) {
+                    if (top + 1 >= maxStackDepth) {
+                        throw invalidFrame();
+                    }
+                    if (opcode == ExpressionEncoder.PUSH) {
+                        stack[++top] = Varints.readSigned(buffer);
+                    } else {
+                        int slot = slot(buffer, slotCount);
+                        long word = storedWords == null ? stored : storedWords[slot / Long.SIZE];
+                        if ((word & 1L << slot) == 0) {
+                            throw invalidFrame();
+                        }
+                        stack[++top] = slots[slot];
+                    }
+                } else if (opcode == ExpressionEncoder.LET) {
+                    if (top < 0) {
+                        throw invalidFrame();
+                    }
+                    int slot = slot(buffer, slotCount);
+                    if (storedWords == null) {
+                        stored |= 1L << slot;
+                    } else {
+                        storedWords[slot / Long.SIZE] |= 1L << slot;
+                    }
+                    slots[slot] = stack[top--];
+                } else {
+                    if (top < 1) {
+                        throw invalidFrame();
+                    }
+                    top--;
+                    stack[top] = operation(opcode, stack[top], stack[top + 1]);
+                }
+            }
+            if (top != 0 || buffer.position() != end) {
+                throw invalidFrame();
+            }
+            return stack[0];
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw invalidFrame();
+        }
+    }
+
+    private static int slot(ByteBuffer buffer, long slotCount) {
+        long slot = Varints.readUnsigned(buffer);
+        if (slot >= slotCount) {
+            throw invalidFrame();
+        }
+        return (int) slot;
+    }
+
+    private static long operation(int opcode, long first, long second) {
+        if (opcode == ExpressionEncoder.ADD) {
+            return first + second;
+        }
+        if (opcode == ExpressionEncoder.SUB) {
+            return first - second;
+        }
+        if (opcode == ExpressionEncoder.MULT) {
+            return first * second;
+        }
+        if (opcode == ExpressionEncoder.DIV) {
+            return first / second;
+        }
+        throw invalidFrame();
+    }
+
+    private static CalculatorException invalidFrame() {
+        return new CalculatorException(INVALID_FRAME);
+    }
+}
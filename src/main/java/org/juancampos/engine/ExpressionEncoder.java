@@ -0,0 +1,110 @@
+package org.juancampos.engine;
+
+import org.juancampos.enums.Operators;
+import org.juancampos.utils.Varints;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes compiled expressions in the compact binary wire format, so a client can compile an expression once
+ * and send it any number of times without the keywords and the decimal digits being lexed again.
+ * A frame is the varint length of its body followed by the body: the varint maximum stack depth, the varint
+ * slot count, the varint instruction count and the instructions of the postfix program.
+ * Every instruction is one byte, the ordinal of its Operators constant (LET stores a variable) or PUSH and LOAD
+ * after them, followed by the zigzag varint literal of a PUSH or the varint slot of a LOAD or LET.
+ * The variables are interned into their slots, their names are not sent.
+ * Only constant expressions have a frame: the parameters of an expression (see ExpressionCompiler) are bound
+ * by the caller of CompiledExpression.evaluate(long[]) and the frame has no place for their values.
+ * ExpressionDecoder evaluates the frames.
+ */
+public final class ExpressionEncoder {
+    public static final int ADD = Operators.ADD.ordinal();
+    public static final int SUB = Operators.SUB.ordinal();
+    public static final int MULT = Operators.MULT.ordinal();
+    public static final int DIV = Operators.DIV.ordinal();
+    public static final int LET = Operators.LET.ordinal();
+    public static final int PUSH = Operators.values().length;
+    public static final int LOAD = PUSH + 1;
+
+    private ExpressionEncoder() {
+        // static helpers only
+    }
+
+    /**
+     * @param expression The compiled expression
+     * @return The frame of the expression.
+     */
+    public static byte[] encode(CompiledExpression expression) {
+        ByteBuffer buffer = ByteBuffer.allocate(frameSize(expression));
+        encode(expression, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Writes the frame of the expression at the position of the buffer.
+     * @param expression The compiled expression
+     * @param buffer The buffer, with at least frameSize bytes remaining.
+     */
+    public static void encode(CompiledExpression expression, ByteBuffer buffer) {
+        Varints.writeUnsigned(buffer, bodySize(expression));
+        Varints.writeUnsigned(buffer, expression.getMaxStackDepth());
+        Varints.writeUnsigned(buffer, expression.getSlotCount());
+        Varints.writeUnsigned(buffer, expression.size());
+        for (int pc = 0; pc < expression.size(); pc++) {
+            long operand = expression.getOperand(pc);
+            switch (expression.getOpcode(pc)) {
+                case Opcodes.PUSH:
+                    buffer.put((byte) PUSH);
+                    Varints.writeSigned(buffer, operand);
+                    break;
+                case Opcodes.LOAD:
+                    buffer.put((byte) LOAD);
+                    Varints.writeUnsigned(buffer, operand);
+                    break;
+                case Opcodes.STORE:
+                    buffer.put((byte) LET);
+                    Varints.writeUnsigned(buffer, operand);
+                    break;
+                default:
+                    buffer.put((byte) toWire(expression.getOpcode(pc)));
+            }
+        }
+    }
+
+    /**
+     * @param expression The compiled expression
+     * @return The number of bytes of the frame of the expression.
+     */
+    public static int frameSize(CompiledExpression expression) {
+        int body = bodySize(expression);
+        return Varints.sizeOfUnsigned(body) + body;
+    }
+
+    private static int bodySize(CompiledExpression expression) {
+        if (!expression.isConstant()) {
+            throw new IllegalArgumentException("An expression with parameters has no frame: " + expression.getSource());
+        }
+        int size = Varints.sizeOfUnsigned(expression.getMaxStackDepth()) + Varints.sizeOfUnsigned(expression.getSlotCount())
+                + Varints.sizeOfUnsigned(expression.size());
+        for (int pc = 0; pc < expression.size(); pc++) {
+            int opcode = expression.getOpcode(pc);
+            size++;
+            if (opcode == Opcodes.PUSH) {
+                size += Varints.sizeOfSigned(expression.getOperand(pc));
+            } else if (opcode == Opcodes.LOAD || opcode == Opcodes.STORE) {
+                size += Varints.sizeOfUnsigned(expression.getOperand(pc));
+            }
+        }
+        return size;
+    }
+
+    private static int toWire(int opcode) {
+        switch (opcode) {
+            case Opcodes.ADD: return ADD;
+            case Opcodes.SUB: return SUB;
+            case Opcodes.MULT: return MULT;
+            case Opcodes.DIV: return DIV;
+            default: throw new IllegalStateException("Unknown opcode " + opcode);
+        }
+    }
+}
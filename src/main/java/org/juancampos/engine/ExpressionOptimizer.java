@@ -0,0 +1,310 @@
+package org.juancampos.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compile time optimizer of the postfix programs, run between the compiler and the evaluation.
+ * The program is executed symbolically once: every value becomes a node of a graph instead of a number.
+ * - A LET does not store anything, its variable simply stands for the node of its value, so every binding is
+ *   inlined, and a binding whose value is constant becomes that constant.
+ * - An operation on two constants is folded into the constant it evaluates to, computed with the same long
+ *   arithmetic as the evaluation, so the truncating division is the same. An operation that overflows is not
+ *   folded, so the program still overflows when it is evaluated in the CHECKED or BIG numeric mode.
+ * - The nodes are hash consed, so structurally identical subexpressions are the same node. A node used more
+ *   than once is evaluated once into a temporary slot and loaded from there afterwards.
+ * A division that can throw, by zero or by an unknown value, is never folded. When its value is not needed
+ * any more, i.e. the only use was a LET variable that is never read, it is still evaluated so the optimized
+ * program throws the same ArithmeticException as the original one.
+ * The parameters of the expression are leaves like the constants, the LOAD of their slot, and keep their slots;
+ * the temporary slots come after them.
+ * The optimized program is a new CompiledExpression over the same source; the instruction set does not change.
+ */
+public final class ExpressionOptimizer {
+    private static final Logger LOGGER = LogManager.getLogger(ExpressionOptimizer.class.getName());
+    public static final String OPTIMIZED_EXPRESSION = "Optimized expression {0} from {1} into {2} instructions";
+    private static final String TEMPORARY = "$";
+    private static final int NONE = -1;
+
+    //the nodes: a constant has the PUSH opcode and its value, a parameter the LOAD opcode and its slot,
+    //an operation its opcode and two child nodes
+    private int[] opcode = new int[16];
+    private long[] value = new long[16];
+    private int[] left = new int[16];
+    private int[] right = new int[16];
+    private int nodes;
+    private final Map<Long, Integer> constants = new HashMap<>();
+    private final Map<OperationKey, Integer> operations = new HashMap<>();
+    private int[] pending = new int[16];
+    private int pendingTop;
+
+    //the emitted program
+    private int[] code;
+    private long[] operands;
+    private int size;
+    private int depth;
+    private int maxDepth;
+
+    private ExpressionOptimizer() {
+        // one optimizer per expression
+    }
+
+    /**
+     * @param expression The compiled expression
+     * @return The optimized expression, that evaluates to the same result or throws the same exception.
+     */
+    public static CompiledExpression optimize(CompiledExpression expression) {
+        CompiledExpression optimized = new ExpressionOptimizer().run(expression);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format(OPTIMIZED_EXPRESSION, expression.getSource(), expression.size(), optimized.size()));
+        }
+        return optimized;
+    }
+
+    private CompiledExpression run(CompiledExpression expression) {
+        int root = execute(expression);
+        int[] uses = new int[nodes];
+        boolean[] reachable = new boolean[nodes];
+        count(root, uses, reachable);
+        //divisions that can throw and are not part of the result any more, evaluated for their exception only
+        int[] discarded = new int[nodes];
+        int discardedCount = 0;
+        for (int node = 0; node < nodes; node++) {
+            if (opcode[node] == Opcodes.DIV && opcode[right[node]] != Opcodes.PUSH || isDivisionByZero(node)) {
+                if (!reachable[node]) {
+                    count(node, uses, reachable);
+                    discarded[discardedCount++] = node;
+                }
+            }
+        }
+        int parameters = expression.getParameterCount();
+        int[] temporary = new int[nodes];
+        int temporaries = 0;
+        for (int node = 0; node < nodes; node++) {
+            temporary[node] = uses[node] > 1 && !isLeaf(node) ? parameters + temporaries++ : NONE;
+        }
+        int discardSlot = discardedCount > 0 ? parameters + temporaries : NONE;
+        code = new int[16];
+        operands = new long[16];
+        boolean[] evaluated = new boolean[nodes];
+        for (int i = 0; i < discardedCount; i++) {
+            emit(discarded[i], temporary, evaluated);
+            instruction(Opcodes.STORE, discardSlot);
+        }
+        emit(root, temporary, evaluated);
+        String[] slotNames = new String[parameters + (discardSlot == NONE ? temporaries : temporaries + 1)];
+        for (int slot = 0; slot < slotNames.length; slot++) {
+            slotNames[slot] = slot < parameters ? expression.getSlotName(slot) : TEMPORARY + (slot - parameters);
+        }
+        return new CompiledExpression(expression.getSource(), Arrays.copyOf(code, size), Arrays.copyOf(operands, size),
+                maxDepth, slotNames, parameters);
+    }
+
+    /**
+     * Executes the program on nodes instead of numbers.
+     * @return The node of the result.
+     */
+    private int execute(CompiledExpression expression) {
+        int[] stack = new int[Math.max(1, expression.getMaxStackDepth())];
+        int[] slots = new int[expression.getSlotCount()];
+        for (int slot = 0; slot < expression.getParameterCount(); slot++) {
+            slots[slot] = node(Opcodes.LOAD, slot, NONE, NONE);
+        }
+        int top = -1;
+        for (int pc = 0; pc < expression.size(); pc++) {
+            long operand = expression.getOperand(pc);
+            switch (expression.getOpcode(pc)) {
+                case Opcodes.PUSH:
+                    stack[++top] = constant(operand);
+                    break;
+                case Opcodes.LOAD:
+                    stack[++top] = slots[(int) operand];
+                    break;
+                case Opcodes.STORE:
+                    slots[(int) operand] = stack[top--];
+                    break;
+                default:
+                    top--;
+                    stack[top] = operation(expression.getOpcode(pc), stack[top], stack[top + 1]);
+            }
+        }
+        return stack[top];
+    }
+
+    private int constant(long number) {
+        Integer node = constants.get(number);
+        if (node == null) {
+            node = node(Opcodes.PUSH, number, NONE, NONE);
+            constants.put(number, node);
+        }
+        return node;
+    }
+
+    private int operation(int op, int first, int second) {
+        if (opcode[first] == Opcodes.PUSH && opcode[second] == Opcodes.PUSH && !(op == Opcodes.DIV && value[second] == 0)) {
+            long folded = fold(op, value[first], value[second]);
+            if (!NumericEvaluator.overflows(op, value[first], value[second], folded)) {
+                return constant(folded);
+            }
+        }
+        OperationKey key = new OperationKey(op, first, second);
+        Integer node = operations.get(key);
+        if (node == null) {
+            node = node(op, 0, first, second);
+            operations.put(key, node);
+        }
+        return node;
+    }
+
+    /**
+     * The same arithmetic as CompiledExpression.evaluate and CalculatorService.operation.
+     */
+    static long fold(int op, long first, long second) {
+        switch (op) {
+            case Opcodes.ADD: return first + second;
+            case Opcodes.SUB: return first - second;
+            case Opcodes.MULT: return first * second;
+            case Opcodes.DIV: return first / second;
+            default: throw new IllegalStateException("Unknown opcode " + op);
+        }
+    }
+
+    private boolean isLeaf(int node) {
+        return opcode[node] == Opcodes.PUSH || opcode[node] == Opcodes.LOAD;
+    }
+
+    private boolean isDivisionByZero(int node) {
+        return opcode[node] == Opcodes.DIV && opcode[right[node]] == Opcodes.PUSH && value[right[node]] == 0;
+    }
+
+    private int node(int op, long number, int first, int second) {
+        if (nodes == opcode.length) {
+            int capacity = nodes * 2;
+            opcode = Arrays.copyOf(opcode, capacity);
+            value = Arrays.copyOf(value, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+        }
+        opcode[nodes] = op;
+        value[nodes] = number;
+        left[nodes] = first;
+        right[nodes] = second;
+        return nodes++;
+    }
+
+    /**
+     * Counts the uses of the nodes under the root that are not reachable yet: the root itself, and the
+     * children of every node reached for the first time, as every node is emitted once.
+     */
+    private void count(int root, int[] uses, boolean[] reachable) {
+        uses[root]++;
+        if (reachable[root]) {
+            return;
+        }
+        reachable[root] = true;
+        pendingTop = -1;
+        push(root);
+        while (pendingTop >= 0) {
+            int node = pending[pendingTop--];
+            if (!isLeaf(node)) {
+                use(left[node], uses, reachable);
+                use(right[node], uses, reachable);
+            }
+        }
+    }
+
+    private void use(int child, int[] uses, boolean[] reachable) {
+        uses[child]++;
+        if (!reachable[child]) {
+            reachable[child] = true;
+            push(child);
+        }
+    }
+
+    private void push(int node) {
+        if (pendingTop + 1 == pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        pending[++pendingTop] = node;
+    }
+
+    /**
+     * Emits the postfix program of the node, left operand first, without recursion so the depth of the
+     * expression is not bounded by the thread stack.
+     */
+    private void emit(int root, int[] temporary, boolean[] evaluated) {
+        int[] work = new int[16];
+        boolean[] expanded = new boolean[16];
+        int top = 0;
+        work[0] = root;
+        while (top >= 0) {
+            int node = work[top];
+            if (isLeaf(node)) {
+                instruction(opcode[node], value[node]);
+                top--;
+            } else if (evaluated[node]) {
+                instruction(Opcodes.LOAD, temporary[node]);
+                top--;
+            } else if (expanded[top]) {
+                instruction(opcode[node], 0);
+                evaluated[node] = temporary[node] != NONE;
+                if (evaluated[node]) {
+                    instruction(Opcodes.STORE, temporary[node]);
+                    instruction(Opcodes.LOAD, temporary[node]);
+                }
+                top--;
+            } else {
+                expanded[top] = true;
+                if (top + 2 >= work.length) {
+                    work = Arrays.copyOf(work, work.length * 2);
+                    expanded = Arrays.copyOf(expanded, expanded.length * 2);
+                }
+                work[++top] = right[node]; //the right operand is emitted after the left one
+                expanded[top] = false;
+                work[++top] = left[node];
+                expanded[top] = false;
+            }
+        }
+    }
+
+    private void instruction(int op, long operand) {
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+            operands = Arrays.copyOf(operands, size * 2);
+        }
+        code[size] = op;
+        operands[size] = operand;
+        size++;
+        depth += Opcodes.stackEffect(op);
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private static final class OperationKey {
+        private final int op;
+        private final int first;
+        private final int second;
+
+        private OperationKey(int op, int first, int second) {
+            this.op = op;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof OperationKey)) return false;
+            OperationKey that = (OperationKey) o;
+            return op == that.op && first == that.first && second == that.second;
+        }
+
+        @Override
+        public int hashCode() {
+            return (op * 31 + first) * 31 + second;
+        }
+    }
+}
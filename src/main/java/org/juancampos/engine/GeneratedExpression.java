@@ -0,0 +1,13 @@
+package org.juancampos.engine;
+
+/**
+ * The code of a hot expression, generated into its own class by ExpressionClassGenerator.
+ * It is public so the generated classes, defined by their own class loaders, can implement it.
+ */
+public interface GeneratedExpression {
+    /**
+     * @param row The value of every parameter, by parameter index. Empty for a constant expression.
+     * @return The result of the expression.
+     */
+    long evaluate(long[] row);
+}
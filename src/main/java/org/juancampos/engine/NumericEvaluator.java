@@ -0,0 +1,223 @@
+package org.juancampos.engine;
+
+import java.math.BigInteger;
+
+/**
+ * Evaluates compiled expressions in the CHECKED and BIG numeric modes (see NumericMode); the WRAPPING mode is
+ * CompiledExpression.evaluate itself.
+ * - CHECKED runs the same program with Math.addExact, subtractExact and multiplyExact, and a division that checks
+ *   the single overflowing case, Long.MIN_VALUE / -1. The first overflow throws an ArithmeticException with the
+ *   LONG_OVERFLOW message.
+ * - BIG keeps every value in the primitive stack and slots while it fits in a long. An operation that overflows
+ *   promotes its result to a BigInteger, kept in a parallel array created at the first promotion, and a BigInteger
+ *   result that fits in a long goes back to the primitive arrays. An expression that never overflows allocates nothing.
+ * The division truncates towards zero in every mode, and a division by zero throws the ArithmeticException.
+ */
+public final class NumericEvaluator {
+    public static final String LONG_OVERFLOW = "long overflow";
+
+    private NumericEvaluator() {
+        // static helpers only
+    }
+
+    /**
+     * @param expression The compiled expression, without parameters
+     * @return The result of the expression.
+     * @throws ArithmeticException if an operation overflows or divides by zero.
+     */
+    public static long evaluateChecked(CompiledExpression expression) {
+        return evaluateChecked(expression, CompiledExpression.NO_PARAMETERS, EvaluationContext.current());
+    }
+
+    /**
+     * @param expression The compiled expression
+     * @param row The value of every parameter, by parameter index
+     * @param context The scratch state, owned by the calling thread.
+     * @return The result of the expression.
+     * @throws ArithmeticException if an operation overflows or divides by zero.
+     */
+    public static long evaluateChecked(CompiledExpression expression, long[] row, EvaluationContext context) {
+        expression.checkParameters(row.length);
+        long[] stack = context.stack(expression.getMaxStackDepth());
+        long[] slots = context.slots(expression.getSlotCount());
+        System.arraycopy(row, 0, slots, 0, expression.getParameterCount());
+        int top = -1;
+        for (int pc = 0; pc < expression.size(); pc++) {
+            switch (expression.getOpcode(pc)) {
+                case Opcodes.PUSH:
+                    stack[++top] = expression.getOperand(pc);
+                    break;
+                case Opcodes.LOAD:
+                    stack[++top] = slots[(int) expression.getOperand(pc)];
+                    break;
+                case Opcodes.STORE:
+                    slots[(int) expression.getOperand(pc)] = stack[top--];
+                    break;
+                case Opcodes.ADD:
+                    top--;
+                    stack[top] = Math.addExact(stack[top], stack[top + 1]);
+                    break;
+                case Opcodes.SUB:
+                    top--;
+                    stack[top] = Math.subtractExact(stack[top], stack[top + 1]);
+                    break;
+                case Opcodes.MULT:
+                    top--;
+                    stack[top] = Math.multiplyExact(stack[top], stack[top + 1]);
+                    break;
+                case Opcodes.DIV:
+                    top--;
+                    if (stack[top] == Long.MIN_VALUE && stack[top + 1] == -1) {
+                        throw new ArithmeticException(LONG_OVERFLOW);
+                    }
+                    stack[top] = stack[top] / stack[top + 1];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + expression.getOpcode(pc));
+            }
+        }
+        return stack[top];
+    }
+
+    /**
+     * @param expression The compiled expression, without parameters
+     * @return The exact result of the expression.
+     * @throws ArithmeticException if an operation divides by zero.
+     */
+    public static BigInteger evaluateBig(CompiledExpression expression) {
+        return evaluateBig(expression, CompiledExpression.NO_PARAMETERS, EvaluationContext.current());
+    }
+
+    /**
+     * @param expression The compiled expression
+     * @param row The value of every parameter, by parameter index
+     * @param context The scratch state, owned by the calling thread.
+     * @return The exact result of the expression.
+     * @throws ArithmeticException if an operation divides by zero.
+     */
+    public static BigInteger evaluateBig(CompiledExpression expression, long[] row, EvaluationContext context) {
+        return evaluateBig(expression, row, null, context);
+    }
+
+    /**
+     * @param expression The compiled expression
+     * @param row The value of every parameter that fits in a long, by parameter index
+     * @param bigRow The value of every parameter that does not fit in a long, by parameter index, null where the
+     *               value is the one of the row. The array itself can be null when every value fits.
+     * @param context The scratch state, owned by the calling thread.
+     * @return The exact result of the expression.
+     * @throws ArithmeticException if an operation divides by zero.
+     */
+    public static BigInteger evaluateBig(CompiledExpression expression, long[] row, BigInteger[] bigRow, EvaluationContext context) {
+        expression.checkParameters(row.length);
+        long[] stack = context.stack(expression.getMaxStackDepth());
+        long[] slots = context.slots(expression.getSlotCount());
+        System.arraycopy(row, 0, slots, 0, expression.getParameterCount());
+        BigInteger[] bigStack = null; //a value is promoted where these are not null
+        BigInteger[] bigSlots = null;
+        for (int p = 0; bigRow != null && p < expression.getParameterCount(); p++) {
+            if (bigRow[p] != null) {
+                if (bigStack == null) {
+                    bigStack = new BigInteger[stack.length];
+                    bigSlots = new BigInteger[expression.getSlotCount()];
+                }
+                bigSlots[p] = bigRow[p];
+            }
+        }
+        int top = -1;
+        for (int pc = 0; pc < expression.size(); pc++) {
+            int opcode = expression.getOpcode(pc);
+            switch (opcode) {
+                case Opcodes.PUSH:
+                    stack[++top] = expression.getOperand(pc);
+                    if (bigStack != null) {
+                        bigStack[top] = null;
+                    }
+                    break;
+                case Opcodes.LOAD:
+                    int load = (int) expression.getOperand(pc);
+                    stack[++top] = slots[load];
+                    if (bigStack != null) {
+                        bigStack[top] = bigSlots[load];
+                    }
+                    break;
+                case Opcodes.STORE:
+                    int store = (int) expression.getOperand(pc);
+                    slots[store] = stack[top];
+                    if (bigStack != null) {
+                        bigSlots[store] = bigStack[top];
+                    }
+                    top--;
+                    break;
+                default:
+                    top--;
+                    if (bigStack == null || bigStack[top] == null && bigStack[top + 1] == null) {
+                        long first = stack[top];
+                        long second = stack[top + 1];
+                        long result = operate(opcode, first, second);
+                        if (!overflows(opcode, first, second, result)) {
+                            stack[top] = result;
+                            break;
+                        }
+                        if (bigStack == null) {
+                            bigStack = new BigInteger[stack.length];
+                            bigSlots = new BigInteger[expression.getSlotCount()];
+                        }
+                        bigStack[top] = operate(opcode, BigInteger.valueOf(first), BigInteger.valueOf(second));
+                    } else {
+                        BigInteger result = operate(opcode, big(stack, bigStack, top), big(stack, bigStack, top + 1));
+                        if (result.bitLength() < Long.SIZE) {
+                            stack[top] = result.longValue();
+                            bigStack[top] = null;
+                        } else {
+                            bigStack[top] = result;
+                        }
+                    }
+            }
+        }
+        return big(stack, bigStack, top);
+    }
+
+    private static long operate(int opcode, long first, long second) {
+        switch (opcode) {
+            case Opcodes.ADD: return first + second;
+            case Opcodes.SUB: return first - second;
+            case Opcodes.MULT: return first * second;
+            case Opcodes.DIV: return first / second;
+            default: throw new IllegalStateException("Unknown opcode " + opcode);
+        }
+    }
+
+    private static BigInteger operate(int opcode, BigInteger first, BigInteger second) {
+        switch (opcode) {
+            case Opcodes.ADD: return first.add(second);
+            case Opcodes.SUB: return first.subtract(second);
+            case Opcodes.MULT: return first.multiply(second);
+            case Opcodes.DIV: return first.divide(second);
+            default: throw new IllegalStateException("Unknown opcode " + opcode);
+        }
+    }
+
+    /**
+     * The overflow checks of Math.addExact, subtractExact and multiplyExact, without the exception.
+     */
+    static boolean overflows(int opcode, long first, long second, long result) {
+        switch (opcode) {
+            case Opcodes.ADD:
+                return ((first ^ result) & (second ^ result)) < 0;
+            case Opcodes.SUB:
+                return ((first ^ second) & (first ^ result)) < 0;
+            case Opcodes.MULT:
+                if (((Math.abs(first) | Math.abs(second)) >>> 31) == 0) {
+                    return false;
+                }
+                return second != 0 && result / second != first || first == Long.MIN_VALUE && second == -1;
+            default:
+                return first == Long.MIN_VALUE && second == -1;
+        }
+    }
+
+    private static BigInteger big(long[] stack, BigInteger[] bigStack, int index) {
+        return bigStack != null && bigStack[index] != null ? bigStack[index] : BigInteger.valueOf(stack[index]);
+    }
+}
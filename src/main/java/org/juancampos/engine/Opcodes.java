@@ -0,0 +1,58 @@
+package org.juancampos.engine;
+
+import org.juancampos.enums.Operators;
+
+/**
+ * Instruction set of a compiled expression.
+ * A compiled expression is a flat postfix program, every instruction is an opcode
+ * with a single long operand. The operand is the literal value for PUSH and the
+ * variable slot for LOAD and STORE, the arithmetic instructions ignore it.
+ */
+public final class Opcodes {
+    public static final int PUSH = 0;
+    public static final int LOAD = 1;
+    public static final int STORE = 2;
+    public static final int ADD = 3;
+    public static final int SUB = 4;
+    public static final int MULT = 5;
+    public static final int DIV = 6;
+
+    private Opcodes() {
+        // constants only
+    }
+
+    /**
+     * Maps an operator symbol of the normalized command string to its arithmetic opcode.
+     * @param symbol The operator symbol, i.e. '+' for ADD
+     * @return The opcode or -1 if the symbol is not an arithmetic operator.
+     */
+    public static int fromSymbol(char symbol) {
+        if (symbol == Operators.ADD.getSymbol()) return ADD;
+        if (symbol == Operators.SUB.getSymbol()) return SUB;
+        if (symbol == Operators.MULT.getSymbol()) return MULT;
+        if (symbol == Operators.DIV.getSymbol()) return DIV;
+        return -1;
+    }
+
+    /**
+     * The net effect of an instruction on the depth of the evaluation stack.
+     * @param opcode The opcode
+     * @return +1 for instructions that push a value, -1 for the ones that consume one.
+     */
+    public static int stackEffect(int opcode) {
+        return opcode == PUSH || opcode == LOAD ? 1 : -1;
+    }
+
+    public static String name(int opcode) {
+        switch (opcode) {
+            case PUSH: return "PUSH";
+            case LOAD: return "LOAD";
+            case STORE: return "STORE";
+            case ADD: return "ADD";
+            case SUB: return "SUB";
+            case MULT: return "MULT";
+            case DIV: return "DIV";
+            default: return "UNKNOWN";
+        }
+    }
+}
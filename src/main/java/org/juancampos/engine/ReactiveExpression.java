@@ -0,0 +1,297 @@
+package org.juancampos.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Incremental evaluation of an expression with parameters whose values change a few at a time, i.e. a big pricing
+ * formula where one or two inputs move on every tick.
+ * The program is executed once symbolically, as in ExpressionOptimizer, into a graph of nodes: a node per parameter,
+ * per constant and per operation, a LET variable standing for the node of its value, so a value bound once and used
+ * many times is one node. Every node keeps its last value and knows the nodes that use it. The nodes are numbered
+ * in the order of the program, so a node always comes after its operands.
+ * Setting a parameter marks its node dirty; recompute then recomputes the dirty nodes in the order of their numbers,
+ * from a heap, and marks dirty the users of the nodes whose value did change. A node whose value comes out the same
+ * stops the propagation, so only the operations that depend on the changed inputs are recomputed, and every other
+ * operation keeps its cached value.
+ * The arithmetic is the one of the WRAPPING mode. As the program evaluates every instruction, the result fails while
+ * any division, used or not, divides by zero; the values of the other nodes are kept and the next recompute that
+ * clears the division gives a result again.
+ * The listeners are told about every recompute that changes the result. An instance is not thread safe: it is owned
+ * by the thread that updates it, the one the listeners are called on.
+ */
+public final class ReactiveExpression {
+    private static final Logger LOGGER = LogManager.getLogger(ReactiveExpression.class.getName());
+    public static final String RECOMPUTED_NODES = "Recomputed {0} of {1} nodes of {2}";
+    public static final String DIVISION_BY_ZERO = "/ by zero";
+
+    private final CompiledExpression expression;
+    private final int root;
+    //the nodes: the opcode, PUSH for a constant and LOAD for a parameter, the operands of an operation,
+    //the value, whether it is missing because of a division by zero, its own or of an operand, and whether it is its own
+    private final int[] opcode;
+    private final int[] left;
+    private final int[] right;
+    private final long[] value;
+    private final boolean[] failed;
+    private final boolean[] dividesByZero;
+    private final int nodes;
+    //the users of every node, users[usersStart[node] .. usersStart[node + 1])
+    private final int[] usersStart;
+    private final int[] users;
+    //the dirty nodes, a heap ordered by number
+    private final int[] heap;
+    private final boolean[] queued;
+    private int heapSize;
+    private int divisionsByZero;
+    private int recomputed;
+    private long result;
+    private final List<ResultListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Builds the graph of the expression and computes every node once.
+     * @param expression The expression, with or without parameters
+     * @param row The initial value of every parameter, by parameter index
+     */
+    public ReactiveExpression(CompiledExpression expression, long[] row) {
+        expression.checkParameters(row.length);
+        this.expression = expression;
+        int capacity = expression.getParameterCount() + expression.size();
+        opcode = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        value = new long[capacity];
+        failed = new boolean[capacity];
+        dividesByZero = new boolean[capacity];
+        int[] stack = new int[Math.max(1, expression.getMaxStackDepth())];
+        int[] slots = new int[expression.getSlotCount()];
+        int count = 0;
+        for (int p = 0; p < expression.getParameterCount(); p++) {
+            opcode[count] = Opcodes.LOAD;
+            value[count] = row[p];
+            slots[p] = count++;
+        }
+        int top = -1;
+        for (int pc = 0; pc < expression.size(); pc++) {
+            int op = expression.getOpcode(pc);
+            switch (op) {
+                case Opcodes.PUSH:
+                    opcode[count] = Opcodes.PUSH;
+                    value[count] = expression.getOperand(pc);
+                    stack[++top] = count++;
+                    break;
+                case Opcodes.LOAD:
+                    stack[++top] = slots[(int) expression.getOperand(pc)];
+                    break;
+                case Opcodes.STORE:
+                    slots[(int) expression.getOperand(pc)] = stack[top--];
+                    break;
+                default:
+                    top--;
+                    opcode[count] = op;
+                    left[count] = stack[top];
+                    right[count] = stack[top + 1];
+                    compute(count);
+                    stack[top] = count++;
+            }
+        }
+        nodes = count;
+        root = stack[top];
+        usersStart = new int[nodes + 1];
+        for (int node = 0; node < nodes; node++) {
+            if (isOperation(node)) {
+                usersStart[left[node] + 1]++;
+                usersStart[right[node] + 1]++;
+            }
+        }
+        for (int node = 0; node < nodes; node++) {
+            usersStart[node + 1] += usersStart[node];
+        }
+        users = new int[usersStart[nodes]];
+        int[] next = Arrays.copyOf(usersStart, nodes);
+        for (int node = 0; node < nodes; node++) {
+            if (isOperation(node)) {
+                users[next[left[node]]++] = node;
+                users[next[right[node]]++] = node;
+            }
+        }
+        heap = new int[nodes];
+        queued = new boolean[nodes];
+        result = value[root];
+    }
+
+    /**
+     * Sets the value of a parameter. Nothing is recomputed until recompute is called, so several parameters of
+     * the same tick can be set first.
+     * @param parameter The parameter index
+     * @param newValue The new value
+     */
+    public void set(int parameter, long newValue) {
+        if (parameter < 0 || parameter >= expression.getParameterCount()) {
+            throw new IllegalArgumentException("No parameter " + parameter + ", the expression has " + expression.getParameterCount());
+        }
+        if (value[parameter] != newValue) {
+            value[parameter] = newValue;
+            dirtyUsers(parameter);
+        }
+    }
+
+    /**
+     * @param parameter The parameter name, in any case
+     * @param newValue The new value
+     */
+    public void set(String parameter, long newValue) {
+        int index = expression.getParameterIndex(parameter);
+        if (index < 0) {
+            throw new IllegalArgumentException("No parameter " + parameter);
+        }
+        set(index, newValue);
+    }
+
+    /**
+     * Sets a parameter and recomputes the expression.
+     * @param parameter The parameter name, in any case
+     * @param newValue The new value
+     * @return The result of the expression.
+     * @throws ArithmeticException if a division of the expression divides by zero.
+     */
+    public long update(String parameter, long newValue) {
+        set(parameter, newValue);
+        return recompute();
+    }
+
+    /**
+     * Recomputes the nodes that depend on the parameters set since the last recompute, and tells the listeners
+     * if the result changed.
+     * @return The result of the expression.
+     * @throws ArithmeticException if a division of the expression divides by zero. The parameters stay set.
+     */
+    public long recompute() {
+        recomputed = 0;
+        while (heapSize > 0) {
+            int node = poll();
+            boolean wasFailed = failed[node];
+            long previous = value[node];
+            compute(node);
+            recomputed++;
+            if (failed[node] != wasFailed || value[node] != previous) {
+                dirtyUsers(node);
+            }
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format(RECOMPUTED_NODES, recomputed, nodes, expression.getSource()));
+        }
+        if (divisionsByZero > 0) {
+            throw new ArithmeticException(DIVISION_BY_ZERO);
+        }
+        long previous = result;
+        result = value[root];
+        if (result != previous) {
+            for (ResultListener listener : listeners) {
+                listener.resultChanged(previous, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The result of the last recompute, or the initial one.
+     * @throws ArithmeticException if a division of the expression divides by zero.
+     */
+    public long getResult() {
+        if (divisionsByZero > 0) {
+            throw new ArithmeticException(DIVISION_BY_ZERO);
+        }
+        return result;
+    }
+
+    public void addListener(ResultListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ResultListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return The number of nodes of the graph: parameters, constants and operations.
+     */
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * @return The number of operations the last recompute computed again.
+     */
+    public int getRecomputedCount() {
+        return recomputed;
+    }
+
+    /**
+     * Computes an operation from the values of its operands, keeping the count of the divisions by zero.
+     */
+    private void compute(int node) {
+        boolean divisionByZero = false;
+        if (failed[left[node]] || failed[right[node]]) {
+            failed[node] = true;
+        } else if (opcode[node] == Opcodes.DIV && value[right[node]] == 0) {
+            failed[node] = true;
+            divisionByZero = true;
+        } else {
+            failed[node] = false;
+            value[node] = ExpressionOptimizer.fold(opcode[node], value[left[node]], value[right[node]]);
+        }
+        if (divisionByZero != dividesByZero[node]) {
+            dividesByZero[node] = divisionByZero;
+            divisionsByZero += divisionByZero ? 1 : -1;
+        }
+    }
+
+    private boolean isOperation(int node) {
+        return opcode[node] != Opcodes.PUSH && opcode[node] != Opcodes.LOAD;
+    }
+
+    private void dirtyUsers(int node) {
+        for (int i = usersStart[node]; i < usersStart[node + 1]; i++) {
+            int user = users[i];
+            if (!queued[user]) {
+                queued[user] = true;
+                offer(user);
+            }
+        }
+    }
+
+    private void offer(int node) {
+        int i = heapSize++;
+        while (i > 0 && heap[(i - 1) / 2] > node) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = node;
+    }
+
+    private int poll() {
+        int first = heap[0];
+        int last = heap[--heapSize];
+        int i = 0;
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        queued[first] = false;
+        return first;
+    }
+}
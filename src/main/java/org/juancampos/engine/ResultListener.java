@@ -0,0 +1,13 @@
+package org.juancampos.engine;
+
+/**
+ * Callback of a ReactiveExpression, called on the thread that updates its parameters.
+ */
+public interface ResultListener {
+    /**
+     * Called when a recomputation changes the result of the expression.
+     * @param previous The last result the listeners were told about, or the initial one.
+     * @param current The new result.
+     */
+    void resultChanged(long previous, long current);
+}
@@ -0,0 +1,26 @@
+package org.juancampos.enums;
+
+/**
+ * Outcome of evaluating one expression, either a result or the reason there is none.
+ */
+public enum EvaluationStatus {
+    OK("OK"),
+    EMPTY_COMMAND("Input is empty command"),
+    INVALID_CHARACTERS("Invalid characters in input"),
+    INVALID_PARENTHESIS("Input command has invalid parenthesis"),
+    INVALID_FIRST_OPERATION("Input command has invalid first operation"),
+    INVALID_ARGUMENT("INVALID ARGUMENT FOR CALCULATOR"),
+    ARITHMETIC_ERROR("Arithmetic error"),
+    OVERFLOW("Long overflow"),
+    CIRCULAR_DEFINITION("Circular definition"),
+    FAILED_DEPENDENCY("Depends on a definition that failed");
+
+    private final String message;
+
+    EvaluationStatus(String message) {
+        this.message = message;
+    }
+    public String getMessage(){
+        return message;
+    }
+}
@@ -0,0 +1,21 @@
+package org.juancampos.enums;
+
+/**
+ * The arithmetic of an evaluation.
+ */
+public enum NumericMode {
+    /**
+     * Java long arithmetic, an overflow wraps around silently. The fastest mode, and the only one of the
+     * columnar evaluation, the generated classes and the binary frames.
+     */
+    WRAPPING,
+    /**
+     * Long arithmetic that fails fast: an operation that overflows throws an ArithmeticException ("long overflow").
+     */
+    CHECKED,
+    /**
+     * Arbitrary precision: the values stay primitive longs while they fit, and only a value that overflows is
+     * promoted to a BigInteger, demoted again as soon as a result fits in a long.
+     */
+    BIG
+}
@@ -0,0 +1,20 @@
+package org.juancampos.enums;
+
+/**
+ * The phases of the evaluation of one expression, each one with its own latency histogram (see CalculatorMetrics).
+ */
+public enum Phase {
+    LEX("Lex"),
+    VALIDATE("Validate"),
+    CALCULATE("Calculate");
+
+    private final String displayName;
+
+    Phase(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,202 @@
+package org.juancampos.journal;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.enums.NumericMode;
+import org.juancampos.utils.EvaluationResult;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous journal of the evaluations: the normalized expression, its result or error status, the numeric mode,
+ * when it was evaluated and how long the calculation took, written to segment files that JournalReplay runs again.
+ * The evaluating threads only copy the references and numbers of a record into the next slot of a ring buffer:
+ * a slot is claimed with a compare and set of the claimed sequence and published with an ordered write of its
+ * sequence, so there is no lock and no allocation on the hot path. A single writer thread takes the published slots
+ * in order, encodes them and appends them to memory mapped segments (see JournalWriter).
+ * When the writer falls behind and the ring is full the record is dropped and counted, the evaluation never waits
+ * for the disk. close drains the ring before it returns. A record that claims its slot while the journal closes
+ * checks again after the claim: the writer may already have stopped, so the slot is published empty, for a writer
+ * still draining to skip, and the record is dropped.
+ */
+public class EvaluationJournal implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(EvaluationJournal.class.getName());
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final String JOURNAL_CLOSED = "Journal {0} closed: {1} records written, {2} dropped";
+    public static final String JOURNAL_WRITE_FAILED = "Journal {0} write failed, the records are dropped from now on: {1}";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Path directory;
+    private final int mask;
+    private final String[] commands;
+    private final byte[] modes;
+    private final byte[] statuses;
+    private final long[] values;
+    private final BigInteger[] bigValues;
+    private final long[] starts;
+    private final long[] nanos;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final JournalWriter writer;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean failed;
+
+    /**
+     * @param directory The directory of the segments, created if needed
+     * @throws IOException if the first segment can not be created.
+     */
+    public EvaluationJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_CAPACITY, JournalWriter.DEFAULT_SEGMENT_SIZE, 0);
+    }
+
+    /**
+     * @param directory The directory of the segments, created if needed
+     * @param capacity The number of records the ring buffer holds, rounded up to a power of two
+     * @param segmentSize The size of a segment file in bytes
+     * @param maximumSegments The number of segments kept, the oldest ones are deleted. Zero keeps them all.
+     * @throws IOException if the first segment can not be created.
+     */
+    public EvaluationJournal(Path directory, int capacity, int segmentSize, int maximumSegments) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity of the journal must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        size = size == 0 ? 1 : size;
+        this.directory = directory;
+        this.mask = size - 1;
+        commands = new String[size];
+        modes = new byte[size];
+        statuses = new byte[size];
+        values = new long[size];
+        bigValues = new BigInteger[size];
+        starts = new long[size];
+        nanos = new long[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        writer = new JournalWriter(directory, segmentSize, maximumSegments);
+        thread = new Thread(this::write, "calculator-journal-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Adds an evaluation to the journal, without waiting.
+     * @param command The normalized command
+     * @param mode The arithmetic of the evaluation
+     * @param result The result
+     * @param start The System.nanoTime when the calculation started
+     * @param calculationNanos The nanoseconds the calculation took, zero for an expression that was not valid
+     * @return False if the record was dropped: the ring is full, the journal is closed or it failed.
+     */
+    public boolean record(String command, NumericMode mode, EvaluationResult result, long start, long calculationNanos) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (!running || failed || sequence - consumed.get() > mask) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mask;
+        if (!running) {
+            //closed between the check and the claim: the writer may have stopped before the slot was claimed
+            commands[slot] = null;
+            bigValues[slot] = null;
+            published.lazySet(slot, sequence);
+            dropped.increment();
+            return false;
+        }
+        commands[slot] = command;
+        modes[slot] = (byte) mode.ordinal();
+        statuses[slot] = (byte) result.getStatus().ordinal();
+        values[slot] = result.getValue();
+        bigValues[slot] = result.isBig() ? result.getBigValue() : null;
+        starts[slot] = start;
+        nanos[slot] = calculationNanos;
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    /**
+     * @return The number of records written to the segments so far.
+     */
+    public long getWritten() {
+        return writer.getRecords();
+    }
+
+    /**
+     * @return The number of records dropped because the ring was full, the journal closed or failed.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stops taking records, waits until the writer has written every record taken and closes the segments.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(MessageFormat.format(JOURNAL_CLOSED, directory, getWritten(), getDropped()));
+        }
+    }
+
+    /**
+     * The loop of the writer thread: writes the published slots in order, skipping the empty ones of the records
+     * dropped by the close, parks while there are none, and once the journal is closed drains the slots claimed
+     * before it stops.
+     */
+    private void write() {
+        try {
+            long next = 0;
+            while (true) {
+                int slot = (int) next & mask;
+                if (published.get(slot) == next) {
+                    if (commands[slot] != null) {
+                        writer.append(commands[slot], modes[slot], statuses[slot], values[slot], bigValues[slot],
+                                starts[slot], nanos[slot]);
+                    }
+                    commands[slot] = null;
+                    bigValues[slot] = null;
+                    consumed.lazySet(++next);
+                } else if (!running && next == claimed.get()) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            LOGGER.error(MessageFormat.format(JOURNAL_WRITE_FAILED, directory, e.getMessage()));
+        } finally {
+            writer.close();
+        }
+    }
+}
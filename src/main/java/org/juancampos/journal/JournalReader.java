@@ -0,0 +1,144 @@
+package org.juancampos.journal;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.enums.EvaluationStatus;
+import org.juancampos.enums.NumericMode;
+import org.juancampos.exceptions.CalculatorException;
+import org.juancampos.utils.Varints;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reads the records of a journal back, segment by segment in the order they were written (see JournalWriter for the
+ * format). Every segment is mapped read only. A journal is read once it is closed: the records a running journal is
+ * writing may be incomplete.
+ */
+public class JournalReader {
+    private static final Logger LOGGER = LogManager.getLogger(JournalReader.class.getName());
+    public static final String INVALID_SEGMENT = "Invalid journal segment {0}";
+    public static final String NO_SEGMENTS = "No journal segments in {0}";
+
+    private final Path directory;
+
+    /**
+     * Consumer of the records of the journal.
+     */
+    public interface RecordConsumer {
+        void accept(JournalRecord record) throws IOException;
+    }
+
+    /**
+     * @param directory The directory of the segments
+     */
+    public JournalReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Hands every record of the journal, in order, to the consumer.
+     * @param consumer The consumer of the records
+     * @return The number of records read.
+     * @throws IOException if a segment can not be read or the consumer fails.
+     * @throws CalculatorException if the directory has no segments, or one of them is not a journal segment or is corrupted.
+     */
+    public long forEachRecord(RecordConsumer consumer) throws IOException {
+        List<Path> segments = segments(directory);
+        if (segments.isEmpty()) {
+            String message = MessageFormat.format(NO_SEGMENTS, directory);
+            LOGGER.error(message);
+            throw new CalculatorException(message);
+        }
+        long records = 0;
+        for (Path segment : segments) {
+            records += read(segment, consumer);
+        }
+        return records;
+    }
+
+    private static long read(Path file, RecordConsumer consumer) throws IOException {
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        EvaluationStatus[] statuses = EvaluationStatus.values();
+        NumericMode[] modes = NumericMode.values();
+        long records = 0;
+        try {
+            if (segment.getInt() != JournalWriter.MAGIC || segment.get() != JournalWriter.VERSION) {
+                throw invalidSegment(file);
+            }
+            long timestamp = segment.getLong();
+            while (segment.hasRemaining()) {
+                int size = (int) Varints.readUnsigned(segment);
+                if (size == 0) {
+                    break;
+                }
+                int end = segment.position() + size;
+                timestamp += Varints.readSigned(segment);
+                long nanos = Varints.readUnsigned(segment);
+                int flags = segment.get() & 0xFF;
+                BigInteger bigValue = null;
+                long value = 0;
+                if ((flags & JournalWriter.BIG_FLAG) != 0) {
+                    byte[] bytes = new byte[(int) Varints.readUnsigned(segment)];
+                    segment.get(bytes);
+                    bigValue = new BigInteger(bytes);
+                } else {
+                    value = Varints.readSigned(segment);
+                }
+                byte[] command = new byte[(int) Varints.readUnsigned(segment)];
+                segment.get(command);
+                if (segment.position() != end) {
+                    throw invalidSegment(file);
+                }
+                EvaluationStatus status = statuses[flags & 0x0F];
+                NumericMode mode = modes[(flags >> 4) & 0x07];
+                consumer.accept(new JournalRecord(timestamp, new String(command, StandardCharsets.US_ASCII), mode,
+                        JournalRecord.result(status, value, bigValue), nanos));
+                records++;
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw invalidSegment(file);
+        }
+        return records;
+    }
+
+    /**
+     * @return The segments of the directory, in the order they were written.
+     * @throws IOException if the directory can not be listed.
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                JournalWriter.SEGMENT_PREFIX + "[0-9]*" + JournalWriter.SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        segments.sort(Comparator.comparingInt(JournalWriter::index));
+        return segments;
+    }
+
+    private static CalculatorException invalidSegment(Path file) {
+        String message = MessageFormat.format(INVALID_SEGMENT, file);
+        LOGGER.error(message);
+        return new CalculatorException(message);
+    }
+}
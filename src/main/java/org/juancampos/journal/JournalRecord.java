@@ -0,0 +1,70 @@
+package org.juancampos.journal;
+
+import org.juancampos.enums.EvaluationStatus;
+import org.juancampos.enums.NumericMode;
+import org.juancampos.utils.EvaluationResult;
+
+import java.math.BigInteger;
+
+/**
+ * One evaluation read back from the journal.
+ */
+public final class JournalRecord {
+    private final long timestamp;
+    private final String command;
+    private final NumericMode mode;
+    private final EvaluationResult result;
+    private final long calculationNanos;
+
+    JournalRecord(long timestamp, String command, NumericMode mode, EvaluationResult result, long calculationNanos) {
+        this.timestamp = timestamp;
+        this.command = command;
+        this.mode = mode;
+        this.result = result;
+        this.calculationNanos = calculationNanos;
+    }
+
+    static EvaluationResult result(EvaluationStatus status, long value, BigInteger bigValue) {
+        if (status != EvaluationStatus.OK) {
+            return EvaluationResult.failure(status);
+        }
+        return bigValue != null ? EvaluationResult.of(bigValue) : EvaluationResult.of(value);
+    }
+
+    /**
+     * @return When the calculation started, in nanoseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return The normalized command, i.e. "+(1,2)"
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    public NumericMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The result. A failure has the message of its status, the journal keeps the status only.
+     */
+    public EvaluationResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return The nanoseconds the calculation took, zero for an expression that was not valid.
+     */
+    public long getCalculationNanos() {
+        return calculationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return command + " " + mode + " " + result;
+    }
+}
@@ -0,0 +1,105 @@
+package org.juancampos.journal;
+
+import org.juancampos.enums.EvaluationStatus;
+import org.juancampos.metrics.Histogram;
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.IEvaluatorService;
+import org.juancampos.utils.EvaluationResult;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Runs the evaluations of a journal again through the engine of this build, in the numeric mode they were journaled
+ * with, and reports every result that is different and the latencies of the calculations then and now.
+ * The journal keeps the normalized command, after the lexer, so the expressions that were not valid are skipped: their
+ * raw input is not journaled. A failure is the same when its status is.
+ */
+public class JournalReplay {
+    public static final int MAXIMUM_REPORTED_DIFFERENCES = 100;
+    public static final String DIFFERENCE = "DIFF {0} {1}: journaled {2}, replayed {3}";
+    public static final String REPLAY_SUMMARY = "Replayed {0} records, {1} skipped as not valid, {2} different results";
+    public static final String JOURNALED_LATENCY = "Journaled calculation nanos: {0}";
+    public static final String REPLAYED_LATENCY = "Replayed calculation nanos:  {0}";
+    private static final Set<EvaluationStatus> CALCULATED = EnumSet.of(EvaluationStatus.OK,
+            EvaluationStatus.INVALID_ARGUMENT, EvaluationStatus.ARITHMETIC_ERROR, EvaluationStatus.OVERFLOW);
+
+    private final IEvaluatorService evaluator = EvaluatorService.getInstance();
+    private final PrintStream report;
+    private final Histogram journaled = new Histogram();
+    private final Histogram replayed = new Histogram();
+    private long records;
+    private long skipped;
+    private long differences;
+
+    /**
+     * @param report The stream of the differences and the summary
+     */
+    public JournalReplay(PrintStream report) {
+        this.report = report;
+    }
+
+    /**
+     * Replays every record of the journal and prints the differences, up to MAXIMUM_REPORTED_DIFFERENCES of them,
+     * the summary and the latency percentiles.
+     * @param directory The directory of the journal segments
+     * @return The number of different results.
+     * @throws IOException if the journal can not be read.
+     */
+    public long run(Path directory) throws IOException {
+        new JournalReader(directory).forEachRecord(this::replay);
+        report.println(MessageFormat.format(REPLAY_SUMMARY, records, skipped, differences));
+        report.println(MessageFormat.format(JOURNALED_LATENCY, journaled.snapshot()));
+        report.println(MessageFormat.format(REPLAYED_LATENCY, replayed.snapshot()));
+        return differences;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getDifferences() {
+        return differences;
+    }
+
+    public Histogram.Snapshot getJournaledLatency() {
+        return journaled.snapshot();
+    }
+
+    public Histogram.Snapshot getReplayedLatency() {
+        return replayed.snapshot();
+    }
+
+    private void replay(JournalRecord record) {
+        records++;
+        EvaluationResult expected = record.getResult();
+        if (!CALCULATED.contains(expected.getStatus())) {
+            skipped++;
+            return;
+        }
+        long start = System.nanoTime();
+        EvaluationResult actual = evaluator.evaluateCommand(record.getCommand(), record.getMode());
+        replayed.record(System.nanoTime() - start);
+        journaled.record(record.getCalculationNanos());
+        if (!same(expected, actual)) {
+            if (differences++ < MAXIMUM_REPORTED_DIFFERENCES) {
+                report.println(MessageFormat.format(DIFFERENCE, record.getCommand(), record.getMode(), expected, actual));
+            }
+        }
+    }
+
+    private static boolean same(EvaluationResult expected, EvaluationResult actual) {
+        if (expected.getStatus() != actual.getStatus()) {
+            return false;
+        }
+        return !expected.isOk() || expected.getBigValue().equals(actual.getBigValue());
+    }
+}
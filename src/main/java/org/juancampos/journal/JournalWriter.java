@@ -0,0 +1,149 @@
+package org.juancampos.journal;
+
+import org.juancampos.utils.Varints;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Appends the records of the journal to segment files, journal-000001.cjl, journal-000002.cjl..., each one mapped
+ * in memory as a whole when it is created. A segment starts with a header:
+ * - the magic number "CJNL" and the version of the format, one byte;
+ * - the time of the first record of the segment, in nanoseconds since the epoch, 8 bytes.
+ * Every record follows as:
+ * - the size of the rest of the record, a varint; zero marks the end of the segment;
+ * - the nanoseconds from the start of the previous record, or from the time of the header, a signed varint;
+ * - the nanoseconds of the calculation, a varint;
+ * - one byte with the status in the low 4 bits, the numeric mode in the next 3 and BIG_FLAG, the high bit, set when
+ *   the value does not fit in a long;
+ * - the value of a successful evaluation, a signed varint, or the length and the bytes of its BigInteger;
+ * - the length and the ASCII bytes of the normalized command.
+ * When a record does not fit the rest of the segment, a new one is started; a record bigger than a segment gets a
+ * segment of its own size. The tail of a segment is left zero, which reads as the end, and takes no disk space on
+ * file systems with sparse files. Only the writer thread of the journal uses it.
+ */
+final class JournalWriter {
+    static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    static final int MAGIC = 0x434A4E4C;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 4 + 1 + 8;
+    static final int BIG_FLAG = 0x80;
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".cjl";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maximumSegments;
+    private final Deque<Path> segments = new ArrayDeque<>();
+    //the epoch and the System.nanoTime at the same instant, to turn the start of a record into a time
+    private final long epochNanos = System.currentTimeMillis() * 1_000_000L;
+    private final long baseNanos = System.nanoTime();
+    private ByteBuffer record = ByteBuffer.allocate(256);
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private long previousStart = baseNanos;
+    private long records;
+
+    /**
+     * @param directory The directory of the segments, created if needed. The numbering goes on after the
+     *                  segments already there, so an earlier journal is not overwritten.
+     * @param segmentSize The size of a segment file in bytes
+     * @param maximumSegments The number of segments kept, the oldest ones are deleted. Zero keeps them all.
+     * @throws IOException if the directory or the first segment can not be created.
+     */
+    JournalWriter(Path directory, int segmentSize, int maximumSegments) throws IOException {
+        if (segmentSize <= HEADER_SIZE || maximumSegments < 0) {
+            throw new IllegalArgumentException("Invalid segment size or maximum segments: " + segmentSize + ", " + maximumSegments);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maximumSegments = maximumSegments;
+        Files.createDirectories(directory);
+        List<Path> existing = JournalReader.segments(directory);
+        segments.addAll(existing);
+        segmentIndex = existing.isEmpty() ? 0 : index(existing.get(existing.size() - 1));
+        rotate(segmentSize);
+    }
+
+    void append(String command, byte mode, byte status, long value, BigInteger bigValue, long start, long nanos)
+            throws IOException {
+        while (true) {
+            try {
+                record.clear();
+                record.position(Varints.MAXIMUM_LONG_SIZE); //room for the size, written once it is known
+                Varints.writeSigned(record, start - previousStart);
+                Varints.writeUnsigned(record, nanos);
+                record.put((byte) (mode << 4 | status | (bigValue != null ? BIG_FLAG : 0)));
+                if (bigValue != null) {
+                    byte[] bytes = bigValue.toByteArray();
+                    Varints.writeUnsigned(record, bytes.length);
+                    record.put(bytes);
+                } else {
+                    Varints.writeSigned(record, value);
+                }
+                Varints.writeUnsigned(record, command.length());
+                for (int i = 0; i < command.length(); i++) {
+                    record.put((byte) command.charAt(i)); //a normalized command is ASCII
+                }
+                break;
+            } catch (BufferOverflowException e) {
+                record = ByteBuffer.allocate(Math.max(record.capacity() * 2, command.length() + 64));
+            }
+        }
+        int size = record.position() - Varints.MAXIMUM_LONG_SIZE;
+        int total = Varints.sizeOfUnsigned(size) + size;
+        if (segment.remaining() < total) {
+            rotate(Math.max(segmentSize, HEADER_SIZE + total));
+        }
+        Varints.writeUnsigned(segment, size);
+        record.flip().position(Varints.MAXIMUM_LONG_SIZE);
+        segment.put(record);
+        previousStart = start;
+        records++;
+    }
+
+    long getRecords() {
+        return records;
+    }
+
+    /**
+     * Flushes the last segment to the disk.
+     */
+    void close() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+    }
+
+    private void rotate(int size) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        Path file = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, ++segmentIndex, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        segment.putInt(MAGIC).put(VERSION).putLong(epochNanos + previousStart - baseNanos);
+        segments.addLast(file);
+        while (maximumSegments > 0 && segments.size() > maximumSegments) {
+            Files.deleteIfExists(segments.removeFirst());
+        }
+    }
+
+    static int index(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
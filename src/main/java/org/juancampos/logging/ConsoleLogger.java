@@ -0,0 +1,71 @@
+package org.juancampos.logging;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.MessageFactory;
+import org.apache.logging.log4j.simple.SimpleLogger;
+import org.apache.logging.log4j.util.PropertiesUtil;
+
+import java.io.PrintStream;
+import java.util.Properties;
+import java.util.TimeZone;
+
+/**
+ * Logger of the fast start path: prints the messages of its level and above to a stream with the pattern of
+ * log4j2.xml, "%d{HH:mm:ss.SSS} [%t] %-5level %logger{36} - %msg%n", so the output is the same as with log4j-core.
+ * The time is formatted by hand, without the date format classes and their locale data.
+ */
+public class ConsoleLogger extends SimpleLogger {
+    private static final long serialVersionUID = 1L;
+    private static final PropertiesUtil NO_PROPERTIES = new PropertiesUtil(new Properties());
+    private static final int MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private final transient PrintStream stream;
+
+    /**
+     * @param name The name of the logger, the class name
+     * @param level The lowest level printed
+     * @param messageFactory The factory of the messages
+     * @param stream The stream the messages are printed to
+     */
+    public ConsoleLogger(String name, Level level, MessageFactory messageFactory, PrintStream stream) {
+        super(name, level, false, false, false, false, null, messageFactory, NO_PROPERTIES, stream);
+        this.stream = stream;
+    }
+
+    @Override
+    public void logMessage(String fqcn, Level level, Marker marker, Message message, Throwable throwable) {
+        StringBuilder line = new StringBuilder(96);
+        appendTime(line, System.currentTimeMillis());
+        line.append(" [").append(Thread.currentThread().getName()).append("] ").append(level.name());
+        for (int i = level.name().length(); i < 5; i++) {
+            line.append(' ');
+        }
+        line.append(' ').append(getName()).append(" - ").append(message.getFormattedMessage());
+        synchronized (stream) {
+            stream.println(line);
+            if (throwable != null) {
+                throwable.printStackTrace(stream);
+            }
+        }
+    }
+
+    static void appendTime(StringBuilder line, long millis) {
+        long local = millis + TimeZone.getDefault().getOffset(millis);
+        int ofDay = (int) (((local % MILLIS_PER_DAY) + MILLIS_PER_DAY) % MILLIS_PER_DAY);
+        appendDigits(line, ofDay / 3_600_000, 2);
+        line.append(':');
+        appendDigits(line, ofDay / 60_000 % 60, 2);
+        line.append(':');
+        appendDigits(line, ofDay / 1000 % 60, 2);
+        line.append('.');
+        appendDigits(line, ofDay % 1000, 3);
+    }
+
+    private static void appendDigits(StringBuilder line, int value, int digits) {
+        for (int divisor = digits == 3 ? 100 : 10; divisor > 0; divisor /= 10) {
+            line.append((char) ('0' + value / divisor % 10));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.juancampos.logging;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.message.MessageFactory;
+import org.apache.logging.log4j.spi.ExtendedLogger;
+import org.apache.logging.log4j.spi.LoggerContext;
+
+import java.io.PrintStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The loggers of the fast start path, one ConsoleLogger per name, all of them at the same level and printing to
+ * the same stream. The message factory of a logger is the one of its first request.
+ */
+public class ConsoleLoggerContext implements LoggerContext {
+    private final ConcurrentMap<String, ExtendedLogger> loggers = new ConcurrentHashMap<>();
+    private final Level level;
+    private final PrintStream stream;
+
+    /**
+     * @param level The lowest level printed
+     * @param stream The stream of the messages
+     */
+    public ConsoleLoggerContext(Level level, PrintStream stream) {
+        this.level = level;
+        this.stream = stream;
+    }
+
+    @Override
+    public Object getExternalContext() {
+        return null;
+    }
+
+    @Override
+    public ExtendedLogger getLogger(String name) {
+        return getLogger(name, null);
+    }
+
+    @Override
+    public ExtendedLogger getLogger(String name, MessageFactory messageFactory) {
+        ExtendedLogger logger = loggers.get(name);
+        if (logger == null) {
+            logger = new ConsoleLogger(name, level, messageFactory, stream); //null is the default message factory
+            ExtendedLogger existing = loggers.putIfAbsent(name, logger);
+            if (existing != null) {
+                logger = existing;
+            }
+        }
+        return logger;
+    }
+
+    @Override
+    public boolean hasLogger(String name) {
+        return loggers.containsKey(name);
+    }
+
+    @Override
+    public boolean hasLogger(String name, MessageFactory messageFactory) {
+        return loggers.containsKey(name);
+    }
+
+    @Override
+    public boolean hasLogger(String name, Class<? extends MessageFactory> messageFactoryClass) {
+        return loggers.containsKey(name);
+    }
+}
@@ -0,0 +1,34 @@
+package org.juancampos.logging;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.spi.LoggerContext;
+import org.apache.logging.log4j.spi.LoggerContextFactory;
+
+import java.net.URI;
+
+/**
+ * A log4j-api binding for the fast start path, selected with the log4j2.loggerContextFactory system property before
+ * the first logger is created (see CalculatorLauncher). It stands for log4j-core when the log level is the default
+ * ERROR one: log4j-core reads log4j2.xml, scans its plugins and builds its appenders on the first logger, which takes
+ * most of the time of a one shot run. The loggers print the ERROR messages to the standard output with the pattern of
+ * log4j2.xml; there is no configuration and the level can not be changed.
+ */
+public class ConsoleLoggerContextFactory implements LoggerContextFactory {
+    private static final LoggerContext CONTEXT = new ConsoleLoggerContext(Level.ERROR, System.out);
+
+    @Override
+    public LoggerContext getContext(String fqcn, ClassLoader loader, Object externalContext, boolean currentContext) {
+        return CONTEXT;
+    }
+
+    @Override
+    public LoggerContext getContext(String fqcn, ClassLoader loader, Object externalContext, boolean currentContext,
+                                    URI configLocation, String name) {
+        return CONTEXT;
+    }
+
+    @Override
+    public void removeContext(LoggerContext context) {
+        // the context lives as long as the process
+    }
+}
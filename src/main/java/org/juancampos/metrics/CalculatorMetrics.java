@@ -0,0 +1,265 @@
+package org.juancampos.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.enums.EvaluationStatus;
+import org.juancampos.enums.Phase;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.text.MessageFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always on metrics of the hot path, cheap enough to leave enabled in production instead of turning DEBUG on:
+ * - counters of the evaluations, of the validation failures by reason, and of the CalculatorExceptions and
+ *   ArithmeticExceptions, LongAdders so the threads of a parallel batch or of the server do not contend;
+ * - a latency histogram per phase of the evaluation, lex, validate and calculate. Reading the clock costs more than
+ *   a cheap evaluation, so only one evaluation in calculator.metrics.sample (16 by default, rounded up to a power
+ *   of two, 1 times all of them and 0 none) is timed, picked with the ThreadLocalRandom of the thread;
+ * - the distributions of the size, in instructions, and of the nesting depth of the compiled expressions.
+ * The histograms are lock free (see Histogram). The system property calculator.metrics=false turns every
+ * recording into a no op. The metrics are exposed as MBeans once registerMBeans is called, and startDump
+ * prints a snapshot periodically.
+ */
+public final class CalculatorMetrics implements CalculatorMetricsMBean {
+    private static final Logger LOGGER = LogManager.getLogger(CalculatorMetrics.class.getName());
+    public static final String ENABLED_PROPERTY = "calculator.metrics";
+    public static final String SAMPLE_PROPERTY = "calculator.metrics.sample";
+    public static final int DEFAULT_SAMPLE = 16;
+    public static final String OBJECT_NAME = "org.juancampos:type=Calculator";
+    public static final String PHASE_OBJECT_NAME = "org.juancampos:type=Phase,name={0}";
+    public static final String MBEAN_REGISTRATION_FAILED = "Metrics MBean registration failed: {0}";
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+    private static final int SAMPLE_MASK = sampleMask(Integer.getInteger(SAMPLE_PROPERTY, DEFAULT_SAMPLE));
+
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder[] validationFailures = new LongAdder[EvaluationStatus.values().length];
+    private final LongAdder calculatorExceptions = new LongAdder();
+    private final LongAdder arithmeticExceptions = new LongAdder();
+    private final Histogram[] latencies = new Histogram[Phase.values().length];
+    private final Histogram sizes = new Histogram();
+    private final Histogram depths = new Histogram();
+    private boolean registered;
+    private ScheduledExecutorService dump;
+
+    private CalculatorMetrics()
+    {
+        for (int i = 0; i < validationFailures.length; i++) {
+            validationFailures[i] = new LongAdder();
+        }
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+        }
+    }
+
+    // Inner class to provide instance of class
+    private static class CalculatorMetricsSinglenton
+    {
+        private static final CalculatorMetrics INSTANCE = new CalculatorMetrics();
+    }
+
+    public static CalculatorMetrics getInstance()
+    {
+        return CalculatorMetricsSinglenton.INSTANCE;
+    }
+
+    /**
+     * @return True if the phases of the current evaluation are to be timed.
+     */
+    public boolean sample() {
+        return ENABLED && SAMPLE_MASK >= 0 && (ThreadLocalRandom.current().nextInt() & SAMPLE_MASK) == 0;
+    }
+
+    public void recordLatency(Phase phase, long nanos) {
+        latencies[phase.ordinal()].record(nanos);
+    }
+
+    public void evaluation() {
+        if (ENABLED) {
+            evaluations.increment();
+        }
+    }
+
+    public void validationFailure(EvaluationStatus status) {
+        if (ENABLED) {
+            validationFailures[status.ordinal()].increment();
+        }
+    }
+
+    public void calculatorException() {
+        if (ENABLED) {
+            calculatorExceptions.increment();
+        }
+    }
+
+    public void arithmeticException() {
+        if (ENABLED) {
+            arithmeticExceptions.increment();
+        }
+    }
+
+    /**
+     * @param size The number of instructions of the compiled program
+     * @param depth The nesting depth of the expression
+     */
+    public void expressionCompiled(int size, int depth) {
+        if (ENABLED) {
+            sizes.record(size);
+            depths.record(depth);
+        }
+    }
+
+    public Histogram.Snapshot getLatency(Phase phase) {
+        return latencies[phase.ordinal()].snapshot();
+    }
+
+    /**
+     * Registers this MBean and one per phase with the platform MBean server, once. A failure is logged, the
+     * metrics are still recorded.
+     */
+    public synchronized void registerMBeans() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+            for (Phase phase : Phase.values()) {
+                server.registerMBean(new PhaseMetrics(latencies[phase.ordinal()]),
+                        new ObjectName(MessageFormat.format(PHASE_OBJECT_NAME, phase.getDisplayName())));
+            }
+        } catch (JMException e) {
+            LOGGER.error(MessageFormat.format(MBEAN_REGISTRATION_FAILED, e.getMessage()));
+        }
+    }
+
+    /**
+     * Prints a snapshot every period, from a daemon thread, until stopDump is called.
+     * @param periodMillis The period in milliseconds
+     * @param out The stream of the snapshots, i.e. System.err so they do not mix with the results
+     */
+    public synchronized void startDump(long periodMillis, PrintStream out) {
+        stopDump();
+        dump = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "calculator-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dump.scheduleAtFixedRate(() -> out.println(getSnapshot()), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopDump() {
+        if (dump != null) {
+            dump.shutdownNow();
+            dump = null;
+        }
+    }
+
+    @Override
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    @Override
+    public Map<String, Long> getValidationFailures() {
+        Map<String, Long> failures = new LinkedHashMap<>();
+        for (EvaluationStatus status : EvaluationStatus.values()) {
+            long count = validationFailures[status.ordinal()].sum();
+            if (count > 0) {
+                failures.put(status.name(), count);
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public long getCalculatorExceptions() {
+        return calculatorExceptions.sum();
+    }
+
+    @Override
+    public long getArithmeticExceptions() {
+        return arithmeticExceptions.sum();
+    }
+
+    @Override
+    public long getExpressionSizeP50() {
+        return sizes.snapshot().getValueAt(0.5);
+    }
+
+    @Override
+    public long getExpressionSizeP99() {
+        return sizes.snapshot().getValueAt(0.99);
+    }
+
+    @Override
+    public long getExpressionSizeMax() {
+        return sizes.snapshot().getMax();
+    }
+
+    @Override
+    public long getExpressionDepthP50() {
+        return depths.snapshot().getValueAt(0.5);
+    }
+
+    @Override
+    public long getExpressionDepthP99() {
+        return depths.snapshot().getValueAt(0.99);
+    }
+
+    @Override
+    public long getExpressionDepthMax() {
+        return depths.snapshot().getMax();
+    }
+
+    @Override
+    public String getSnapshot() {
+        StringBuilder snapshot = new StringBuilder("Calculator metrics: evaluations=").append(getEvaluations())
+                .append(" validationFailures=").append(getValidationFailures())
+                .append(" calculatorExceptions=").append(getCalculatorExceptions())
+                .append(" arithmeticExceptions=").append(getArithmeticExceptions());
+        for (Phase phase : Phase.values()) {
+            snapshot.append(System.lineSeparator()).append("  ").append(phase.getDisplayName()).append(" nanos: ")
+                    .append(getLatency(phase));
+        }
+        snapshot.append(System.lineSeparator()).append("  Expression size: ").append(sizes.snapshot());
+        snapshot.append(System.lineSeparator()).append("  Expression depth: ").append(depths.snapshot());
+        return snapshot.toString();
+    }
+
+    @Override
+    public void reset() {
+        evaluations.reset();
+        for (LongAdder failures : validationFailures) {
+            failures.reset();
+        }
+        calculatorExceptions.reset();
+        arithmeticExceptions.reset();
+        for (Histogram latency : latencies) {
+            latency.reset();
+        }
+        sizes.reset();
+        depths.reset();
+    }
+
+    private static int sampleMask(int sample) {
+        if (sample <= 0) {
+            return -1;
+        }
+        if (sample == 1) {
+            return 0;
+        }
+        return Integer.highestOneBit(sample - 1) * 2 - 1;
+    }
+}
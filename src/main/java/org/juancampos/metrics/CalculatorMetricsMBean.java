@@ -0,0 +1,39 @@
+package org.juancampos.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the counters and distributions of the calculator, registered as org.juancampos:type=Calculator.
+ * The latencies of every phase are their own MBeans (see PhaseMetricsMBean).
+ */
+public interface CalculatorMetricsMBean {
+    long getEvaluations();
+
+    /**
+     * @return The number of expressions that failed the validation, by EvaluationStatus.
+     */
+    Map<String, Long> getValidationFailures();
+
+    long getCalculatorExceptions();
+
+    long getArithmeticExceptions();
+
+    long getExpressionSizeP50();
+
+    long getExpressionSizeP99();
+
+    long getExpressionSizeMax();
+
+    long getExpressionDepthP50();
+
+    long getExpressionDepthP99();
+
+    long getExpressionDepthMax();
+
+    /**
+     * @return Every counter and distribution, one line each.
+     */
+    String getSnapshot();
+
+    void reset();
+}
@@ -0,0 +1,37 @@
+package org.juancampos.metrics;
+
+/**
+ * The MBean of the latency histogram of one phase. Every attribute takes its own snapshot of the histogram.
+ */
+public final class PhaseMetrics implements PhaseMetricsMBean {
+    private final Histogram histogram;
+
+    PhaseMetrics(Histogram histogram) {
+        this.histogram = histogram;
+    }
+
+    @Override
+    public long getSampleCount() {
+        return histogram.snapshot().getCount();
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return histogram.snapshot().getValueAt(0.5);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return histogram.snapshot().getValueAt(0.99);
+    }
+
+    @Override
+    public long getP999Nanos() {
+        return histogram.snapshot().getValueAt(0.999);
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return histogram.snapshot().getMax();
+    }
+}
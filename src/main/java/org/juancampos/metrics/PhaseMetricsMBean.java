@@ -0,0 +1,17 @@
+package org.juancampos.metrics;
+
+/**
+ * The JMX view of the latency histogram of one phase, registered as org.juancampos:type=Phase,name=(the phase).
+ * Only the sampled evaluations are timed, so the count is about the evaluations divided by the sampling period.
+ */
+public interface PhaseMetricsMBean {
+    long getSampleCount();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+
+    long getMaxNanos();
+}
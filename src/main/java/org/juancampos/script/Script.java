@@ -0,0 +1,341 @@
+package org.juancampos.script;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.Opcodes;
+import org.juancampos.enums.EvaluationStatus;
+import org.juancampos.exceptions.CalculatorException;
+import org.juancampos.services.CalculatorService;
+import org.juancampos.services.ICalculatorService;
+import org.juancampos.services.ILexerService;
+import org.juancampos.services.IValidatorService;
+import org.juancampos.services.LexerService;
+import org.juancampos.services.ValidatorService;
+import org.juancampos.utils.EvaluationResult;
+import org.juancampos.utils.LexedCommand;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A script of named definitions, one per line, that can read each other, i.e.
+ * <pre>
+ * total = add(price, shipping)
+ * price = mult(quantity, 12)
+ * quantity = add(3, 4)
+ * </pre>
+ * in any order. A blank line is skipped. Every expression is an expression of the calculator language, validated
+ * like any other, whose free variables are the names of other definitions.
+ * The names a definition reads are found at compile time: the expression is compiled with every definition name it
+ * mentions as a parameter, and a parameter is a dependency when the program loads it. A LET that shadows a name is
+ * not a dependency, nor a name the optimizer found unused.
+ * The dependencies form a graph, sorted topologically once. What is left after the sort are the definitions on a
+ * cycle, reported with the cycle, i.e. "Circular definition A -> B -> A", and the ones that depend on a cycle.
+ * A definition that is invalid, on a cycle or that depends on such a definition gets its failure here; the others
+ * can be evaluated any number of times, in any numeric mode (see ScriptEvaluator).
+ */
+public final class Script {
+    private static final Logger LOGGER = LogManager.getLogger(Script.class.getName());
+    public static final String INVALID_DEFINITION = "Invalid definition on line {0}, expected name = expression";
+    public static final String INVALID_DEFINITION_NAME = "Invalid definition name {0} on line {1}, a name is made of letters and contains no operation name";
+    public static final String DUPLICATE_DEFINITION = "Duplicate definition {0} on line {1}";
+    public static final String CIRCULAR_DEFINITION = "Circular definition {0}";
+    public static final String FAILED_DEPENDENCY = "Depends on {0}, that failed";
+    public static final String PARSED_SCRIPT = "Parsed script of {0} definitions, {1} of them failed";
+    private static final String ARROW = " -> ";
+    private static final char DEFINE = '=';
+
+    private final ScriptDefinition[] definitions;
+    private final Map<String, Integer> names = new HashMap<>();
+    private final ILexerService lexer = LexerService.getInstance();
+    private final IValidatorService validator = ValidatorService.getInstance();
+    private final ICalculatorService calculator = CalculatorService.getInstance();
+    //the definitions without a failure, every one after the definitions it reads
+    private int[] order;
+
+    private Script(List<ScriptDefinition> definitions) {
+        this.definitions = definitions.toArray(new ScriptDefinition[0]);
+    }
+
+    /**
+     * @param reader The lines of the script
+     * @return The parsed script.
+     * @throws IOException if the script can not be read.
+     * @throws CalculatorException if a line is not a definition, its name is not valid or it is defined twice.
+     */
+    public static Script parse(BufferedReader reader) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return parse(lines);
+    }
+
+    /**
+     * @param lines The lines of the script
+     * @return The parsed script.
+     * @throws CalculatorException if a line is not a definition, its name is not valid or it is defined twice.
+     */
+    public static Script parse(List<String> lines) {
+        List<ScriptDefinition> definitions = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int define = line.indexOf(DEFINE);
+            if (define < 0) {
+                throw invalid(MessageFormat.format(INVALID_DEFINITION, String.valueOf(i + 1)));
+            }
+            definitions.add(new ScriptDefinition(line.substring(0, define).trim(), i + 1, line.substring(define + 1).trim()));
+        }
+        Script script = new Script(definitions);
+        script.bindNames();
+        script.compile();
+        script.sort();
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(MessageFormat.format(PARSED_SCRIPT, script.size(), script.definitions.length - script.order.length));
+        }
+        return script;
+    }
+
+    /**
+     * @return The number of definitions.
+     */
+    public int size() {
+        return definitions.length;
+    }
+
+    /**
+     * @param index The index of the definition, in the order of the script
+     * @return The definition.
+     */
+    public ScriptDefinition getDefinition(int index) {
+        return definitions[index];
+    }
+
+    /**
+     * @return The definitions, in the order of the script.
+     */
+    public List<ScriptDefinition> getDefinitions() {
+        return Collections.unmodifiableList(Arrays.asList(definitions));
+    }
+
+    /**
+     * @return The indexes of the definitions without a failure, every one after the definitions it reads.
+     */
+    int[] getOrder() {
+        return order;
+    }
+
+    private void bindNames() {
+        for (int i = 0; i < definitions.length; i++) {
+            ScriptDefinition definition = definitions[i];
+            String name = definition.getName();
+            String key = name.toUpperCase(Locale.ROOT);
+            //the lexer rewrites an operation name inside a variable name, so such a name could never be read
+            if (name.isEmpty() || !name.chars().allMatch(Character::isLetter) || !key.equals(lexer.lex(name).getCommand())) {
+                throw invalid(MessageFormat.format(INVALID_DEFINITION_NAME, name, String.valueOf(definition.getLine())));
+            }
+            if (names.put(key, i) != null) {
+                throw invalid(MessageFormat.format(DUPLICATE_DEFINITION, name, String.valueOf(definition.getLine())));
+            }
+        }
+    }
+
+    /**
+     * Compiles every definition with the names it mentions as parameters, and keeps the ones it loads as its dependencies.
+     */
+    private void compile() {
+        for (ScriptDefinition definition : definitions) {
+            LexedCommand command = lexer.lex(definition.getExpression());
+            EvaluationStatus status = validator.check(command);
+            if (status != EvaluationStatus.OK) {
+                definition.setFailure(EvaluationResult.failure(status));
+                continue;
+            }
+            String[] parameters = mentionedNames(command.getCommand());
+            CompiledExpression compiled;
+            try {
+                compiled = calculator.compile(command.getCommand(), parameters);
+            } catch (CalculatorException e) {
+                definition.setFailure(EvaluationResult.failure(EvaluationStatus.INVALID_ARGUMENT, e.getMessage()));
+                continue;
+            }
+            boolean[] loaded = new boolean[parameters.length];
+            for (int pc = 0; pc < compiled.size(); pc++) {
+                if (compiled.getOpcode(pc) == Opcodes.LOAD && compiled.getOperand(pc) < parameters.length) {
+                    loaded[(int) compiled.getOperand(pc)] = true;
+                }
+            }
+            int[] bound = new int[parameters.length];
+            int[] dependencies = new int[parameters.length];
+            int count = 0;
+            for (int p = 0; p < parameters.length; p++) {
+                bound[p] = loaded[p] ? names.get(parameters[p]) : ScriptDefinition.UNUSED;
+                if (loaded[p]) {
+                    dependencies[count++] = bound[p];
+                }
+            }
+            definition.setCompiled(compiled, bound, Arrays.copyOf(dependencies, count));
+        }
+        int[] dependentCount = new int[definitions.length];
+        for (ScriptDefinition definition : definitions) {
+            for (int dependency : definition.getDependencies()) {
+                dependentCount[dependency]++;
+            }
+        }
+        int[][] dependents = new int[definitions.length][];
+        for (int i = 0; i < definitions.length; i++) {
+            dependents[i] = new int[dependentCount[i]];
+            dependentCount[i] = 0;
+        }
+        for (int i = 0; i < definitions.length; i++) {
+            for (int dependency : definitions[i].getDependencies()) {
+                dependents[dependency][dependentCount[dependency]++] = i;
+            }
+        }
+        for (int i = 0; i < definitions.length; i++) {
+            definitions[i].setDependents(dependents[i]);
+        }
+    }
+
+    /**
+     * @param command The normalized command, where every run of letters is a variable name
+     * @return The names of definitions in the command, upper case as in the command, once each.
+     */
+    private String[] mentionedNames(String command) {
+        Set<String> mentioned = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= command.length(); i++) {
+            boolean letter = i < command.length() && Character.isLetter(command.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                String name = command.substring(start, i);
+                if (names.containsKey(name)) {
+                    mentioned.add(name);
+                }
+                start = -1;
+            }
+        }
+        return mentioned.toArray(new String[0]);
+    }
+
+    /**
+     * Sorts the definitions topologically, failing the ones that depend on a failed definition on the way,
+     * and then fails the cycles and what depends on them.
+     */
+    private void sort() {
+        int[] pending = new int[definitions.length];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < definitions.length; i++) {
+            pending[i] = definitions[i].getDependencies().length;
+            if (pending[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int[] healthy = new int[definitions.length];
+        int count = 0;
+        boolean[] sorted = new boolean[definitions.length];
+        while (!ready.isEmpty()) {
+            int next = ready.poll();
+            sorted[next] = true;
+            ScriptDefinition definition = definitions[next];
+            for (int dependency : definition.getDependencies()) {
+                if (definition.getFailure() == null && definitions[dependency].getFailure() != null) {
+                    definition.setFailure(failedDependency(dependency));
+                }
+            }
+            if (definition.getFailure() == null) {
+                healthy[count++] = next;
+            }
+            for (int dependent : definition.getDependents()) {
+                if (--pending[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        order = Arrays.copyOf(healthy, count);
+        failCycles(sorted);
+    }
+
+    /**
+     * Every definition not sorted has a dependency not sorted, so following them from any one of them ends up
+     * going round a cycle, or at a definition already failed by an earlier walk: the definitions of a cycle fail
+     * with the cycle, the ones on the way depend on the next one.
+     */
+    private void failCycles(boolean[] sorted) {
+        boolean[] failed = new boolean[definitions.length];
+        int[] path = new int[definitions.length + 1];
+        int[] positionInPath = new int[definitions.length];
+        Arrays.fill(positionInPath, -1);
+        for (int start = 0; start < definitions.length; start++) {
+            int length = 0;
+            int current = start;
+            while (!sorted[current] && !failed[current] && positionInPath[current] < 0) {
+                positionInPath[current] = length;
+                path[length++] = current;
+                current = firstNotSorted(definitions[current].getDependencies(), sorted);
+            }
+            path[length] = current;
+            int firstOfCycle = positionInPath[current] >= 0 ? positionInPath[current] : length;
+            if (firstOfCycle < length) {
+                StringBuilder cycle = new StringBuilder();
+                for (int i = firstOfCycle; i < length; i++) {
+                    cycle.append(definitions[path[i]].getName()).append(ARROW);
+                }
+                cycle.append(definitions[current].getName());
+                String message = MessageFormat.format(CIRCULAR_DEFINITION, cycle);
+                if (LOGGER.isDebugEnabled()) { //reported in the result of every definition of the cycle
+                    LOGGER.debug(message);
+                }
+                for (int i = firstOfCycle; i < length; i++) {
+                    definitions[path[i]].setFailure(EvaluationResult.failure(EvaluationStatus.CIRCULAR_DEFINITION, message));
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                if (i < firstOfCycle) {
+                    definitions[path[i]].setFailure(failedDependency(path[i + 1]));
+                }
+                failed[path[i]] = true;
+                positionInPath[path[i]] = -1;
+            }
+        }
+    }
+
+    private static int firstNotSorted(int[] dependencies, boolean[] sorted) {
+        for (int dependency : dependencies) {
+            if (!sorted[dependency]) {
+                return dependency;
+            }
+        }
+        throw new IllegalStateException("A definition left out of the topological sort has all its dependencies sorted");
+    }
+
+    private EvaluationResult failedDependency(int dependency) {
+        return failedDependency(definitions[dependency]);
+    }
+
+    static EvaluationResult failedDependency(ScriptDefinition dependency) {
+        return EvaluationResult.failure(EvaluationStatus.FAILED_DEPENDENCY, MessageFormat.format(FAILED_DEPENDENCY, dependency.getName()));
+    }
+
+    private static CalculatorException invalid(String message) {
+        return new CalculatorException(message);
+    }
+}
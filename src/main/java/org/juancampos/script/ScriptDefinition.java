@@ -0,0 +1,88 @@
+package org.juancampos.script;
+
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.utils.EvaluationResult;
+
+/**
+ * One line of a script, name = expression, compiled with the names of the other definitions it reads as parameters.
+ * A definition that can not be evaluated whatever the values of the others, because it is invalid, is on a cycle
+ * or depends on such a definition, has its failure set when the script is parsed.
+ */
+public final class ScriptDefinition {
+    static final int UNUSED = -1;
+
+    private final String name;
+    private final int line;
+    private final String expression;
+    private CompiledExpression compiled;
+    //the definition bound to every parameter of the compiled expression, UNUSED for a name the expression does not read
+    private int[] parameters = new int[0];
+    //the distinct definitions it reads, and the ones that read it
+    private int[] dependencies = new int[0];
+    private int[] dependents = new int[0];
+    private EvaluationResult failure;
+
+    ScriptDefinition(String name, int line, String expression) {
+        this.name = name;
+        this.line = line;
+        this.expression = expression;
+    }
+
+    /**
+     * @return The name, as written in the script.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The line of the script, from 1.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return The raw expression, i.e. "add(a, b)"
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return The reason the definition can not be evaluated, null if it can.
+     */
+    public EvaluationResult getFailure() {
+        return failure;
+    }
+
+    CompiledExpression getCompiled() {
+        return compiled;
+    }
+
+    int[] getParameters() {
+        return parameters;
+    }
+
+    int[] getDependencies() {
+        return dependencies;
+    }
+
+    int[] getDependents() {
+        return dependents;
+    }
+
+    void setCompiled(CompiledExpression compiled, int[] parameters, int[] dependencies) {
+        this.compiled = compiled;
+        this.parameters = parameters;
+        this.dependencies = dependencies;
+    }
+
+    void setDependents(int[] dependents) {
+        this.dependents = dependents;
+    }
+
+    void setFailure(EvaluationResult failure) {
+        this.failure = failure;
+    }
+}
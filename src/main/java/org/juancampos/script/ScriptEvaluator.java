@@ -0,0 +1,249 @@
+package org.juancampos.script;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.EvaluationContext;
+import org.juancampos.engine.NumericEvaluator;
+import org.juancampos.enums.EvaluationStatus;
+import org.juancampos.enums.NumericMode;
+import org.juancampos.utils.EvaluationResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Evaluates every definition of a script once, after the definitions it reads.
+ * With one thread the definitions are evaluated in the topological order of the script on the calling thread.
+ * With more, they are evaluated on a fork join pool: every definition counts the dependencies it still waits for,
+ * the definitions that wait for none are submitted to the pool, and the task that evaluates a definition forks
+ * the dependents it was the last dependency of. A forked task goes to the deque of the worker that forked it,
+ * so a chain of definitions stays on one worker while the idle workers steal the independent branches.
+ * Every worker evaluates with its own scratch state (see EvaluationContext).
+ * A definition whose dependency failed, i.e. divided by zero, fails too without being evaluated. The cycles are
+ * found when the script is parsed, so a script with a cycle is evaluated like any other and never waits forever.
+ */
+public class ScriptEvaluator {
+    private static final Logger LOGGER = LogManager.getLogger(ScriptEvaluator.class.getName());
+    public static final String STANDARD_INPUT = "-";
+    public static final String SCRIPT_SUMMARY = "Script evaluated {0} definitions, {1} errors";
+    public static final String DEFINITION_RESULT = "{0} = {1}";
+    public static final String DEFINITION_ERROR = "{0}: ERROR = {1} (line {2})";
+
+    private final int threads;
+    private final NumericMode mode;
+    private long errors;
+
+    public ScriptEvaluator() {
+        this(Runtime.getRuntime().availableProcessors(), NumericMode.WRAPPING);
+    }
+
+    /**
+     * @param threads The number of worker threads, 1 evaluates on the calling thread.
+     * @param mode The arithmetic of the evaluations.
+     */
+    public ScriptEvaluator(int threads, NumericMode mode) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A script evaluator needs at least one thread: " + threads);
+        }
+        this.threads = threads;
+        this.mode = mode;
+    }
+
+    /**
+     * Evaluates the script of a file, or of the standard input when the file name is "-",
+     * and writes the result of every definition, in the order of the script.
+     * @param file The file name, or "-" for the standard input
+     * @param output The stream for the results. It is flushed, not closed.
+     * @return The number of definitions.
+     * @throws IOException if the script can not be read or the output written.
+     */
+    public long run(String file, OutputStream output) throws IOException {
+        Script script;
+        if (STANDARD_INPUT.equals(file)) {
+            script = Script.parse(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+        } else {
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+                script = Script.parse(reader);
+            }
+        }
+        List<EvaluationResult> results = evaluate(script);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        errors = 0;
+        for (int i = 0; i < script.size(); i++) {
+            ScriptDefinition definition = script.getDefinition(i);
+            EvaluationResult result = results.get(i);
+            if (result.isOk()) {
+                writer.append(MessageFormat.format(DEFINITION_RESULT, definition.getName(), result.getValueString()));
+            } else {
+                writer.append(MessageFormat.format(DEFINITION_ERROR, definition.getName(), result.getMessage(),
+                        String.valueOf(definition.getLine())));
+                errors++;
+            }
+            writer.append('\n');
+        }
+        writer.flush();
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(MessageFormat.format(SCRIPT_SUMMARY, script.size(), errors));
+        }
+        return script.size();
+    }
+
+    /**
+     * @param script The parsed script
+     * @return The result of every definition, in the order of the script.
+     */
+    public List<EvaluationResult> evaluate(Script script) {
+        EvaluationResult[] results = new EvaluationResult[script.size()];
+        for (int i = 0; i < script.size(); i++) {
+            results[i] = script.getDefinition(i).getFailure();
+        }
+        int[] order = script.getOrder();
+        if (threads == 1 || order.length <= 1) {
+            EvaluationContext context = EvaluationContext.current();
+            for (int definition : order) {
+                results[definition] = evaluate(script, script.getDefinition(definition), results, context);
+            }
+        } else {
+            evaluateInParallel(script, results);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return The number of definitions of the last run that could not be evaluated.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    private void evaluateInParallel(Script script, EvaluationResult[] results) {
+        int[] order = script.getOrder();
+        AtomicIntegerArray pending = new AtomicIntegerArray(script.size());
+        int[] roots = new int[order.length];
+        int rootCount = 0;
+        for (int definition : order) {
+            int dependencies = script.getDefinition(definition).getDependencies().length;
+            pending.set(definition, dependencies);
+            if (dependencies == 0) {
+                roots[rootCount++] = definition;
+            }
+        }
+        CountDownLatch evaluated = new CountDownLatch(order.length);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            //the roots are known before the first task runs, a definition made ready by a task is forked by that task only
+            for (int i = 0; i < rootCount; i++) {
+                pool.execute(new DefinitionTask(script, roots[i], results, pending, evaluated));
+            }
+            evaluated.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evaluating the script", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Evaluates one definition with the values of its dependencies, all of them evaluated already.
+     */
+    private EvaluationResult evaluate(Script script, ScriptDefinition definition, EvaluationResult[] results, EvaluationContext context) {
+        for (int dependency : definition.getDependencies()) {
+            if (!results[dependency].isOk()) {
+                return Script.failedDependency(script.getDefinition(dependency));
+            }
+        }
+        CompiledExpression compiled = definition.getCompiled();
+        int[] parameters = definition.getParameters();
+        long[] row = new long[parameters.length];
+        BigInteger[] bigRow = null;
+        for (int p = 0; p < parameters.length; p++) {
+            if (parameters[p] != ScriptDefinition.UNUSED) {
+                EvaluationResult value = results[parameters[p]];
+                row[p] = value.getValue();
+                if (value.isBig()) {
+                    if (bigRow == null) {
+                        bigRow = new BigInteger[parameters.length];
+                    }
+                    bigRow[p] = value.getBigValue();
+                }
+            }
+        }
+        try {
+            switch (mode) {
+                case CHECKED:
+                    return EvaluationResult.of(NumericEvaluator.evaluateChecked(compiled, row, context));
+                case BIG:
+                    return EvaluationResult.of(NumericEvaluator.evaluateBig(compiled, row, bigRow, context));
+                default:
+                    return EvaluationResult.of(compiled.evaluate(row, context));
+            }
+        } catch (ArithmeticException e) { //the JIT may throw it without a message, so the status message is used
+            return EvaluationResult.failure(NumericEvaluator.LONG_OVERFLOW.equals(e.getMessage())
+                    ? EvaluationStatus.OVERFLOW : EvaluationStatus.ARITHMETIC_ERROR);
+        }
+    }
+
+    /**
+     * The evaluation of one definition on the pool, that forks the dependents ready after it.
+     */
+    private final class DefinitionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Script script;
+        private final int definition;
+        private final EvaluationResult[] results;
+        private final AtomicIntegerArray pending;
+        private final CountDownLatch evaluated;
+
+        private DefinitionTask(Script script, int definition, EvaluationResult[] results,
+                               AtomicIntegerArray pending, CountDownLatch evaluated) {
+            this.script = script;
+            this.definition = definition;
+            this.results = results;
+            this.pending = pending;
+            this.evaluated = evaluated;
+        }
+
+        @Override
+        protected void compute() {
+            ScriptDefinition scriptDefinition = script.getDefinition(definition);
+            try {
+                results[definition] = evaluate(script, scriptDefinition, results, EvaluationContext.current());
+            } catch (RuntimeException e) { //never leave the dependents and the caller waiting
+                if (LOGGER.isDebugEnabled()) { //reported in the result of the definition
+                    LOGGER.debug(e.getMessage());
+                }
+                results[definition] = EvaluationResult.failure(EvaluationStatus.INVALID_ARGUMENT, e.getMessage());
+            }
+            //the result is published to the task of a dependent by the decrement that makes it ready
+            for (int dependent : scriptDefinition.getDependents()) {
+                if (pending.decrementAndGet(dependent) == 0) {
+                    new DefinitionTask(script, dependent, results, pending, evaluated).fork();
+                }
+            }
+            evaluated.countDown();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.juancampos.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.enums.NumericMode;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Long running calculator that keeps the services, the expression cache and the JIT compiled code
+ * resident between requests.
+ * Clients connect over TCP and send newline delimited expressions, i.e. "add(1, 2)\n". Every line gets
+ * one reply line, "RESULT = 3" or "ERROR = message", in the order of the lines. A client can pipeline:
+ * it can send any number of lines without waiting for the replies.
+ * The server is non blocking: one thread accepts the connections and hands them round robin to a few
+ * reactor threads, each one running a selector over its connections and evaluating the lines as they arrive.
+ * A reactor stops reading from a client that does not read its replies, so a slow client only holds the
+ * replies of one read. Thousands of connections need no more threads than the reactors.
+ */
+public class CalculatorServer implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(CalculatorServer.class.getName());
+    public static final String SERVER_LISTENING = "Calculator server listening on {0} with {1} reactors";
+    public static final String SERVER_STOPPED = "Calculator server stopped";
+    public static final String CONNECTION_FAILED = "Connection {0} failed: {1}";
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector acceptSelector;
+    private final Reactor[] reactors;
+    private final NumericMode mode;
+    private final Thread acceptor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+
+    /**
+     * Starts a server on the loopback interface.
+     * @param port The port, 0 picks a free one (see getPort)
+     * @param reactors The number of reactor threads.
+     * @throws IOException if the port can not be bound.
+     */
+    public CalculatorServer(int port, int reactors) throws IOException {
+        this(port, reactors, NumericMode.WRAPPING);
+    }
+
+    /**
+     * Starts a server on the loopback interface.
+     * @param port The port, 0 picks a free one (see getPort)
+     * @param reactors The number of reactor threads.
+     * @param mode The arithmetic of the evaluations.
+     * @throws IOException if the port can not be bound.
+     */
+    public CalculatorServer(int port, int reactors, NumericMode mode) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), reactors, mode);
+    }
+
+    /**
+     * @param address The address to listen on
+     * @param reactors The number of reactor threads.
+     * @param mode The arithmetic of the evaluations.
+     * @throws IOException if the address can not be bound.
+     */
+    public CalculatorServer(InetSocketAddress address, int reactors, NumericMode mode) throws IOException {
+        if (reactors < 1) {
+            throw new IllegalArgumentException("A server needs at least one reactor: " + reactors);
+        }
+        this.mode = mode;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        this.reactors = new Reactor[reactors];
+        for (int i = 0; i < reactors; i++) {
+            this.reactors[i] = new Reactor(i + 1);
+            this.reactors[i].thread.start();
+        }
+        acceptor = new Thread(this::accept, "calculator-server-acceptor");
+        acceptor.start();
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(MessageFormat.format(SERVER_LISTENING, serverChannel.getLocalAddress(), reactors));
+        }
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Blocks until the server is closed.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void await() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stops accepting connections and closes every open connection.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        acceptSelector.wakeup();
+        for (Reactor reactor : reactors) {
+            reactor.selector.wakeup();
+        }
+        join(acceptor);
+        for (Reactor reactor : reactors) {
+            join(reactor.thread);
+        }
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(SERVER_STOPPED);
+        }
+        stopped.countDown();
+    }
+
+    private void accept() {
+        int next = 0;
+        try {
+            while (running) {
+                acceptSelector.select();
+                acceptSelector.selectedKeys().clear();
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    reactors[next].add(channel);
+                    next = (next + 1) % reactors.length;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage());
+        } finally {
+            closeQuietly(acceptSelector);
+            closeQuietly(serverChannel);
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // nothing more to do with it
+        }
+    }
+
+    /**
+     * One selector thread and the connections it serves.
+     */
+    private final class Reactor {
+        private final Selector selector;
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+
+        private Reactor(int number) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this::run, "calculator-server-reactor-" + number);
+        }
+
+        private void add(SocketChannel channel) {
+            accepted.add(channel);
+            selector.wakeup();
+        }
+
+        private void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    register();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        serve(key);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly(key.channel());
+                }
+                SocketChannel channel;
+                while ((channel = accepted.poll()) != null) {
+                    closeQuietly(channel);
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        private void register() throws IOException {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                channel.register(selector, SelectionKey.OP_READ, new Connection(channel, mode));
+            }
+        }
+
+        private void serve(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    connection.write();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    connection.read();
+                }
+                if (connection.isClosed()) {
+                    key.cancel();
+                    closeQuietly(key.channel());
+                } else {
+                    key.interestOps(connection.hasPendingReplies() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                }
+            } catch (IOException e) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(MessageFormat.format(CONNECTION_FAILED, key.channel(), e.getMessage()));
+                }
+                key.cancel();
+                closeQuietly(key.channel());
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.juancampos.server;
+
+import org.juancampos.enums.NumericMode;
+import org.juancampos.services.EvaluatorService;
+import org.juancampos.services.IEvaluatorService;
+import org.juancampos.utils.AsciiSequence;
+import org.juancampos.utils.EvaluationResult;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The state of one client connection of the server: the bytes read and not yet evaluated
+ * and the replies not yet written. Only the reactor thread of the connection touches it.
+ * Every complete line read is evaluated straight from the input bytes and its reply appended
+ * to the output, so the replies keep the order of the lines. A line longer than MAXIMUM_LINE gets
+ * an error reply and is skipped up to its new line.
+ */
+final class Connection {
+    static final int BUFFER_SIZE = 1 << 13;
+    static final int MAXIMUM_LINE = 1 << 20;
+    static final String LINE_TOO_LONG = "ERROR = Line longer than " + MAXIMUM_LINE + " bytes\n";
+    private static final byte NEW_LINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final IEvaluatorService evaluator = EvaluatorService.getInstance();
+    private final SocketChannel channel;
+    private final NumericMode mode;
+    private final AsciiSequence line = new AsciiSequence();
+    private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+    private byte[] output = new byte[BUFFER_SIZE];
+    private int outputSize;
+    private int written;
+    private boolean discarding;
+    private boolean endOfInput;
+    private boolean closed;
+
+    Connection(SocketChannel channel, NumericMode mode) {
+        this.channel = channel;
+        this.mode = mode;
+    }
+
+    /**
+     * Reads what the client sent, evaluates every complete line and tries to write the replies.
+     * @throws IOException if the connection fails.
+     */
+    void read() throws IOException {
+        if (!input.hasRemaining()) {
+            if (input.capacity() >= MAXIMUM_LINE) { //the line is dropped up to its new line, with an error reply
+                if (!discarding) {
+                    append(LINE_TOO_LONG);
+                    discarding = true;
+                }
+                input.clear();
+            } else {
+                input = ByteBuffer.allocate(input.capacity() * 2).put((ByteBuffer) input.flip());
+            }
+        }
+        int read = channel.read(input);
+        if (read < 0) {
+            endOfInput = true;
+        }
+        evaluateLines();
+        write();
+    }
+
+    /**
+     * Writes the pending replies, as much as the socket takes.
+     * @throws IOException if the connection fails.
+     */
+    void write() throws IOException {
+        if (written < outputSize) {
+            written += channel.write(ByteBuffer.wrap(output, written, outputSize - written));
+        }
+        if (written == outputSize) {
+            written = 0;
+            outputSize = 0;
+            if (endOfInput) {
+                closed = true;
+            }
+        }
+    }
+
+    boolean hasPendingReplies() {
+        return written < outputSize;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void evaluateLines() {
+        byte[] bytes = input.array();
+        int end = input.position();
+        int start = 0;
+        for (int i = 0; i < end; i++) {
+            if (bytes[i] == NEW_LINE) {
+                if (discarding) {
+                    discarding = false;
+                } else {
+                    reply(evaluator.evaluate(line.wrap(bytes, start, trimCarriageReturn(bytes, start, i)), mode));
+                }
+                start = i + 1;
+            }
+        }
+        if (endOfInput && start < end && !discarding) { //last line without a new line
+            reply(evaluator.evaluate(line.wrap(bytes, start, trimCarriageReturn(bytes, start, end)), mode));
+            start = end;
+        }
+        input.flip().position(start);
+        input.compact();
+    }
+
+    private void reply(EvaluationResult result) {
+        append(result.toString());
+        append("\n");
+    }
+
+    private void append(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (outputSize + bytes.length > output.length) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, outputSize + bytes.length));
+        }
+        System.arraycopy(bytes, 0, output, outputSize, bytes.length);
+        outputSize += bytes.length;
+    }
+
+    private static int trimCarriageReturn(byte[] bytes, int start, int end) {
+        return end > start && bytes[end - 1] == CARRIAGE_RETURN ? end - 1 : end;
+    }
+}
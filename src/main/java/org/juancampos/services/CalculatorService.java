@@ -4,14 +4,25 @@ import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.ExpressionCache;
+import org.juancampos.engine.ExpressionCompiler;
+import org.juancampos.engine.ExpressionOptimizer;
 import org.juancampos.enums.Operators;
 import org.juancampos.exceptions.CalculatorException;
 import org.juancampos.utils.VariableExpression;
 
+import java.math.BigInteger;
 import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.Stack;
 
+/**
+ * The calculator engine.
+ * The service is thread safe, calculate and compile can be called from any number of threads:
+ * the compiled expressions are immutable and shared through a synchronized cache, and every
+ * thread evaluates them with its own scratch state (see EvaluationContext).
+ */
 public class CalculatorService implements ICalculatorService {
 
     public static final char PLUS = Operators.ADD.getSymbol();
@@ -29,6 +40,14 @@ public class CalculatorService implements ICalculatorService {
     public static final String NUMBER_STACK_PUSH = "Number stack push = {0}";
     public static final String OPERATORS_STACK_PUSH = "Operators Stack Push: {0}";
     public static final String MISSING_VARIABLES_NOT_ASSIGNED = "Missing Variables Not assigned";
+    public static final String CACHE_SIZE_PROPERTY = "calculator.cache.size";
+    public static final String CACHE_RESULTS_PROPERTY = "calculator.cache.results";
+    public static final String OPTIMIZE_PROPERTY = "calculator.optimize";
+
+    private final boolean optimize = Boolean.parseBoolean(System.getProperty(OPTIMIZE_PROPERTY, "true"));
+    private final ExpressionCache expressionCache = new ExpressionCache(
+            Integer.getInteger(CACHE_SIZE_PROPERTY, ExpressionCache.DEFAULT_MAXIMUM_SIZE),
+            Boolean.parseBoolean(System.getProperty(CACHE_RESULTS_PROPERTY, "true")), optimize);
 
     private CalculatorService()
     {
@@ -49,20 +68,13 @@ public class CalculatorService implements ICalculatorService {
     /**
      * Calculate function.
      * This problem is a variation on a theme for "basic calculator" problem.
-     * Basically it can be approached as a  stack question. Since the expression might have parenthesis,
-     * a stack is used to find the value for each sub-expression within a parenthesis.
-     * The main expression needs to be delayed until the interim sub-expressions within parenthesis
-     * are evaluated and a stack is used to introduce this delay, we use a stack.
-     * There is also a precedence to the operations namely that multiplication and division happen first.
-     * The terms presented here have a variation in that the operation is all enclosed in parenthesis.
-     * So working right to left will produce the correct result when greedely solving for multiplication
-     * and division first.
-     * The other variation is that there is a possible variable expression that needs to be evaluated.
-     * The variable names will be saved in a hashmap so if the variable is resolved it will be subsituted
-     * for the value.
-     * The variable name will also be kept in a stack. If an operation is reduced it will check to see if it
-     * matches a variable waiting for the evaluation, if it does it will pop it out of the stack and assign the
-     * value to the variable map.
+     * The expression is compiled once into a postfix program (see ExpressionCompiler) and the
+     * program is evaluated with a single stack of numbers. The operations are all enclosed in
+     * parenthesis so the operands of each operation are always evaluated before the operation itself.
+     * The variable expressions are resolved to slots while compiling, so a variable name that never
+     * gets a value assigned is reported before any operation is executed.
+     * The compiled expressions are kept in a size bounded cache (system property calculator.cache.size,
+     * zero disables it) so a repeated input string is neither parsed nor, being constant, evaluated again.
      * @param s Input string
      * @return The result from the calculation.
      */
@@ -72,104 +84,69 @@ public class CalculatorService implements ICalculatorService {
             LOGGER.debug(INPUT_STRING_IS_EMPTY);
             return 0;
         }
-        Stack<Long> numbers = new Stack<>(); // the stack that stores numbers to be operated on
-        Stack<Character> operators = new Stack<>();// the stack that holds the operators
-        Stack<String> expressions = new Stack<>();//the stack to hold the expressions
-        HashMap<String, VariableExpression> variablesMap = new HashMap<>(); //variables map to store values
-        MutableInt variablesAssignedBalance = new MutableInt(0); //Checks the variables have been assigned
-        MutableInt letParenthesis = new MutableInt(0); //counter for the number of parenthesis to be inside a LET operator
-        MutableBoolean  complexLet = new MutableBoolean(false);
-        boolean openLet = false;// flag to check process is inside a LET operator
-
-        long currentNumber;
-        int negate = 1;
-        for (int i = 0; i < s.length(); i++) {
-            char calculatorChar = s.charAt(i);
-            if (calculatorChar == ','){//commas are skipped as they are not operators
-                continue;
-            }
-            if (calculatorChar == '-'){//a negative number can be presented
-                negate = -1;
-                continue;
-            }
-            if (calculatorChar == LET_OPERATOR) {  //If the operator is a LET operator, process to resolve the variable name
-               openLet =  true; //if the first operation is a LET operator, the flag is not set so the closing parenthesis can start the operations process
-               i = processLetOperator(i,s,operators,expressions,variablesMap,variablesAssignedBalance,complexLet);
-              continue;
-            }
-
-            if (Character.isAlphabetic(calculatorChar)){ //If the variable name is present, is possible to resolve it. Move the counter accordingly
-                i = resolveVariableName(s, numbers,expressions, variablesMap, i,variablesAssignedBalance);
-                calculatorChar = s.charAt(i);
-            }
+        return expressionCache.evaluate(s);
+    }
 
+    /**
+     * Calculate function in the CHECKED numeric mode: the same as calculate, but an operation that overflows
+     * a long throws an ArithmeticException instead of wrapping around.
+     * @param s Input string
+     * @return The result from the calculation.
+     */
+    @Override
+    public long calculateChecked(String s) {
+        if (s == null || s.length() == 0) {
+            LOGGER.debug(INPUT_STRING_IS_EMPTY);
+            return 0;
+        }
+        return expressionCache.evaluateChecked(s);
+    }
 
-            if (Character.isDigit(calculatorChar)) { //If a number appears it gets pushed to the stack of numbers to process
-                currentNumber = calculatorChar - '0';
-                // iteratively calculate each number
-                while (i < s.length() - 1 && Character.isDigit(s.charAt(i+1))) {
-                    currentNumber = currentNumber * 10 + (s.charAt(i+1) - '0');
-                    i++;
-                }
-                currentNumber = currentNumber * negate;//if there was a - before the digit, it will become negative number
-                negate = 1;
-                numbers.push(currentNumber);
-                LOGGER.debug(MessageFormat.format(NUMBER_STACK_PUSH,numbers.peek()));
-            } else if (calculatorChar == '(') {
-                if (openLet){   //if inside a LET operation, increase the count of internal LET parenthesis
-                    letParenthesis.increment();
-                }
-                operators.push(calculatorChar);
-                LOGGER.debug(MessageFormat.format(OPERATORS_STACK_PUSH,operators.peek()));
-            } else if (calculatorChar == ')') {
-                //If LET operation is open, skip closing parenthesis until it hits closing LET parenthesis
-                if (openLet){
-                    if (letParenthesis.decrementAndGet() == 0){
-                        openLet = false;
-                        if (complexLet.isTrue()){
-                            complexLet.setFalse();
-                            if (expressions.isEmpty())
-                                continue;
-                        }
-                    }
-                }
-                // keep going when we encounter a ')' until we find the opening parenthesis in operator stack
-                if (numbers.size() > 1) {
-                    while (numbers.size() > 1 && !operators.isEmpty() && operators.peek() == '(') {
-                        operators.pop(); //get rid of the '('
-                    }
-                    if (!operators.isEmpty()) { //find the operator to execute with operands
-                        long operation = operation(operators.pop(), numbers.pop(), numbers.pop());
-                        if ( !expressions.isEmpty() && (letParenthesis.intValue() == 0)) { //the expression at top of stack will be the variable name that needs value assigned.
-                            String pop = expressions.pop();
-                            variablesAssignedBalance.decrement();
-                            LOGGER.debug(MessageFormat.format("Since only one number left in stack, the value {0} is a result that can be assigned to variable name{1}",operation,pop ));
-                            variablesMap.put(pop, VariableExpression.of(operation, true));
-                        } else {
-                            numbers.push(operation); //push result of collapsed operation
-                            LOGGER.debug(MessageFormat.format("Operation result = {0} was pushed to numbers stack", numbers.peek()));
-                        }
+    /**
+     * Calculate function in the BIG numeric mode: the same as calculate, with arbitrary precision.
+     * The values stay longs while they fit, only the ones that overflow are promoted to BigInteger.
+     * @param s Input string
+     * @return The exact result from the calculation.
+     */
+    @Override
+    public BigInteger calculateBig(String s) {
+        if (s == null || s.length() == 0) {
+            LOGGER.debug(INPUT_STRING_IS_EMPTY);
+            return BigInteger.ZERO;
+        }
+        return expressionCache.evaluateBig(s);
+    }
 
-                    }
-                }
+    /**
+     * Parses the input string once into a CompiledExpression that can be evaluated
+     * any number of times without parsing again. The expression is taken from the cache if it was compiled before.
+     * @param s Input string with the operators substituted by their symbols.
+     * @return The compiled expression.
+     * @throws CalculatorException if the input is not a valid expression.
+     */
+    @Override
+    public CompiledExpression compile(String s) {
+        return expressionCache.get(s);
+    }
 
-            } else if (calculatorChar == PLUS || calculatorChar == MINUS || calculatorChar == MULTIPLY || calculatorChar == DIVIDE) {
-                operators.push(calculatorChar);
-                LOGGER.debug(MessageFormat.format(OPERATORS_STACK_PUSH,operators.peek()));
-            }
-        }
-        for (VariableExpression variable:variablesMap.values()){  //If at the end of the operations we still have unnasigned variables, its an issue.
-            if (Boolean.FALSE.equals(variable.isValueAssigned())) {
-                LOGGER.error(MISSING_VARIABLES_NOT_ASSIGNED);
-                throw new CalculatorException(MISSING_VARIABLES_NOT_ASSIGNED);
-            }
+    /**
+     * Parses the input string once into a CompiledExpression with free variables, bound from outside at
+     * every evaluation (see CompiledExpression.evaluate(long[])). The expression is meant to be evaluated
+     * many times, so it is optimized right away, and it is not kept in the cache.
+     * @param s Input string with the operators substituted by their symbols.
+     * @param parameters The names of the free variables, upper case as in the input string.
+     * @return The compiled expression.
+     * @throws CalculatorException if the input is not a valid expression or uses a variable that is neither a parameter nor assigned.
+     */
+    @Override
+    public CompiledExpression compile(String s, String... parameters) {
+        CompiledExpression compiled = ExpressionCompiler.compile(s, parameters);
+        return optimize ? ExpressionOptimizer.optimize(compiled) : compiled;
+    }
 
-        }
-        while (numbers.size() > 1 && !operators.isEmpty()) { //resolve all remaining operations.
-            numbers.push(operation(operators.pop(), numbers.pop(), numbers.pop()));
-            LOGGER.debug(MessageFormat.format(NUMBER_STACK_PUSH,numbers.peek()));
-        }
-        return numbers.pop();  //last calculated number in stack is the result.
+    @Override
+    public ExpressionCache getExpressionCache() {
+        return expressionCache;
     }
 
     /**
@@ -181,7 +158,9 @@ public class CalculatorService implements ICalculatorService {
      * @param i Current character counter
      * @param variableAssignedBalance The counter to make sure all variables are assigned.
      * @return The current position in the command string.
+     * @deprecated The variables are resolved to slots by ExpressionCompiler, calculate no longer uses this method.
      */
+    @Deprecated
     protected int resolveVariableName(String s, Stack<Long> numbers,Stack<String> expressions, HashMap<String, VariableExpression> variablesMap, int i,  MutableInt variableAssignedBalance) {
         StringBuilder variableName = new StringBuilder(String.valueOf(s.charAt(i)));
         while (i < s.length() - 1 && Character.isAlphabetic(s.charAt(i+1))) {
@@ -195,7 +174,9 @@ public class CalculatorService implements ICalculatorService {
         }
         if (variablesMap.containsKey(variableName.toString()) && variablesMap.get(variableName.toString()).isValueAssigned()){
             numbers.push(variablesMap.get(variableName.toString()).getValue());
-            LOGGER.debug(MessageFormat.format(NUMBER_STACK_PUSH,numbers.peek()));
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(MessageFormat.format(NUMBER_STACK_PUSH,numbers.peek()));
+            }
             i++;
         } else if (numbers.size() == 1 && variableAssignedBalance.intValue() > 0){
             variablesMap.put(variableName.toString(), VariableExpression.of(numbers.peek(), true));
@@ -203,11 +184,15 @@ public class CalculatorService implements ICalculatorService {
                 expressions.pop();
             }
             variableAssignedBalance.decrement();
-            LOGGER.debug(MessageFormat.format(VARIABLE_ASSIGNED,variableName.toString(),variablesMap.get(variableName.toString()).isValueAssigned()));
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(MessageFormat.format(VARIABLE_ASSIGNED,variableName.toString(),variablesMap.get(variableName.toString()).isValueAssigned()));
+            }
         } else {
             variablesMap.put(variableName.toString(), VariableExpression.of(0,false));
             variableAssignedBalance.increment();
-            LOGGER.debug(MessageFormat.format(VARIABLE_NOT_ASSIGNED_PUSHED_TO_EXPRESSIONS_STACK,variableName.toString()));
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(MessageFormat.format(VARIABLE_NOT_ASSIGNED_PUSHED_TO_EXPRESSIONS_STACK,variableName.toString()));
+            }
         }
         return i;
     }
@@ -221,7 +206,9 @@ public class CalculatorService implements ICalculatorService {
      * @param variablesMap The variables map to store variable names and possible values
      * @param variableUnnasignedBalance The counter to check all variable names have been assigned
      * @return The position of the string to continue parsing.
+     * @deprecated LET expressions are compiled by ExpressionCompiler, calculate no longer uses this method.
      */
+    @Deprecated
     protected int processLetOperator(int i, String s, Stack<Character> operators, Stack<String>expressions, HashMap<String, VariableExpression> variablesMap, MutableInt variableUnnasignedBalance, MutableBoolean complexLet) {
         variableUnnasignedBalance.increment();
         LOGGER.debug(LET_OPERATOR_TO_ASSIGN_VALUE_TO_VARIABLE_BEGINS);// The LET operator is present, a LET expression is parsed
@@ -232,7 +219,9 @@ public class CalculatorService implements ICalculatorService {
         char calculatorChar = s.charAt(i);
         if (calculatorChar == '(') {
             operators.push(calculatorChar);
-            LOGGER.debug(MessageFormat.format(OPERATORS_STACK_PUSH,operators.peek()));
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(MessageFormat.format(OPERATORS_STACK_PUSH,operators.peek()));
+            }
             i++;
             calculatorChar = s.charAt(i);
         }
@@ -243,7 +232,9 @@ public class CalculatorService implements ICalculatorService {
                 i++;
             }
         }
-        LOGGER.debug(MessageFormat.format(VARIABLE_NAME,variableName.toString()));
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format(VARIABLE_NAME,variableName.toString()));
+        }
         i++;
         calculatorChar = s.charAt(i);
         if (calculatorChar != ','){
@@ -273,14 +264,18 @@ public class CalculatorService implements ICalculatorService {
                 expressions.pop();
             }
             variableUnnasignedBalance.decrement();  //variable names balance decrements since variable has value assigned
-            LOGGER.debug(MessageFormat.format(VARIABLE_ASSIGNED,variableName.toString(),possibleNumber));
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(MessageFormat.format(VARIABLE_ASSIGNED,variableName.toString(),possibleNumber));
+            }
             i++;
         }else {
             variablesMap.put(variableName.toString(), VariableExpression.of(0L, false));
 
             expressions.push(variableName.toString());
             complexLet.setTrue();
-            LOGGER.debug(MessageFormat.format(VARIABLE_NOT_ASSIGNED_PUSHED_TO_EXPRESSIONS_STACK, variableName.toString()));
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(MessageFormat.format(VARIABLE_NOT_ASSIGNED_PUSHED_TO_EXPRESSIONS_STACK, variableName.toString()));
+            }
             i--; //reset counter
         }
         return i;
@@ -296,7 +291,9 @@ public class CalculatorService implements ICalculatorService {
      * @return the result of the operation.
      */
     protected long operation(char operation, long secondOperand, long firstOperand) {
-        LOGGER.debug(MessageFormat.format("OPERATION:{0}, FIRST OPERAND:{1}, SECOND OPERAND:{2}", operation, firstOperand,secondOperand));
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format("OPERATION:{0}, FIRST OPERAND:{1}, SECOND OPERAND:{2}", operation, firstOperand,secondOperand));
+        }
         switch (operation) {
             case '+': return firstOperand + secondOperand;
             case '_': return firstOperand - secondOperand;
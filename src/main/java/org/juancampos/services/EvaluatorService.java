@@ -0,0 +1,168 @@
+package org.juancampos.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.NumericEvaluator;
+import org.juancampos.enums.EvaluationStatus;
+import org.juancampos.enums.NumericMode;
+import org.juancampos.enums.Phase;
+import org.juancampos.exceptions.CalculatorException;
+import org.juancampos.journal.EvaluationJournal;
+import org.juancampos.metrics.CalculatorMetrics;
+import org.juancampos.utils.EvaluationResult;
+import org.juancampos.utils.LexedCommand;
+
+import java.util.Locale;
+
+/**
+ * Evaluates one raw expression, as typed on the command line, through the whole pipeline:
+ * the lexer, the validator and the calculator.
+ * Unlike Calculator.call nothing is printed and no exception floats up, every failure is
+ * reported in the EvaluationResult, so one invalid expression does not stop a batch.
+ * The service is thread safe: the lexer and the validator keep no state, the calculator keeps
+ * its compiled expressions in a synchronized cache and evaluates them with the scratch state of
+ * the calling thread, so any number of threads can call evaluate at the same time.
+ * When a journal is set every evaluation is also added to it, with the time its calculation took (see EvaluationJournal).
+ */
+public class EvaluatorService implements IEvaluatorService {
+    private static final Logger LOGGER = LogManager.getLogger(EvaluatorService.class.getName());
+
+    private final ILexerService lexer = LexerService.getInstance();
+    private final IValidatorService validator = ValidatorService.getInstance();
+    private final ICalculatorService calculator = CalculatorService.getInstance();
+    private final CalculatorMetrics metrics = CalculatorMetrics.getInstance();
+    private volatile EvaluationJournal journal;
+
+    private EvaluatorService()
+    {
+        // private constructor
+    }
+
+    // Inner class to provide instance of class
+    private static class EvaluatorServiceSinglenton
+    {
+        private static final IEvaluatorService INSTANCE = new EvaluatorService();
+    }
+
+    public static IEvaluatorService getInstance()
+    {
+        return EvaluatorServiceSinglenton.INSTANCE;
+    }
+
+    /**
+     * @param expression The raw expression, i.e. "add(1, mult(2, 3))"
+     * @return The value of the expression or the reason it could not be evaluated.
+     */
+    @Override
+    public EvaluationResult evaluate(CharSequence expression) {
+        return evaluate(expression, NumericMode.WRAPPING);
+    }
+
+    /**
+     * @param expression The raw expression, i.e. "add(1, mult(2, 3))"
+     * @param mode The arithmetic of the evaluation
+     * @return The value of the expression or the reason it could not be evaluated. An overflow of the CHECKED mode
+     * is reported with the OVERFLOW status.
+     */
+    @Override
+    public EvaluationResult evaluate(CharSequence expression, NumericMode mode) {
+        metrics.evaluation();
+        EvaluationJournal evaluationJournal = journal;
+        boolean timed = metrics.sample(); //the clock is read for the sampled evaluations only, or to journal them
+        long start = timed ? System.nanoTime() : 0L;
+        LexedCommand command = lexer.lex(expression);
+        long lexed = timed ? System.nanoTime() : 0L;
+        EvaluationStatus status = validator.check(command);
+        if (timed) {
+            long validated = System.nanoTime();
+            metrics.recordLatency(Phase.LEX, lexed - start);
+            metrics.recordLatency(Phase.VALIDATE, validated - lexed);
+            start = validated;
+        }
+        if (status != EvaluationStatus.OK) {
+            metrics.validationFailure(status);
+            EvaluationResult failure = EvaluationResult.failure(status);
+            if (evaluationJournal != null) {
+                evaluationJournal.record(command.getCommand(), mode, failure, System.nanoTime(), 0L);
+            }
+            return failure;
+        }
+        if (evaluationJournal != null && !timed) {
+            start = System.nanoTime();
+        }
+        EvaluationResult result = evaluateCommand(command.getCommand(), mode);
+        if (timed || evaluationJournal != null) {
+            long nanos = System.nanoTime() - start;
+            if (timed) {
+                metrics.recordLatency(Phase.CALCULATE, nanos);
+            }
+            if (evaluationJournal != null) {
+                evaluationJournal.record(command.getCommand(), mode, result, start, nanos);
+            }
+        }
+        if (result.getStatus() == EvaluationStatus.INVALID_ARGUMENT) {
+            metrics.calculatorException();
+        } else if (!result.isOk()) {
+            metrics.arithmeticException();
+        }
+        return result;
+    }
+
+    /**
+     * The calculation phase of evaluate, for a command already lexed and validated.
+     * @param command The normalized command, i.e. "+(1,*(2,3))"
+     * @param mode The arithmetic of the evaluation
+     * @return The value of the expression or the reason it could not be calculated.
+     */
+    @Override
+    public EvaluationResult evaluateCommand(String command, NumericMode mode) {
+        try {
+            switch (mode) {
+                case CHECKED:
+                    return EvaluationResult.of(calculator.calculateChecked(command));
+                case BIG:
+                    return EvaluationResult.of(calculator.calculateBig(command));
+                default:
+                    return EvaluationResult.of(calculator.calculate(command));
+            }
+        } catch (CalculatorException e) {
+            return EvaluationResult.failure(EvaluationStatus.INVALID_ARGUMENT, e.getMessage());
+        } catch (ArithmeticException e) { //the JIT may throw it without a message, so the status message is used
+            return EvaluationResult.failure(NumericEvaluator.LONG_OVERFLOW.equals(e.getMessage())
+                    ? EvaluationStatus.OVERFLOW : EvaluationStatus.ARITHMETIC_ERROR);
+        }
+    }
+
+    /**
+     * @param journal The journal every evaluation is added to from now on, null to stop journaling.
+     * The journal is not closed when it is replaced.
+     */
+    @Override
+    public void setJournal(EvaluationJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Compiles a raw expression with free variables once, to evaluate it against many rows of values
+     * (see CompiledExpression.evaluate(long[]) and evaluate(long[][], long[])).
+     * @param expression The raw expression, i.e. "add(x, mult(y, 2))"
+     * @param parameters The names of the free variables, in any case. Their order is the order of the row values.
+     * @return The compiled expression.
+     * @throws CalculatorException if the expression is not valid or uses a variable that is neither a parameter nor assigned.
+     */
+    @Override
+    public CompiledExpression compile(CharSequence expression, String... parameters) {
+        LexedCommand command = lexer.lex(expression);
+        EvaluationStatus status = validator.check(command);
+        if (status != EvaluationStatus.OK) {
+            LOGGER.error(status.getMessage());
+            throw new CalculatorException(status.getMessage());
+        }
+        String[] names = new String[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            names[i] = parameters[i].toUpperCase(Locale.ROOT);
+        }
+        return calculator.compile(command.getCommand(), names);
+    }
+}
@@ -1,5 +1,20 @@
 package org.juancampos.services;
 
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.engine.ExpressionCache;
+
+import java.math.BigInteger;
+
 public interface ICalculatorService {
     long calculate(String s);
+
+    long calculateChecked(String s);
+
+    BigInteger calculateBig(String s);
+
+    CompiledExpression compile(String s);
+
+    CompiledExpression compile(String s, String... parameters);
+
+    ExpressionCache getExpressionCache();
 }
@@ -0,0 +1,18 @@
+package org.juancampos.services;
+
+import org.juancampos.engine.CompiledExpression;
+import org.juancampos.enums.NumericMode;
+import org.juancampos.journal.EvaluationJournal;
+import org.juancampos.utils.EvaluationResult;
+
+public interface IEvaluatorService {
+    EvaluationResult evaluate(CharSequence expression);
+
+    EvaluationResult evaluate(CharSequence expression, NumericMode mode);
+
+    EvaluationResult evaluateCommand(String command, NumericMode mode);
+
+    void setJournal(EvaluationJournal journal);
+
+    CompiledExpression compile(CharSequence expression, String... parameters);
+}
@@ -0,0 +1,15 @@
+package org.juancampos.services;
+
+import org.juancampos.utils.LexedCommand;
+
+import java.util.List;
+
+public interface ILexerService {
+    LexedCommand lex(List<? extends CharSequence> operations);
+
+    LexedCommand lex(CharSequence operation);
+
+    String normalize(List<? extends CharSequence> operations);
+
+    String substituteOperators(CharSequence command);
+}
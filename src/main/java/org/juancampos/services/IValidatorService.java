@@ -1,13 +1,20 @@
 package org.juancampos.services;
 
-import org.apache.commons.lang3.tuple.Pair;
+import org.juancampos.enums.EvaluationStatus;
+import org.juancampos.utils.LexedCommand;
 
 public interface IValidatorService {
     boolean validate(String input);
 
+    boolean validate(LexedCommand command);
+
+    EvaluationStatus check(LexedCommand command);
+
     boolean isInvalidParenthesis(String input);
 
     boolean isInvalidFirstOperation(String input);
 
     boolean validateCharacters(String input);
+
+    boolean validateCharacters(LexedCommand command);
 }
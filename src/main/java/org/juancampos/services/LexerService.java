@@ -0,0 +1,192 @@
+package org.juancampos.services;
+
+import org.juancampos.enums.Operators;
+import org.juancampos.utils.LexedCommand;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lexer for the command line.
+ * The command line goes through a single scan that upper cases the letters, drops the spaces,
+ * substitutes the operation keywords by their symbols (ADD by +, SUB by _, MULT by *, DIV by /
+ * and LET by #), checks every character is allowed and checks the parenthesis balance.
+ * The only String created is the normalized command itself.
+ * The keywords are matched the same way the regular expressions ADD+, SUB+, MULT+, DIV+ and LET+
+ * used to: a keyword is replaced as soon as its last letter is read and repetitions of that last letter
+ * are swallowed, so ADDD is still an ADD.
+ */
+public class LexerService implements ILexerService {
+    private static final char[][] KEYWORDS = {
+            Operators.ADD.name().toCharArray(),
+            Operators.SUB.name().toCharArray(),
+            Operators.MULT.name().toCharArray(),
+            Operators.DIV.name().toCharArray(),
+            Operators.LET.name().toCharArray()};
+    private static final char[] SYMBOLS = {
+            Operators.ADD.getSymbol(),
+            Operators.SUB.getSymbol(),
+            Operators.MULT.getSymbol(),
+            Operators.DIV.getSymbol(),
+            Operators.LET.getSymbol()};
+
+    private LexerService()
+    {
+        // private constructor
+    }
+
+    // Inner class to provide instance of class
+    private static class LexerServiceSinglenton
+    {
+        private static final ILexerService INSTANCE = new LexerService();
+    }
+
+    public static ILexerService getInstance()
+    {
+        return LexerServiceSinglenton.INSTANCE;
+    }
+
+    /**
+     * Lexes the command line tokens into the normalized command, ready for the validator and the calculator.
+     * @param operations The list of tokens that represent the string in operation from the command line
+     * @return The normalized command and the facts needed to validate it.
+     */
+    @Override
+    public LexedCommand lex(List<? extends CharSequence> operations) {
+        return new Scan(operations, true, true).lex();
+    }
+
+    @Override
+    public LexedCommand lex(CharSequence operation) {
+        return lex(operation == null ? Collections.<CharSequence>emptyList() : Collections.singletonList(operation));
+    }
+
+    /**
+     * Upper cases the command line tokens and removes the spaces, without substituting the operators.
+     * @param operations The list of tokens that represent the string in operation from the command line
+     * @return The normalized string.
+     */
+    @Override
+    public String normalize(List<? extends CharSequence> operations) {
+        return new Scan(operations, true, false).lex().getCommand();
+    }
+
+    /**
+     * Substitutes the operation keywords of an already normalized command by their symbols.
+     * Any other character, spaces included, is kept as it is.
+     * @param command The normalized command
+     * @return The command with the operators substituted.
+     */
+    @Override
+    public String substituteOperators(CharSequence command) {
+        return new Scan(Collections.singletonList(command), false, true).lex().getCommand();
+    }
+
+    /**
+     * Regular expression \s, the spaces removed from the command line.
+     */
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Regular expression [a-zA-Z0-9,()-], the characters allowed in the command line.
+     */
+    static boolean isValidCharacter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == ',' || c == '(' || c == ')' || c == Operators.NEGATIVE.getSymbol();
+    }
+
+    /**
+     * State of one scan over the command line.
+     */
+    private static final class Scan {
+        private final List<? extends CharSequence> operations;
+        private final boolean normalize;
+        private final boolean substitute;
+        private char[] out;
+        private int length;
+        private int letterRunStart; //first letter in the output that was not substituted yet
+        private char swallow; //the repeated last letter of the keyword just substituted
+        private boolean validCharacters = true;
+        private boolean containsParenthesis;
+        private int balance;
+        private boolean closedBeforeOpened;
+
+        private Scan(List<? extends CharSequence> operations, boolean normalize, boolean substitute) {
+            this.operations = operations == null ? Collections.<CharSequence>emptyList() : operations;
+            this.normalize = normalize;
+            this.substitute = substitute;
+        }
+
+        private LexedCommand lex() {
+            int capacity = 0;
+            for (CharSequence operation : operations) {
+                capacity += operation.length();
+            }
+            out = new char[capacity];
+            for (CharSequence operation : operations) {
+                for (int i = 0; i < operation.length(); i++) {
+                    next(operation.charAt(i));
+                }
+            }
+            return new LexedCommand(new String(out, 0, length), validCharacters, containsParenthesis, balance == 0 && !closedBeforeOpened);
+        }
+
+        private void next(char c) {
+            if (normalize) {
+                if (isSpace(c)) {
+                    return;
+                }
+                c = Character.toUpperCase(c);
+            }
+            if (c == swallow) {
+                return;
+            }
+            swallow = 0;
+            if (!isValidCharacter(c) && !isSpace(c)) {
+                validCharacters = false;
+            }
+            out[length++] = c;
+            if (c >= 'A' && c <= 'Z') {
+                if (substitute) {
+                    substituteKeyword();
+                }
+                return;
+            }
+            letterRunStart = length;
+            if (c == '(') {
+                containsParenthesis = true;
+                balance++;
+            } else if (c == ')') {
+                containsParenthesis = true;
+                if (--balance < 0) {
+                    closedBeforeOpened = true;
+                }
+            }
+        }
+
+        private void substituteKeyword() {
+            for (int k = 0; k < KEYWORDS.length; k++) {
+                char[] keyword = KEYWORDS[k];
+                int start = length - keyword.length;
+                if (start >= letterRunStart && endsWith(keyword, start)) {
+                    length = start;
+                    out[length++] = SYMBOLS[k];
+                    letterRunStart = length;
+                    swallow = keyword[keyword.length - 1];
+                    return;
+                }
+            }
+        }
+
+        private boolean endsWith(char[] keyword, int start) {
+            for (int i = 0; i < keyword.length; i++) {
+                if (out[start + i] != keyword[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.juancampos.services;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -34,8 +33,10 @@ public class LogService implements  ILogService{
 
     @Override
     public Level getLogLevel(String logLevel){
-        LOGGER.debug(MessageFormat.format("Log Level Received:{0}", logLevel));
-        if (StringUtils.isNotEmpty(logLevel ) && StringUtils.isNotBlank(logLevel)){
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(MessageFormat.format("Log Level Received:{0}", logLevel));
+        }
+        if (logLevel != null && !logLevel.trim().isEmpty()){
             String changeLogLevel = logLevel.toUpperCase().trim();
             switch(changeLogLevel) {
                 case INFO:
@@ -59,7 +60,9 @@ public class LogService implements  ILogService{
             LoggerConfig lconf = conf.getLoggerConfig(LOGGER.getName());
             lconf.setLevel(customLogLevel);
             ctx.updateLoggers(conf);
-            LOGGER.debug(MessageFormat.format("Setting Custom Log Level to {0}", customLogLevel));
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(MessageFormat.format("Setting Custom Log Level to {0}", customLogLevel));
+            }
         }
     }
 }
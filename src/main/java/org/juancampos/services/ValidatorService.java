@@ -3,9 +3,10 @@ package org.juancampos.services;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.juancampos.enums.EvaluationStatus;
 import org.juancampos.enums.Operators;
+import org.juancampos.utils.LexedCommand;
 
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -24,6 +25,7 @@ public class ValidatorService implements IValidatorService {
     public static final String INPUT_IS_EMPTY_COMMAND = "Input is empty command";
     public static final String INPUT_COMMAND_HAS_INVALID_PARENTHESIS = "Input command has invalid parenthesis";
     public static final String INPUT_COMMAND_HAS_INVALID_FIRST_OPERATION = "Input command has invalid first operation";
+    private static final Pattern VALID_CHARACTERS = Pattern.compile("^[a-zA-Z0-9,()-]*$");
 
 
     private ValidatorService()
@@ -65,6 +67,46 @@ public class ValidatorService implements IValidatorService {
         return true;
     }
 
+    /**
+     * Validates a command that was already lexed. The lexer collected the parenthesis balance
+     * while normalizing the command, so the command is not scanned again.
+     * @param command The lexed command
+     * @return True if is valid false otherwise.
+     */
+    @Override
+    public boolean validate(LexedCommand command){
+        EvaluationStatus status = check(command);
+        if (status != EvaluationStatus.OK) {
+            LOGGER.error(status.getMessage());
+            return false;
+        }
+        LOGGER.debug(SUCCESSFUL_VALIDATION);
+        return true;
+    }
+
+    /**
+     * Runs every validation on a lexed command without logging, for the callers
+     * that report the reason of a failure themselves.
+     * @param command The lexed command
+     * @return OK if the command is valid, otherwise the status of the first failed validation.
+     */
+    @Override
+    public EvaluationStatus check(LexedCommand command){
+        if (!command.hasValidCharacters()) {
+            return EvaluationStatus.INVALID_CHARACTERS;
+        }
+        if (command.isEmpty()){
+            return EvaluationStatus.EMPTY_COMMAND;
+        }
+        if (!command.containsParenthesis() || !command.hasBalancedParenthesis()) {
+            return EvaluationStatus.INVALID_PARENTHESIS;
+        }
+        if (isInvalidFirstOperation(command.getCommand())) {
+            return EvaluationStatus.INVALID_FIRST_OPERATION;
+        }
+        return EvaluationStatus.OK;
+    }
+
     /**
      * Validate the command is not null or empty spaces
      * @param input The command input string
@@ -86,9 +128,8 @@ public class ValidatorService implements IValidatorService {
             return true;
         }
         int balance = 0;
-        StringBuilder sbInput = new StringBuilder(input);
-        for (int i = 0; i < sbInput.length(); i++) {
-            char c = sbInput.charAt(i);
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
             if (c == '(') balance++;
             if (c == ')') balance--;
             if (balance < 0) break;
@@ -110,12 +151,13 @@ public class ValidatorService implements IValidatorService {
         if (input.length() < MINIMAL_OPERATION){
             return true;
         }
-        String firstOperation = input.substring(0,2);
-        return !firstOperation.equals(Operators.ADD.getSymbol() + "(") &&
-                !firstOperation.equals(Operators.SUB.getSymbol() + "(") &&
-                !firstOperation.equals(Operators.MULT.getSymbol() + "(") &&
-                !firstOperation.equals(Operators.DIV.getSymbol() + "(") &&
-                !firstOperation.equals(Operators.LET.getSymbol() + "(");
+        char firstOperation = input.charAt(0);
+        return input.charAt(1) != '(' ||
+                firstOperation != Operators.ADD.getSymbol() &&
+                firstOperation != Operators.SUB.getSymbol() &&
+                firstOperation != Operators.MULT.getSymbol() &&
+                firstOperation != Operators.DIV.getSymbol() &&
+                firstOperation != Operators.LET.getSymbol();
 
 
     }
@@ -137,9 +179,23 @@ public class ValidatorService implements IValidatorService {
      */
     @Override
     public boolean validateCharacters(String input){
-        Pattern pattern = Pattern.compile("^[a-zA-Z0-9,()-]*$");
-        Matcher matcher = pattern.matcher(input);
-        if(matcher.matches()) {
+        if(VALID_CHARACTERS.matcher(input).matches()) {
+            LOGGER.debug(VALID_INPUT);
+            return true;
+        }
+        LOGGER.error(INVALID_CHARACTERS_IN_INPUT);
+        return false;
+    }
+
+    /**
+     * Same as validateCharacters(String) for a command that was already lexed, the lexer checked
+     * every character while normalizing the command.
+     * @param command The lexed command
+     * @return True if there are only valid characters in the command, false otherwise.
+     */
+    @Override
+    public boolean validateCharacters(LexedCommand command){
+        if(command.hasValidCharacters()) {
             LOGGER.debug(VALID_INPUT);
             return true;
         }
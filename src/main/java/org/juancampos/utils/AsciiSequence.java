@@ -0,0 +1,49 @@
+package org.juancampos.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A CharSequence view over a window of a byte array holding ASCII text.
+ * The bytes are read as characters in place, nothing is decoded or copied, so one line read from
+ * a memory mapped file can go to the lexer without becoming a String first.
+ * The view is mutable so a reader can move the same instance from line to line.
+ */
+public final class AsciiSequence implements CharSequence {
+    private byte[] bytes;
+    private int start;
+    private int end;
+
+    /**
+     * Moves the view to a new window.
+     * @param bytes The bytes
+     * @param start The first byte of the window
+     * @param end The byte after the last one of the window
+     * @return This view.
+     */
+    public AsciiSequence wrap(byte[] bytes, int start, int end) {
+        this.bytes = bytes;
+        this.start = start;
+        this.end = end;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes[start + index] & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return new AsciiSequence().wrap(bytes, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, start, length(), StandardCharsets.ISO_8859_1);
+    }
+}
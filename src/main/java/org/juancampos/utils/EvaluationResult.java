@@ -0,0 +1,107 @@
+package org.juancampos.utils;
+
+import org.juancampos.enums.EvaluationStatus;
+
+import java.math.BigInteger;
+import java.util.Objects;
+
+/**
+ * The result of evaluating one expression: the value when the status is OK,
+ * otherwise the status and message that explain why there is no value.
+ * A value of the BIG numeric mode that does not fit in a long is kept as a BigInteger (see getBigValue).
+ */
+public final class EvaluationResult {
+    private final EvaluationStatus status;
+    private final long value;
+    private final BigInteger bigValue;
+    private final String message;
+
+    private EvaluationResult(EvaluationStatus status, long value, BigInteger bigValue, String message) {
+        this.status = status;
+        this.value = value;
+        this.bigValue = bigValue;
+        this.message = message;
+    }
+
+    public static EvaluationResult of(long value) {
+        return new EvaluationResult(EvaluationStatus.OK, value, null, EvaluationStatus.OK.getMessage());
+    }
+
+    /**
+     * @param value The exact value
+     * @return The result, with a long value when the value fits in one.
+     */
+    public static EvaluationResult of(BigInteger value) {
+        if (value.bitLength() < Long.SIZE) {
+            return of(value.longValue());
+        }
+        return new EvaluationResult(EvaluationStatus.OK, value.longValue(), value, EvaluationStatus.OK.getMessage());
+    }
+
+    public static EvaluationResult failure(EvaluationStatus status) {
+        return new EvaluationResult(status, 0, null, status.getMessage());
+    }
+
+    public static EvaluationResult failure(EvaluationStatus status, String message) {
+        return new EvaluationResult(status, 0, null, message == null ? status.getMessage() : message);
+    }
+
+    public boolean isOk() {
+        return status == EvaluationStatus.OK;
+    }
+
+    public EvaluationStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The value of the expression, zero if the evaluation failed. The low 64 bits of a value that
+     * does not fit in a long, see isBig.
+     */
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * @return True if the value does not fit in a long.
+     */
+    public boolean isBig() {
+        return bigValue != null;
+    }
+
+    /**
+     * @return The exact value of the expression.
+     */
+    public BigInteger getBigValue() {
+        return bigValue != null ? bigValue : BigInteger.valueOf(value);
+    }
+
+    /**
+     * @return The decimal value of the expression.
+     */
+    public String getValueString() {
+        return bigValue != null ? bigValue.toString() : Long.toString(value);
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return isOk() ? "RESULT = " + getValueString() : "ERROR = " + message;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EvaluationResult)) return false;
+        EvaluationResult that = (EvaluationResult) o;
+        return status == that.status && value == that.value && Objects.equals(bigValue, that.bigValue) && message.equals(that.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * status.hashCode() + Long.hashCode(value)) + Objects.hashCode(bigValue)) + message.hashCode();
+    }
+}
@@ -0,0 +1,54 @@
+package org.juancampos.utils;
+
+/**
+ * The result of lexing the command line in a single pass: the normalized command string
+ * with the operators substituted by their symbols, plus the facts the validator needs
+ * so it does not have to scan the command again.
+ */
+public class LexedCommand {
+    private final String command;
+    private final boolean validCharacters;
+    private final boolean containsParenthesis;
+    private final boolean balancedParenthesis;
+
+    public LexedCommand(String command, boolean validCharacters, boolean containsParenthesis, boolean balancedParenthesis) {
+        this.command = command;
+        this.validCharacters = validCharacters;
+        this.containsParenthesis = containsParenthesis;
+        this.balancedParenthesis = balancedParenthesis;
+    }
+
+    /**
+     * @return The normalized command string, upper case, without spaces and with the operators substituted, i.e. "+(1,2)"
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return True if the command only contains letters, digits, spaces and the characters ,()-
+     */
+    public boolean hasValidCharacters() {
+        return validCharacters;
+    }
+
+    public boolean containsParenthesis() {
+        return containsParenthesis;
+    }
+
+    /**
+     * @return True if every closing parenthesis matches a previous opening one and none is left open.
+     */
+    public boolean hasBalancedParenthesis() {
+        return balancedParenthesis;
+    }
+
+    public boolean isEmpty() {
+        return command.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return command;
+    }
+}
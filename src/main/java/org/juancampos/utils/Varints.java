@@ -0,0 +1,65 @@
+package org.juancampos.utils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length encoding of numbers for the binary formats: 7 bits per byte, least significant first,
+ * with the high bit set on every byte but the last one. Small numbers take a single byte.
+ * Signed numbers are zigzag encoded first, so small negative numbers are small too.
+ */
+public final class Varints {
+    public static final int MAXIMUM_LONG_SIZE = 10;
+
+    private Varints() {
+        // static helpers only
+    }
+
+    public static void writeUnsigned(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static void writeSigned(ByteBuffer buffer, long value) {
+        writeUnsigned(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * @param buffer The buffer, at the first byte of the number
+     * @return The number. The buffer is left after its last byte.
+     * @throws BufferUnderflowException if the buffer ends inside the number.
+     * @throws IllegalArgumentException if the number is longer than a long.
+     */
+    public static long readUnsigned(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than " + MAXIMUM_LONG_SIZE + " bytes");
+    }
+
+    public static long readSigned(ByteBuffer buffer) {
+        long value = readUnsigned(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static int sizeOfUnsigned(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    public static int sizeOfSigned(long value) {
+        return sizeOfUnsigned((value << 1) ^ (value >> 63));
+    }
+}
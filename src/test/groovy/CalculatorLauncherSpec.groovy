@@ -0,0 +1,42 @@
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class CalculatorLauncherSpec extends Specification {
+    @Unroll
+    def "Test the arguments #args take the fast path = #fast"() {
+        expect: "Only an expression without options takes the fast path"
+        CalculatorLauncher.isExpressionOnly(args as String[]) == fast
+        where: "Parameterized Values"
+        args                          | fast
+        ["add(1,2)"]                  | true
+        ["add", "(1,", "2)"]          | true
+        ["add(-1, 2)"]                | true
+        []                            | false
+        ["-l", "DEBUG", "add(1,2)"]   | false
+        ["--numeric-mode", "big"]     | false
+        ["add(1,", "-2)"]             | false
+        [""]                          | false
+    }
+
+    def "Test the fast path calculates the expression as picocli does"() {
+        given: "The standard output and error captured"
+        PrintStream out = System.out
+        PrintStream err = System.err
+        ByteArrayOutputStream output = new ByteArrayOutputStream()
+        ByteArrayOutputStream errors = new ByteArrayOutputStream()
+        System.setOut(new PrintStream(output, true))
+        System.setErr(new PrintStream(errors, true))
+        when: "An expression split in arguments and a division by zero are calculated"
+        Long result = CalculatorLauncher.calculate(["let(a, 5,", "add(a, a))"] as String[])
+        Long failed = CalculatorLauncher.calculate(["div(1, 0)"] as String[])
+        then: "The result is printed, the exception goes to the standard error"
+        result == 10
+        failed == null
+        output.toString().trim() == "RESULT = 10"
+        errors.toString().startsWith("java.lang.ArithmeticException")
+        cleanup:
+        System.setOut(out)
+        System.setErr(err)
+    }
+}
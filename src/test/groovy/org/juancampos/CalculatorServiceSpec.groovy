@@ -5,6 +5,7 @@ import org.apache.commons.lang3.mutable.MutableInt
 import org.apache.commons.lang3.tuple.Pair
 import org.juancampos.exceptions.CalculatorException
 import org.juancampos.services.CalculatorService
+import org.juancampos.services.EvaluatorService
 import org.juancampos.services.ICalculatorService
 import org.juancampos.utils.VariableExpression
 import spock.lang.Specification
@@ -115,4 +116,35 @@ class CalculatorServiceSpec extends Specification {
 
     }
 
-}
\ No newline at end of file
+    def "Test calculate shares one cache entry for the same normalized input"() {
+        given: "The calculator service and its expression cache"
+        ICalculatorService calculatorService = CalculatorService.getInstance()
+        def cache = calculatorService.getExpressionCache()
+        def hits = cache.getHits()
+        when: "The same normalized expression is calculated twice"
+        def first = calculatorService.calculate("*(+(2,2),/(9,3))")
+        def second = calculatorService.calculate("*(+(2,2),/(9,3))")
+        then: "The second calculation is served from the cache"
+        first == 12
+        second == 12
+        cache.getHits() == hits + 1
+    }
+
+    def "Test the spellings of the same expression share one cache entry"() {
+        given: "The evaluator service and an empty expression cache"
+        def evaluator = EvaluatorService.getInstance()
+        def cache = CalculatorService.getInstance().getExpressionCache()
+        cache.clear()
+        when: "The same expression is evaluated in upper case with spaces and in lower case without them"
+        def first = evaluator.evaluate("ADD(1, 2)")
+        def second = evaluator.evaluate("add(1,2)")
+        then: "Both are normalized to the entry +(1,2), compiled once and served from the cache the second time"
+        first.getValue() == 3
+        second.getValue() == 3
+        cache.getMisses() == 1
+        cache.getHits() == 1
+        cache.size() == 1
+        cache.get("+(1,2)").is(cache.get("+(1,2)"))
+    }
+
+}
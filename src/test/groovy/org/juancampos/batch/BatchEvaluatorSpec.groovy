@@ -0,0 +1,73 @@
+package org.juancampos.batch
+
+import org.juancampos.enums.EvaluationStatus
+import org.juancampos.services.CalculatorService
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.stream.Stream
+
+
+class BatchEvaluatorSpec extends Specification {
+    @AutoCleanup
+    BatchEvaluator batchEvaluator = new BatchEvaluator(4)
+
+    def "Test a batch returns every result in the order of the expressions"() {
+        given: "A batch mixing valid and invalid expressions"
+        def expressions = ["add(1, 2)", "sub!@(5, mult(-2, 3))", "div(1, 0)", "let(a, 5, add(a, b))", "", "let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))"]
+        when: "The batch is evaluated"
+        def results = batchEvaluator.evaluate(expressions)
+        then: "Every expression has its result or its failure reason, in order"
+        results*.status == [EvaluationStatus.OK, EvaluationStatus.INVALID_CHARACTERS, EvaluationStatus.ARITHMETIC_ERROR,
+                            EvaluationStatus.INVALID_ARGUMENT, EvaluationStatus.EMPTY_COMMAND, EvaluationStatus.OK]
+        results[0].value == 3
+        results[5].value == 40
+        results[2].toString() == "ERROR = Arithmetic error"
+    }
+
+    def "Test a large batch is split between the workers and keeps the order"() {
+        given: "A batch of distinct expressions, more than the cache can hold"
+        def expressions = (0..<20000).collect { "add(${it}, mult(${it}, 2))".toString() }
+        when: "The batch is evaluated from a stream"
+        def results = batchEvaluator.evaluate(expressions.stream())
+        then: "Each result belongs to its own expression"
+        results.size() == 20000
+        results.withIndex().every { result, i -> result.ok && result.value == 3L * i }
+    }
+
+    def "Test concurrent calculations are deterministic under contention"() {
+        given: "More distinct expressions than the cache can hold and their sequential results"
+        def calculator = CalculatorService.getInstance()
+        def expressions = (0..<3000).collect { "#(A,${it},#(B,*(A,-3),_(+(A,B),/(B,7))))".toString() }
+        def expected = expressions.collect { calculator.calculate(it) }
+        def threads = 8
+        def pool = Executors.newFixedThreadPool(threads)
+        def start = new CountDownLatch(1)
+        when: "Every thread calculates all the expressions many times in its own shuffled order"
+        def futures = (1..threads).collect { seed ->
+            pool.submit({
+                def order = (0..<expressions.size()).toList()
+                Collections.shuffle(order, new Random(seed))
+                start.await()
+                def mismatches = 0
+                5.times {
+                    for (int i : order) {
+                        if (calculator.calculate(expressions[i]) != expected[i]) {
+                            mismatches++
+                        }
+                    }
+                }
+                mismatches
+            } as java.util.concurrent.Callable<Integer>)
+        }
+        start.countDown()
+        def mismatches = futures.collect { it.get(2, TimeUnit.MINUTES) }.sum()
+        pool.shutdown()
+        then: "No thread ever saw a different result"
+        mismatches == 0
+        calculator.getExpressionCache().getEvictions() > 0
+    }
+}
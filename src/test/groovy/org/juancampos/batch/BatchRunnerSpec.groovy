@@ -0,0 +1,62 @@
+package org.juancampos.batch
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class BatchRunnerSpec extends Specification {
+    def "Test every line gets its own result line and invalid lines do not stop the batch"() {
+        given: "Newline delimited expressions with some invalid lines"
+        def input = new BufferedReader(new StringReader("add(1, 2)\nsub!@(5, mult(-2, 3))\n\ndiv(9, 0)\nlet(a, 5, add(a, a))\nlet(a, 5, add(a, b))\nmult(add(2, 2), div(9, 3))\n"))
+        def output = new StringWriter()
+        def batchRunner = new BatchRunner()
+        when: "The batch is run"
+        batchRunner.run(input, output)
+        then: "The results are in the order of the lines"
+        output.toString().readLines() == [
+                "RESULT = 3",
+                "ERROR = Invalid characters in input (line 2)",
+                "ERROR = Input is empty command (line 3)",
+                "ERROR = Arithmetic error (line 4)",
+                "RESULT = 10",
+                "ERROR = Missing Variables Not assigned (line 6)",
+                "RESULT = 12"]
+        batchRunner.getLines() == 7
+        batchRunner.getErrors() == 4
+    }
+
+    def "Test a batch file is streamed to the output"() {
+        given: "A batch file"
+        def file = File.createTempFile("batch", ".txt")
+        file.deleteOnExit()
+        file.text = (1..1000).collect { "add(${it}, ${it})" }.join("\n")
+        def output = new ByteArrayOutputStream()
+        when: "The batch file is run"
+        new BatchRunner().run(file.path, output)
+        then: "There is one result per line"
+        def lines = output.toString("UTF-8").readLines()
+        lines.size() == 1000
+        lines[999] == "RESULT = 2000"
+    }
+
+    @Unroll
+    def "Test the standard output of a batch with #threads threads is only its result lines"() {
+        given: "A batch file with invalid lines"
+        def file = File.createTempFile("batch", ".txt")
+        file.deleteOnExit()
+        file.text = "add(1,2)\nlet(a,b,1)\nadd(1, div(1,0), mult(3,3))\n"
+        when: "The batch is run by the command line in its own JVM, with the log configuration of the jar"
+        def java = new File(System.getProperty("java.home"), "bin/java").path
+        def process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "CalculatorLauncher",
+                "--batch", file.path, "--threads", threads).start()
+        def errors = new StringBuilder()
+        process.consumeProcessErrorStream(errors)
+        def output = process.inputStream.getText("UTF-8")
+        process.waitFor()
+        then: "No log line gets between the result lines"
+        output == "RESULT = 3\nERROR = Missing Variables Not assigned (line 2)\nERROR = INVALID ARGUMENT FOR CALCULATOR (line 3)\n"
+        process.exitValue() == 0
+        where:
+        threads << ["1", "2"]
+    }
+}
@@ -0,0 +1,33 @@
+package org.juancampos.batch
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class MappedExpressionReaderSpec extends Specification {
+    @Unroll
+    def "Test the lines are read across mapped regions and blocks of #regionSize bytes"() {
+        given: "A file with lines of different lengths, CRLF endings and no final new line"
+        def file = File.createTempFile("mapped", ".txt")
+        file.deleteOnExit()
+        def expected = (1..200).collect { "add(${it}, mult(${it * 1000}, ${'1' * (it % 13)}))".toString() }
+        file.bytes = (expected.take(100).join("\r\n") + "\r\n" + expected.drop(100).join("\n")).getBytes("US-ASCII")
+        def reader = new MappedExpressionReader(file.toPath(), regionSize)
+        def lines = []
+        when: "Every line is read"
+        def count = reader.forEachLine { lines << it.toString() }
+        then: "The lines are the same as in the file"
+        count == 200
+        lines == expected
+        where: "Parameterized Values"
+        regionSize << [7, 64, 1000, MappedExpressionReader.DEFAULT_REGION_SIZE]
+    }
+
+    def "Test an empty file has no lines"() {
+        given: "An empty file"
+        def file = File.createTempFile("mapped", ".txt")
+        file.deleteOnExit()
+        expect: "No line is read"
+        new MappedExpressionReader(file.toPath()).forEachLine { throw new IllegalStateException() } == 0
+    }
+}
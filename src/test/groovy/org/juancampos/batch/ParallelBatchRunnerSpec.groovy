@@ -0,0 +1,56 @@
+package org.juancampos.batch
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class ParallelBatchRunnerSpec extends Specification {
+    static final List<String> EXPRESSIONS = ["add(1, 2)", "sub!@(5, mult(-2, 3))", "", "div(9, 0)", "let(a, 5, add(a, a))",
+                                            "let(a, 5, add(a, b))", "mult(add(2, 2), div(9, 3))", "add(1, ž)"]
+
+    @Unroll
+    def "Test the parallel batch writes the same lines as the sequential batch with #threads threads, chunks of #chunkLines lines and #inFlight in flight"() {
+        given: "Many newline delimited expressions with some invalid lines"
+        def input = (1..5000).collect { EXPRESSIONS[it % EXPRESSIONS.size()].replace("1", "${it}") }.join("\n")
+        def expected = new StringWriter()
+        def sequential = new BatchRunner()
+        sequential.run(new BufferedReader(new StringReader(input)), expected)
+        def output = new StringWriter()
+        def parallel = new ParallelBatchRunner(threads, chunkLines, inFlight)
+        when: "The batch is run in parallel"
+        parallel.run(new BufferedReader(new StringReader(input)), output)
+        then: "The results are in the order of the lines"
+        output.toString() == expected.toString()
+        parallel.getLines() == 5000
+        parallel.getErrors() == sequential.getErrors()
+        where: "Parameterized Values"
+        threads | chunkLines | inFlight
+        1       | 1          | 1
+        2       | 7          | 2
+        4       | 100        | 3
+        8       | 4096       | 32
+    }
+
+    def "Test a batch file is evaluated in parallel"() {
+        given: "A batch file"
+        def file = File.createTempFile("batch", ".txt")
+        file.deleteOnExit()
+        file.text = (1..10000).collect { "add(${it}, ${it})" }.join("\n")
+        def output = new ByteArrayOutputStream()
+        def batchRunner = new ParallelBatchRunner(4, 64, 4)
+        when: "The batch file is run"
+        batchRunner.run(file.path, output)
+        then: "There is one result per line, in order"
+        def lines = output.toString("UTF-8").readLines()
+        lines == (1..10000).collect { "RESULT = ${it * 2}".toString() }
+        batchRunner.getLines() == 10000
+        batchRunner.getErrors() == 0
+    }
+
+    def "Test the chunk settings must be positive"() {
+        when: "A runner without chunks in flight is created"
+        new ParallelBatchRunner(2, 10, 0)
+        then: "It is rejected"
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,51 @@
+package org.juancampos.batch
+
+import org.juancampos.enums.EvaluationStatus
+import org.juancampos.exceptions.CalculatorException
+import org.juancampos.utils.EvaluationResult
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+
+
+class ResultFramesSpec extends Specification {
+    def "Test results round trip through a frame of packed longs"() {
+        given: "Results with values and errors"
+        def results = (0..<20).collect {
+            it % 3 == 0 ? EvaluationResult.failure(EvaluationStatus.ARITHMETIC_ERROR) : EvaluationResult.of(it * Long.MAX_VALUE.intdiv(40) - it)
+        }
+        when: "They are written and read back"
+        byte[] frame = ResultFrames.write(results)
+        def buffer = ByteBuffer.wrap(frame)
+        then: "They are the same results, in 1 + 3 + 20 * 8 bytes"
+        frame.length == 164
+        ResultFrames.frameSize(20) == 164
+        ResultFrames.read(buffer) == results
+        !buffer.hasRemaining()
+    }
+
+    def "Test a truncated frame is rejected"() {
+        when: "A frame missing its last byte is read"
+        def frame = ResultFrames.write([EvaluationResult.of(1), EvaluationResult.of(2)])
+        ResultFrames.read(ByteBuffer.wrap(frame, 0, frame.length - 1))
+        then: "A calculator exception is thrown"
+        CalculatorException e = thrown()
+        e.message == ResultFrames.INVALID_RESULT_FRAME
+    }
+
+    @Unroll
+    def "Test a frame whose count does not fit its bytes is rejected: #reason"() {
+        when: "The frame is read"
+        ResultFrames.read(ByteBuffer.wrap(frame as byte[]))
+        then: "A calculator exception is thrown"
+        CalculatorException e = thrown()
+        e.message == ResultFrames.INVALID_RESULT_FRAME
+        where:
+        reason                          | frame
+        "values without their bitmap"   | [2] + [0] * 16
+        "one value short"               | [9, 0, 0] + [0] * 64
+        "a count beyond any buffer"     | [0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x7F] + [0] * 16
+        "a count past the sign bit"     | [0xFF] * 9 + [0x01] + [0] * 16
+    }
+}
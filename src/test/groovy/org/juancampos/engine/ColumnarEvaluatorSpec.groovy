@@ -0,0 +1,96 @@
+package org.juancampos.engine
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class ColumnarEvaluatorSpec extends Specification {
+    @Unroll
+    def "Test columnar evaluation. When input = #inputString over #rows rows then every row has its result"() {
+        given: "Columns of X and Y across several blocks"
+        long[][] columns = [(0..<rows).collect { it - 700L } as long[], (0..<rows).collect { it % 13 + 1L } as long[]]
+        CompiledExpression compiled = ExpressionCompiler.compile(inputString, "X", "Y")
+        long[] results = new long[rows]
+        when: "The expression is evaluated a block at a time"
+        new ColumnarEvaluator(compiled).evaluate(columns, results)
+        then: "The results are the ones of the row at a time evaluation"
+        (0..<rows).every { results[it] == compiled.evaluate([columns[0][it], columns[1][it]] as long[]) }
+        where: "Parameterized Values"
+        inputString                          | rows
+        "+(X,*(Y,2))"                        | 1
+        "+(X,*(Y,2))"                        | ColumnarEvaluator.BLOCK_ROWS
+        "/(*(X,X),Y)"                        | ColumnarEvaluator.BLOCK_ROWS + 1
+        "#(A,+(X,Y),_(*(A,A),/(X,Y)))"       | 2500
+        "#(A,X,#(B,*(A,Y),+(#(A,2,*(A,B)),A)))" | 2500
+        "+(#(A,*(X,2),A),#(B,+(X,Y),*(B,B)))" | 2500
+        "#(A,#(B,X,+(B,B)),#(B,Y,+(A,B)))"   | 2500
+        "_(7,X)"                             | 100
+        "X"                                  | 100
+        "*(+(2,2),/(9,3))"                   | 100
+    }
+
+    def "Test columns bound by name"() {
+        given: "Named columns, in any case"
+        ColumnarEvaluator evaluator = new ColumnarEvaluator(ExpressionCompiler.compile("_(A,*(B,C))", "A", "B", "C"))
+        long[] results = new long[3]
+        when: "The expression is evaluated over them"
+        evaluator.evaluate([c: [1, 2, 3] as long[], A: [10, 20, 30] as long[], b: [4, 5, 6] as long[]], results)
+        then: "Every column is bound to its parameter"
+        results == [6, 10, 12] as long[]
+        when: "A column is missing"
+        evaluator.evaluate([A: [1] as long[], B: [1] as long[]], results)
+        then: "It is rejected"
+        thrown(IllegalArgumentException)
+    }
+
+    def "Test a division by zero in any row throws"() {
+        given: "A column with a zero in the second block"
+        long[] divisors = (1..3000).collect { it == 2000 ? 0L : it as long } as long[]
+        when: "It is used as a divisor"
+        new ColumnarEvaluator(ExpressionCompiler.compile("/(100,X)", "X")).evaluate([divisors] as long[][], new long[3000])
+        then: "The arithmetic exception floats up"
+        thrown(ArithmeticException)
+    }
+
+    def "Test random expressions give the same results by columns and by rows"() {
+        given: "Random expressions over three parameters, with lets, overflows and divisions"
+        def random = new Random(15)
+        int rows = 1500
+        long[][] columns = (0..2).collect { (0..<rows).collect { LITERALS[random.nextInt(LITERALS.size())] as long } as long[] } as long[][]
+        expect: "The columnar evaluation agrees with the row at a time evaluation, optimized or not"
+        (1..300).each {
+            CompiledExpression compiled = ExpressionCompiler.compile(randomExpression(random, 4, ["X", "Y", "Z"]), "X", "Y", "Z")
+            def expected = outcome { long[] results -> compiled.evaluate(columns, results) }
+            assert outcome { long[] results -> new ColumnarEvaluator(compiled).evaluate(columns, results) } == expected
+            assert outcome { long[] results -> new ColumnarEvaluator(ExpressionOptimizer.optimize(compiled)).evaluate(columns, results) } == expected
+        }
+    }
+
+    private static Object outcome(Closure evaluation) {
+        long[] results = new long[1500]
+        try {
+            evaluation(results)
+            return results.toList()
+        } catch (ArithmeticException e) {
+            return e.getClass()
+        }
+    }
+
+    private static final List<String> LITERALS = ["1", "-1", "2", "7", "-3", "9223372036854775807", "-9223372036854775808", "3037000500"]
+
+    private static String randomExpression(Random random, int depth, List<String> variables) {
+        int choice = random.nextInt(depth <= 0 ? 2 : 8)
+        if (choice == 0) {
+            return LITERALS[random.nextInt(LITERALS.size())]
+        }
+        if (choice == 1) {
+            return variables[random.nextInt(variables.size())]
+        }
+        if (choice == 2) {
+            def name = ["A", "B", "X"][random.nextInt(3)]
+            return "#(" + name + "," + randomExpression(random, depth - 1, variables) + "," + randomExpression(random, depth - 1, variables + [name]) + ")"
+        }
+        def symbol = ["+", "_", "*", "/", "+"][choice - 3]
+        return symbol + "(" + randomExpression(random, depth - 1, variables) + "," + randomExpression(random, depth - 1, variables) + ")"
+    }
+}
@@ -0,0 +1,134 @@
+package org.juancampos.engine
+
+import org.juancampos.exceptions.CalculatorException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class CompiledExpressionSpec extends Specification {
+    @Unroll
+    def "Test compile once and evaluate many times. When input = #inputString then evaluate() = #expectedResult"() {
+        given: "An expression compiled once"
+        CompiledExpression compiled = ExpressionCompiler.compile(inputString)
+        when: "The compiled expression is evaluated several times"
+        def results = (1..3).collect { compiled.evaluate() }
+        then: "Every evaluation returns the expected result"
+        results == [expectedResult] * 3
+        where: "Parameterized Values"
+        inputString                                   || expectedResult
+        "+(1,2)"                                      || 3
+        "-7"                                          || -7
+        "+(1,*(2,3))"                                 || 7
+        "*(+(2,2),/(9,3))"                            || 12
+        "*(+(2,2),/(-9,3))"                           || -12
+        "#(A,5,+(A,A))"                               || 10
+        "#(A,5,#(B,*(A,10),+(B,A)))"                  || 55
+        "#(A,#(B,10,+(B,B)),#(B,20,+(A,B)))"          || 40
+        "#(A,#(B,10,+(B,5)),#(B,20,+(A,B)))"          || 35
+        "+(2,*(#(A,1,+(2,A)),6))"                     || 20
+        "#(A,1,+(#(A,2,A),A))"                        || 3
+    }
+
+    @Unroll
+    def "Test compiled program. When input = #inputString then program = #program"() {
+        when: "The expression is compiled"
+        CompiledExpression compiled = ExpressionCompiler.compile(inputString)
+        then: "The postfix program, stack depth and slots are as expected"
+        compiled.toString() == program
+        compiled.getMaxStackDepth() == stackDepth
+        compiled.getSlotCount() == slots
+        where: "Parameterized Values"
+        inputString         || program                                       | stackDepth | slots
+        "+(1,*(2,3))"       || "PUSH 1; PUSH 2; PUSH 3; MULT; ADD"            | 3          | 0
+        "#(A,5,+(A,A))"     || "PUSH 5; STORE 0; LOAD 0; LOAD 0; ADD"         | 2          | 1
+    }
+
+    @Unroll
+    def "Test compile throws calculator exception when input = #inputString"() {
+        when: "An invalid expression is compiled"
+        ExpressionCompiler.compile(inputString)
+        then: "A calculator exception is thrown"
+        thrown CalculatorException
+        where: "Parameterized Values"
+        inputString              | _
+        ""                       | _
+        "+(1,2"                  | _
+        "+(1)"                   | _
+        "+(1,2,3)"               | _
+        "+(1,2))"                | _
+        "#(A5,1,A)"              | _
+        "#(A,1,+(A,B))"          | _
+        "#(A,A,A)"               | _
+        "+(-,2)"                 | _
+        "%(1,2)"                 | _
+    }
+
+    def "Test division by zero in a compiled expression will throw arithmetic exception"() {
+        given: "A compiled division by zero"
+        CompiledExpression compiled = ExpressionCompiler.compile("/(10,_(1,1))")
+        when: "The expression is evaluated"
+        compiled.evaluate()
+        then: "The arithmetic exception floats up"
+        thrown ArithmeticException
+    }
+
+    def "Test an add chain a million levels deep compiles without recursion and evaluates"() {
+        given: "add(1, add(1, ... add(1, 0))) nested a million times"
+        def depth = 1000000
+        def chain = new StringBuilder()
+        depth.times { chain.append("+(1,") }
+        chain.append("0").append(")" * depth)
+        when: "It is compiled, optimized and evaluated"
+        CompiledExpression compiled = ExpressionCompiler.compile(chain.toString())
+        then: "Both programs evaluate to the depth"
+        compiled.evaluate() == depth
+        compiled.getMaxStackDepth() == depth + 1
+        ExpressionOptimizer.optimize(compiled).evaluate() == depth
+    }
+
+    def "Test a let chain of the same variable a hundred thousand levels deep resolves every shadowed declaration"() {
+        given: "let(A, 0, let(A, add(A, 1), ... A)) nested a hundred thousand times"
+        def depth = 100000
+        def chain = new StringBuilder("#(A,0,")
+        (depth - 1).times { chain.append("#(A,+(A,1),") }
+        chain.append("A").append(")" * depth)
+        when: "It is compiled"
+        CompiledExpression compiled = ExpressionCompiler.compile(chain.toString())
+        then: "Every LET reads the slot of the one it shadows"
+        compiled.evaluate() == depth - 1
+        compiled.getSlotCount() == depth
+    }
+
+    def "Test a variable is visible again once the let shadowing it is closed"() {
+        expect: "The outer A after the inner let is closed, and B is not visible after its let"
+        ExpressionCompiler.compile("#(A,1,+(#(A,2,A),A))").evaluate() == 3
+        ExpressionCompiler.compile("#(A,1,+(#(A,2,A),A))", "A").evaluate([7] as long[]) == 3
+        ExpressionCompiler.compile("+(#(A,2,A),A)", "A").evaluate([7] as long[]) == 9
+
+        when: "A variable is used after its let"
+        ExpressionCompiler.compile("+(#(B,2,B),B)")
+        then: "It is not assigned"
+        def e = thrown(CalculatorException)
+        e.message == ExpressionCompiler.MISSING_VARIABLES_NOT_ASSIGNED
+    }
+
+    @Unroll
+    def "Test an expression nested deeper than the maximum depth of #maximumDepth throws calculator exception"() {
+        when: "The expression is compiled with a maximum depth"
+        ExpressionCompiler.compile(inputString, maximumDepth)
+        then: "A calculator exception reports the depth"
+        def e = thrown(CalculatorException)
+        e.message == "Expression nested deeper than ${maximumDepth} levels"
+        where: "Parameterized Values"
+        inputString                    | maximumDepth
+        "+(1,+(2,+(3,4)))"             | 2
+        "#(A,1,#(B,2,+(A,B)))"         | 2
+        "+(1,2)"                       | 0
+    }
+
+    def "Test an expression as deep as the maximum depth compiles"() {
+        expect: "The depth is inclusive"
+        ExpressionCompiler.compile("+(1,+(2,+(3,4)))", 3).evaluate() == 10
+        ExpressionCompiler.compile("#(A,1,#(B,2,+(A,B)))", 3).evaluate() == 3
+    }
+}
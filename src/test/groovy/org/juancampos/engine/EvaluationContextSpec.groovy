@@ -0,0 +1,68 @@
+package org.juancampos.engine
+
+import groovy.transform.CompileStatic
+import org.apache.logging.log4j.Level
+import org.apache.logging.log4j.core.config.Configurator
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+
+
+class EvaluationContextSpec extends Specification {
+    def "Test the context grows to the largest expression and is reused afterwards"() {
+        given: "A new context and a deep expression"
+        def context = new EvaluationContext()
+        def deep = ExpressionCompiler.compile((1..32).collect { "+(${it}," }.join("") + "33" + ")" * 32)
+        def small = ExpressionCompiler.compile("#(A,5,+(A,A))")
+        when: "The deep expression and then a small one are evaluated with the same context"
+        def deepResult = deep.evaluate(context)
+        def capacity = context.getStackCapacity()
+        def smallResult = small.evaluate(context)
+        then: "The results are right and the stack did not shrink"
+        deepResult == 561
+        smallResult == 10
+        capacity >= deep.getMaxStackDepth()
+        context.getStackCapacity() == capacity
+    }
+
+    def "Test the current context belongs to the calling thread"() {
+        when: "The current context is taken from this thread and another thread"
+        def mine = EvaluationContext.current()
+        def other = null
+        def thread = Thread.start { other = EvaluationContext.current() }
+        thread.join()
+        then: "Each thread has its own context"
+        mine.is(EvaluationContext.current())
+        !mine.is(other)
+    }
+
+    def "Test evaluating with a warmed up context does not allocate"() {
+        given: "A compiled expression with variables and a warmed up context"
+        def compiled = ExpressionCompiler.compile("#(A,#(B,10,+(B,B)),#(B,20,+(A,B)))")
+        def context = new EvaluationContext()
+        def threads = ManagementFactory.getThreadMXBean()
+        assumeAllocationCounting(threads)
+        Configurator.setRootLevel(Level.ERROR) //another spec may have turned DEBUG on, which traces every instruction
+        evaluateMany(compiled, context, 100000)
+        when: "The expression is evaluated many times"
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId())
+        long sum = evaluateMany(compiled, context, 100000)
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before
+        then: "Nothing but the measurement itself is allocated"
+        sum == 40L * 100000
+        allocated < 1024
+    }
+
+    @CompileStatic
+    private static long evaluateMany(CompiledExpression compiled, EvaluationContext context, int times) {
+        long sum = 0
+        for (int i = 0; i < times; i++) {
+            sum += compiled.evaluate(context)
+        }
+        return sum
+    }
+
+    private static void assumeAllocationCounting(threads) {
+        org.junit.Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean)
+    }
+}
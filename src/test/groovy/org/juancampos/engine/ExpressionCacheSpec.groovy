@@ -0,0 +1,118 @@
+package org.juancampos.engine
+
+import org.juancampos.exceptions.CalculatorException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class ExpressionCacheSpec extends Specification {
+    def "Test repeated expressions are compiled once and counted as hits"() {
+        given: "An empty cache"
+        def cache = new ExpressionCache(10)
+        when: "The same expression is evaluated three times"
+        def results = (1..3).collect { cache.evaluate("+(1,2)") }
+        then: "It is compiled once and served from the cache afterwards"
+        results == [3L, 3L, 3L]
+        cache.getMisses() == 1
+        cache.getHits() == 2
+        cache.size() == 1
+        cache.get("+(1,2)").is(cache.get("+(1,2)"))
+    }
+
+    def "Test the least recently used expression is evicted when the cache is full"() {
+        given: "A cache of two entries"
+        def cache = new ExpressionCache(2)
+        when: "Three expressions are used, the first one being touched again before the third"
+        cache.get("+(1,1)")
+        cache.get("+(2,2)")
+        cache.get("+(1,1)")
+        cache.get("+(3,3)")
+        then: "The second expression was evicted and the first one is still cached"
+        cache.getEvictions() == 1
+        cache.size() == 2
+        cache.getMisses() == 3
+        when: "The first expression is used again"
+        cache.get("+(1,1)")
+        then: "It is a hit"
+        cache.getHits() == 2
+    }
+
+    def "Test a cache of size zero compiles every time"() {
+        given: "A disabled cache"
+        def cache = new ExpressionCache(0)
+        when: "The same expression is evaluated twice"
+        cache.evaluate("*(2,3)")
+        def result = cache.evaluate("*(2,3)")
+        then: "Nothing is kept"
+        result == 6
+        cache.size() == 0
+        cache.getMisses() == 2
+        cache.getHits() == 0
+    }
+
+    def "Test invalid expressions are not cached"() {
+        given: "An empty cache"
+        def cache = new ExpressionCache(10)
+        when: "An invalid expression is evaluated"
+        cache.evaluate("+(1,")
+        then: "The calculator exception floats up and nothing is cached"
+        thrown CalculatorException
+        cache.size() == 0
+    }
+
+    def "Test a division by zero is reported on every evaluation"() {
+        given: "A cache with a division by zero"
+        def cache = new ExpressionCache(10)
+        when: "The expression is evaluated"
+        cache.evaluate("/(1,0)")
+        then: "The arithmetic exception floats up"
+        thrown ArithmeticException
+        when: "The expression is evaluated again from the cache"
+        cache.evaluate("/(1,0)")
+        then: "The arithmetic exception floats up again"
+        thrown ArithmeticException
+        cache.getHits() == 1
+    }
+
+    @Unroll
+    def "Test a cache of #maximumSize entries has #segments segments and never holds more than its size"() {
+        given: "A cache"
+        def cache = new ExpressionCache(maximumSize)
+        when: "More distinct expressions than the cache size are evaluated"
+        (1..maximumSize * 2 + 10).each { cache.evaluate("+(${it},1)".toString()) }
+        then: "The entries are split in segments within the maximum size"
+        cache.getSegmentCount() == segments
+        cache.size() <= maximumSize
+        cache.getMisses() == maximumSize * 2 + 10
+        cache.getEvictions() == maximumSize * 2 + 10 - cache.size()
+        where: "Parameterized Values"
+        maximumSize | segments
+        2           | 1
+        127         | 1
+        128         | 2
+        1024        | 16
+        100000      | 16
+    }
+
+    def "Test an expression is optimized once it is found in the cache again"() {
+        given: "A cache that does not keep results"
+        def cache = new ExpressionCache(10, false)
+        when: "The same expression is looked up twice"
+        def first = cache.get("*(+(2,2),/(9,3))")
+        def second = cache.get("*(+(2,2),/(9,3))")
+        then: "The first lookup compiles it and the second one optimizes it"
+        first.toString() == "PUSH 2; PUSH 2; ADD; PUSH 9; PUSH 3; DIV; MULT"
+        second.toString() == "PUSH 12"
+        cache.evaluate("*(+(2,2),/(9,3))") == 12
+    }
+
+    def "Test the optimizer can be disabled"() {
+        given: "A cache without the optimizer"
+        def cache = new ExpressionCache(10, false, false)
+        when: "The same expression is looked up twice"
+        cache.get("+(1,2)")
+        def second = cache.get("+(1,2)")
+        then: "It is the program of the compiler"
+        second.toString() == "PUSH 1; PUSH 2; ADD"
+    }
+}
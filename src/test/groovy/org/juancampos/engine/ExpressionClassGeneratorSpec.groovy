@@ -0,0 +1,114 @@
+package org.juancampos.engine
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class ExpressionClassGeneratorSpec extends Specification {
+    @Unroll
+    def "Test generated class. When input = #inputString and row = #row then evaluate(row) = #expectedResult"() {
+        given: "The class generated for the expression"
+        CompiledExpression compiled = ExpressionCompiler.compile(inputString, "X", "Y")
+        GeneratedExpression generated = ExpressionClassGenerator.generate(compiled)
+        expect: "It computes the same result as the interpreter"
+        generated.evaluate(row as long[]) == expectedResult
+        compiled.evaluate(row as long[]) == expectedResult
+        where: "Parameterized Values"
+        inputString                          | row                 || expectedResult
+        "+(X,*(Y,2))"                        | [1, 2]              || 5
+        "#(A,*(X,X),+(A,Y))"                 | [3, 1]              || 10
+        "#(A,#(B,10,+(B,B)),#(B,20,+(A,B)))" | [0, 0]              || 40
+        "/(X,Y)"                             | [-7, 2]             || -3
+        "/(X,Y)"                             | [Long.MIN_VALUE, -1] || Long.MIN_VALUE
+        "*(X,Y)"                             | [Long.MAX_VALUE, 2] || -2
+        "_(9223372036854775807,-9223372036854775808)" | [0, 0]     || -1
+        "+(0,1)"                             | [0, 0]              || 1
+    }
+
+    def "Test the generated class throws the same exception on a division by zero"() {
+        when: "The divisor is zero"
+        ExpressionClassGenerator.generate(ExpressionCompiler.compile("/(X,Y)", "X", "Y")).evaluate([1, 0] as long[])
+        then: "The arithmetic exception floats up"
+        thrown(ArithmeticException)
+    }
+
+    def "Test an expression is generated once it reaches the threshold"() {
+        given: "An expression with parameters"
+        CompiledExpression compiled = ExpressionCompiler.compile("+(X,*(Y,2))", "X", "Y")
+        when: "It is evaluated one time less than the threshold"
+        (1..<CompiledExpression.DEFAULT_GENERATION_THRESHOLD).each { compiled.evaluate([it, 1] as long[]) }
+        then: "It is still interpreted"
+        !compiled.isGenerated()
+        when: "It reaches the threshold"
+        long result = compiled.evaluate([5, 6] as long[])
+        then: "It runs the generated class from then on"
+        compiled.isGenerated()
+        result == 17
+        compiled.evaluate([1, 1] as long[]) == 3
+        when: "It is evaluated over columns"
+        long[] results = new long[3]
+        compiled.evaluate([[1, 2, 3], [10, 20, 30]] as long[][], results)
+        then: "Every row is evaluated by the generated class"
+        results == [21, 42, 63] as long[]
+    }
+
+    def "Test random expressions give the same results generated and interpreted"() {
+        given: "Random expressions over two parameters"
+        def random = new Random(16)
+        expect: "The generated class agrees with the interpreter, optimized or not"
+        (1..300).each {
+            CompiledExpression compiled = ExpressionCompiler.compile(randomExpression(random, 4, ["X", "Y"]), "X", "Y")
+            long[] row = [LITERALS[random.nextInt(LITERALS.size())] as long, LITERALS[random.nextInt(LITERALS.size())] as long]
+            def expected = outcome { compiled.evaluate(row) }
+            assert outcome { ExpressionClassGenerator.generate(compiled).evaluate(row) } == expected
+            assert outcome { ExpressionClassGenerator.generate(ExpressionOptimizer.optimize(compiled)).evaluate(row) } == expected
+        }
+    }
+
+    def "Test an expression too big for the JIT is left to the interpreter"() {
+        given: "An add chain longer than the maximum instructions"
+        def depth = ExpressionClassGenerator.MAXIMUM_INSTRUCTIONS.intdiv(2) + 1
+        CompiledExpression compiled = new CompiledExpression("addChain",
+                ([Opcodes.PUSH] * (depth + 1) + [Opcodes.ADD] * depth) as int[], [1L] * (2 * depth + 1) as long[], depth + 1, new String[0], 0)
+        expect: "No class is generated and the interpreter evaluates it"
+        ExpressionClassGenerator.generate(compiled) == null
+        compiled.evaluate() == depth + 1
+    }
+
+    def "Test every generated class has its own class loader, so it can be unloaded with its expression"() {
+        when: "Two classes are generated"
+        Class first = ExpressionClassGenerator.generate(ExpressionCompiler.compile("+(X,1)", "X")).getClass()
+        Class second = ExpressionClassGenerator.generate(ExpressionCompiler.compile("+(X,1)", "X")).getClass()
+        then: "They are different classes defined by different loaders below the one of the calculator"
+        first != second
+        first.classLoader != second.classLoader
+        first.classLoader != GeneratedExpression.classLoader
+        first.classLoader.parent == GeneratedExpression.classLoader
+    }
+
+    private static Object outcome(Closure evaluation) {
+        try {
+            return evaluation()
+        } catch (ArithmeticException e) {
+            return e.getClass()
+        }
+    }
+
+    private static final List<String> LITERALS = ["0", "1", "-1", "2", "7", "9223372036854775807", "-9223372036854775808", "3037000500"]
+
+    private static String randomExpression(Random random, int depth, List<String> variables) {
+        int choice = random.nextInt(depth <= 0 ? 2 : 8)
+        if (choice == 0) {
+            return LITERALS[random.nextInt(LITERALS.size())]
+        }
+        if (choice == 1) {
+            return variables[random.nextInt(variables.size())]
+        }
+        if (choice == 2) {
+            def name = ["A", "B", "X"][random.nextInt(3)]
+            return "#(" + name + "," + randomExpression(random, depth - 1, variables) + "," + randomExpression(random, depth - 1, variables + [name]) + ")"
+        }
+        def symbol = ["+", "_", "*", "/", "+"][choice - 3]
+        return symbol + "(" + randomExpression(random, depth - 1, variables) + "," + randomExpression(random, depth - 1, variables) + ")"
+    }
+}
@@ -0,0 +1,100 @@
+package org.juancampos.engine
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class ExpressionOptimizerSpec extends Specification {
+    @Unroll
+    def "Test optimized program. When input = #inputString then program = #program"() {
+        when: "The expression is compiled and optimized"
+        CompiledExpression compiled = ExpressionCompiler.compile(inputString)
+        CompiledExpression optimized = ExpressionOptimizer.optimize(compiled)
+        then: "The program is the optimized one and evaluates to the same result"
+        optimized.toString() == program
+        optimized.evaluate() == compiled.evaluate()
+        optimized.getSource() == inputString
+        where: "Parameterized Values"
+        inputString                                   || program
+        "+(1,2)"                                      || "PUSH 3"
+        "*(+(2,2),/(9,3))"                            || "PUSH 12"
+        "/(-7,2)"                                     || "PUSH -3"
+        "*(4611686018427387904,4)"                    || "PUSH 4611686018427387904; PUSH 4; MULT"
+        "#(A,*(+(2,2),/(9,3)),+(A,A))"                || "PUSH 24"
+        "#(A,#(B,10,+(B,B)),#(B,20,+(A,B)))"          || "PUSH 40"
+        "#(A,1,+(#(A,2,A),A))"                        || "PUSH 3"
+    }
+
+    @Unroll
+    def "Test a division by zero still throws after the optimization. When input = #inputString then program = #program"() {
+        given: "An expression that divides by zero"
+        CompiledExpression optimized = ExpressionOptimizer.optimize(ExpressionCompiler.compile(inputString))
+        expect: "The division is kept, shared when repeated, and evaluated even when its value is never used"
+        optimized.toString() == program
+        when: "The optimized expression is evaluated"
+        optimized.evaluate()
+        then: "The arithmetic exception floats up"
+        thrown ArithmeticException
+        where: "Parameterized Values"
+        inputString                                   || program
+        "/(1,0)"                                      || "PUSH 1; PUSH 0; DIV"
+        "+(/(*(2,3),_(4,4)),/(*(2,3),_(4,4)))"        || "PUSH 6; PUSH 0; DIV; STORE 0; LOAD 0; LOAD 0; ADD"
+        "#(A,/(1,0),5)"                               || "PUSH 1; PUSH 0; DIV; STORE 0; PUSH 5"
+        "#(A,/(1,0),#(B,+(A,1),2))"                   || "PUSH 1; PUSH 0; DIV; STORE 0; PUSH 2"
+    }
+
+    def "Test the optimizer handles expressions deeper than the thread stack allows for recursion"() {
+        given: "An add chain 20000 levels deep"
+        def depth = 20000
+        def chain = new StringBuilder()
+        (1..depth).each { chain.append("+(").append(it).append(",") }
+        chain.append("0").append(")" * depth)
+        when: "It is compiled and optimized"
+        CompiledExpression optimized = ExpressionOptimizer.optimize(new CompiledExpression(chain.toString(),
+                ([Opcodes.PUSH] * (depth + 1) + [Opcodes.ADD] * depth) as int[],
+                ((1..depth).collect { it as long } + [0L] + [0L] * depth) as long[], depth + 1, new String[0], 0))
+        then: "It is folded into its sum"
+        optimized.toString() == "PUSH " + (depth * (depth + 1L) / 2)
+    }
+
+    def "Test random expressions evaluate to the same result or the same exception once optimized"() {
+        given: "Random expressions with lets, repeated subexpressions, overflows and divisions by zero"
+        def random = new Random(13)
+        def expressions = (1..2000).collect { randomExpression(random, 5, []) }
+        expect: "The optimized program agrees with the original one on every expression"
+        expressions.each { String expression ->
+            CompiledExpression compiled = ExpressionCompiler.compile(expression)
+            CompiledExpression optimized = ExpressionOptimizer.optimize(compiled)
+            assert outcome(optimized) == outcome(compiled)
+            assert optimized.size() <= compiled.size() + 2
+        }
+    }
+
+    private static Object outcome(CompiledExpression expression) {
+        try {
+            return expression.evaluate()
+        } catch (ArithmeticException e) {
+            return e.getClass()
+        }
+    }
+
+    private static final List<String> LITERALS = ["0", "1", "-1", "2", "7", "9223372036854775807", "-9223372036854775808", "3037000500"]
+
+    private static String randomExpression(Random random, int depth, List<String> variables) {
+        int choice = random.nextInt(depth <= 0 ? 2 : 8)
+        if (choice == 0 || (choice == 1 && variables.isEmpty())) {
+            return LITERALS[random.nextInt(LITERALS.size())]
+        }
+        if (choice == 1) {
+            return variables[random.nextInt(variables.size())]
+        }
+        if (choice == 2) {
+            def name = ["A", "B", "C"][random.nextInt(3)]
+            return "#(" + name + "," + randomExpression(random, depth - 1, variables) + "," + randomExpression(random, depth - 1, variables + [name]) + ")"
+        }
+        def operand = randomExpression(random, depth - 1, variables)
+        def symbol = ["+", "_", "*", "/", "+"][choice - 3]
+        //the same operand twice now and then, for the common subexpressions
+        return symbol + "(" + operand + "," + (random.nextInt(4) == 0 ? operand : randomExpression(random, depth - 1, variables)) + ")"
+    }
+}
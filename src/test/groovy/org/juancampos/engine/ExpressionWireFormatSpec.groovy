@@ -0,0 +1,134 @@
+package org.juancampos.engine
+
+import org.juancampos.exceptions.CalculatorException
+import org.juancampos.utils.Varints
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+
+
+class ExpressionWireFormatSpec extends Specification {
+    @Unroll
+    def "Test a frame evaluates to the same result as the compiled expression. When input = #inputString then result = #expectedResult"() {
+        given: "The frame of a compiled expression"
+        CompiledExpression compiled = ExpressionCompiler.compile(inputString)
+        byte[] frame = ExpressionEncoder.encode(compiled)
+        when: "The frame is evaluated"
+        def buffer = ByteBuffer.wrap(frame)
+        def result = ExpressionDecoder.evaluate(buffer)
+        then: "The result is the same and the whole frame is read"
+        result == expectedResult
+        result == compiled.evaluate()
+        !buffer.hasRemaining()
+        frame.length == ExpressionEncoder.frameSize(compiled)
+        where: "Parameterized Values"
+        inputString                                   || expectedResult
+        "+(1,2)"                                      || 3
+        "*(+(2,2),/(-9,3))"                           || -12
+        "#(A,5,#(B,*(A,10),+(B,A)))"                  || 55
+        "#(A,#(B,10,+(B,B)),#(B,20,+(A,B)))"          || 40
+        "_(2147483647,-2147483648)"                   || 4294967295
+    }
+
+    def "Test frames written one after the other are evaluated in order"() {
+        given: "Several frames in one buffer"
+        def expressions = ["+(1,2)", "#(A,5,+(A,A))", "*(3,4)"].collect { ExpressionCompiler.compile(it) }
+        def buffer = ByteBuffer.allocate(expressions.sum { ExpressionEncoder.frameSize(it) } as int)
+        expressions.each { ExpressionEncoder.encode(it, buffer) }
+        buffer.flip()
+        expect: "Every frame is evaluated from where the previous one ended"
+        (1..3).collect { ExpressionDecoder.evaluate(buffer) } == [3, 10, 12]
+    }
+
+    def "Test a division by zero in a frame throws the arithmetic exception"() {
+        when: "The frame of a division by zero is evaluated"
+        ExpressionDecoder.evaluate(ByteBuffer.wrap(ExpressionEncoder.encode(ExpressionCompiler.compile("/(1,0)"))))
+        then: "The arithmetic exception floats up"
+        thrown ArithmeticException
+    }
+
+    @Unroll
+    def "Test an invalid frame is rejected: #description"() {
+        when: "The frame is evaluated"
+        ExpressionDecoder.evaluate(ByteBuffer.wrap(frame as byte[]))
+        then: "A calculator exception is thrown"
+        CalculatorException e = thrown()
+        e.message == ExpressionDecoder.INVALID_FRAME
+        where: "Parameterized Values"
+        description                   | frame
+        "empty"                       | []
+        "truncated"                   | ExpressionEncoder.encode(ExpressionCompiler.compile("+(1,2)")).toList().dropRight(1)
+        "body longer than the buffer" | [9, 1, 0, 1, ExpressionEncoder.PUSH, 2]
+        "stack underflow"             | [5, 1, 0, 2, ExpressionEncoder.PUSH, 2, ExpressionEncoder.ADD]
+        "stack deeper than declared"  | [7, 1, 0, 2, ExpressionEncoder.PUSH, 2, ExpressionEncoder.PUSH, 2]
+        "slot out of range"           | [7, 1, 1, 2, ExpressionEncoder.PUSH, 2, ExpressionEncoder.LOAD, 1]
+        "slot loaded before stored"   | [5, 1, 1, 1, ExpressionEncoder.LOAD, 0]
+        "slot 64 loaded before stored" | frame(65, 64, 64)
+        "unknown opcode"              | [8, 2, 0, 3, ExpressionEncoder.PUSH, 2, ExpressionEncoder.PUSH, 2, 99]
+        "two values left"             | [7, 2, 0, 2, ExpressionEncoder.PUSH, 2, ExpressionEncoder.PUSH, 2]
+        "bytes after the program"     | [6, 1, 0, 1, ExpressionEncoder.PUSH, 2, 0]
+        "varint too long"             | [11, 1, 0, 1, ExpressionEncoder.PUSH] + [0xFF] * 11
+    }
+
+    def "Test a frame with more than 64 slots loads the slots it stored"() {
+        expect: "The last slot stored is loaded"
+        ExpressionDecoder.evaluate(ByteBuffer.wrap(frame(70, 70, 69) as byte[])) == 69
+    }
+
+    def "Test a frame can not read the slots an earlier frame left in the context"() {
+        given: "A frame that stores a slot and a frame that loads it without storing it"
+        def context = EvaluationContext.current()
+        ExpressionDecoder.evaluate(ByteBuffer.wrap(ExpressionEncoder.encode(ExpressionCompiler.compile("#(A,5,+(A,A))"))), context)
+        when: "The second frame is evaluated on the same thread"
+        ExpressionDecoder.evaluate(ByteBuffer.wrap([5, 1, 1, 1, ExpressionEncoder.LOAD, 0] as byte[]), context)
+        then: "It is rejected instead of returning the value of the first one"
+        CalculatorException e = thrown()
+        e.message == ExpressionDecoder.INVALID_FRAME
+    }
+
+    @Unroll
+    def "Test varints round trip #value in #size bytes"() {
+        given: "A buffer"
+        def buffer = ByteBuffer.allocate(Varints.MAXIMUM_LONG_SIZE)
+        when: "The value is written zigzag encoded and read back"
+        Varints.writeSigned(buffer, value)
+        buffer.flip()
+        then: "It is the same value in the expected number of bytes"
+        buffer.remaining() == size
+        Varints.sizeOfSigned(value) == size
+        Varints.readSigned(buffer) == value
+        where: "Parameterized Values"
+        value          || size
+        0              || 1
+        -1             || 1
+        63             || 1
+        -64            || 1
+        64             || 2
+        1000           || 2
+        Long.MAX_VALUE || 10
+        Long.MIN_VALUE || 10
+    }
+
+    /**
+     * A frame that stores its index in each of the first slots and then loads one slot.
+     */
+    private static List<Integer> frame(int slotCount, int storedSlots, int loadedSlot) {
+        def body = ByteBuffer.allocate(1024)
+        Varints.writeUnsigned(body, 1)
+        Varints.writeUnsigned(body, slotCount)
+        Varints.writeUnsigned(body, storedSlots * 2 + 1)
+        storedSlots.times {
+            body.put((byte) ExpressionEncoder.PUSH)
+            Varints.writeSigned(body, it)
+            body.put((byte) ExpressionEncoder.LET)
+            Varints.writeUnsigned(body, it)
+        }
+        body.put((byte) ExpressionEncoder.LOAD)
+        Varints.writeUnsigned(body, loadedSlot)
+        def frame = ByteBuffer.allocate(body.position() + Varints.MAXIMUM_LONG_SIZE)
+        Varints.writeUnsigned(frame, body.position())
+        frame.put(body.array(), 0, body.position())
+        frame.array().toList().take(frame.position()) as List<Integer>
+    }
+}
@@ -0,0 +1,139 @@
+package org.juancampos.engine
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class LexicalScopeSpec extends Specification {
+    @Unroll
+    def "Test the slot of a variable is the depth of its scope. When input = #inputString then program = #program"() {
+        when: "The expression is compiled"
+        CompiledExpression compiled = ExpressionCompiler.compile(inputString)
+        then: "Sibling scopes share their slots and nested scopes take the next one"
+        compiled.toString() == program
+        compiled.getSlotCount() == slots
+        compiled.evaluate() == expectedResult
+        where: "Parameterized Values"
+        inputString                            || program                                                                                                        | slots | expectedResult
+        "#(A,#(B,10,+(B,B)),#(B,20,+(A,B)))"   || "PUSH 10; STORE 0; LOAD 0; LOAD 0; ADD; STORE 0; PUSH 20; STORE 1; LOAD 0; LOAD 1; ADD"                        | 2     | 40
+        "+(#(A,1,A),#(B,2,B))"                 || "PUSH 1; STORE 0; LOAD 0; PUSH 2; STORE 0; LOAD 0; ADD"                                                       | 1     | 3
+        "#(A,1,+(#(A,2,A),A))"                 || "PUSH 1; STORE 0; PUSH 2; STORE 1; LOAD 1; LOAD 0; ADD"                                                       | 2     | 3
+        "#(A,1,#(B,2,#(C,3,+(A,+(B,C)))))"     || "PUSH 1; STORE 0; PUSH 2; STORE 1; PUSH 3; STORE 2; LOAD 0; LOAD 1; LOAD 2; ADD; ADD"                         | 3     | 6
+    }
+
+    def "Test a slot shared by sibling scopes is named after their variables"() {
+        when: "Sibling lets of different variables are compiled"
+        CompiledExpression compiled = ExpressionCompiler.compile("+(#(A,1,A),+(#(B,2,B),#(A,3,A)))")
+        then: "The one slot is named after both variables, once each"
+        compiled.getSlotCount() == 1
+        compiled.getSlotName(0) == "A/B"
+    }
+
+    def "Test many sibling scopes use one slot"() {
+        given: "A thousand lets added together, each one in its own scope"
+        def siblings = 1000
+        def expression = new StringBuilder()
+        (siblings - 1).times { expression.append("+(#(V,").append(it).append(",V),") }
+        expression.append("0").append(")" * (siblings - 1))
+        when: "It is compiled"
+        CompiledExpression compiled = ExpressionCompiler.compile(expression.toString())
+        then: "One slot holds all of them"
+        compiled.getSlotCount() == 1
+        compiled.evaluate() == (0..<siblings - 1).sum()
+    }
+
+    def "Test a let shadowing a parameter takes the next slot and the parameter is visible again after it"() {
+        when: "The let of X is inside the scope of the parameters X and Y"
+        CompiledExpression compiled = ExpressionCompiler.compile("+(#(X,*(X,10),+(X,Y)),X)", "X", "Y")
+        then: "The let binds the third slot and reads the parameter slot for its value"
+        compiled.toString() == "LOAD 0; PUSH 10; MULT; STORE 2; LOAD 2; LOAD 1; ADD; LOAD 0; ADD"
+        compiled.evaluate([3, 4] as long[]) == 37
+    }
+
+    def "Test random expressions with shadowed and sibling lets agree with a scope chain interpreter"() {
+        given: "Random expressions over the variables A, B and C"
+        def random = new Random(19)
+        def expressions = (1..2000).collect { randomExpression(random, 6, []) }
+        expect: "The compiled program, the optimized one and the generated class agree with the reference"
+        expressions.each { String expression ->
+            def expected = outcome { reference(expression) }
+            CompiledExpression compiled = ExpressionCompiler.compile(expression)
+            assert outcome { compiled.evaluate() } == expected
+            assert outcome { ExpressionOptimizer.optimize(compiled).evaluate() } == expected
+            GeneratedExpression generated = ExpressionClassGenerator.generate(compiled)
+            assert generated == null || outcome { generated.evaluate(CompiledExpression.NO_PARAMETERS) } == expected
+        }
+    }
+
+    private static Object outcome(Closure<Long> evaluation) {
+        try {
+            return evaluation()
+        } catch (ArithmeticException e) {
+            return e.getClass()
+        }
+    }
+
+    /**
+     * Evaluates the normalized command by walking it, with a scope chain of maps, one per LET.
+     */
+    private static long reference(String expression) {
+        def parser = [position: 0]
+        return evaluate(expression, parser, [])
+    }
+
+    private static long evaluate(String s, Map parser, List<Map<String, Long>> chain) {
+        char c = s.charAt(parser.position)
+        if (c == '#' as char) {
+            parser.position += 2
+            def name = name(s, parser)
+            parser.position++
+            long value = evaluate(s, parser, chain)
+            parser.position++
+            long result = evaluate(s, parser, chain + [[(name): value]])
+            parser.position++
+            return result
+        }
+        if ("+_*/".indexOf((int) c) >= 0) {
+            parser.position += 2
+            long first = evaluate(s, parser, chain)
+            parser.position++
+            long second = evaluate(s, parser, chain)
+            parser.position++
+            return ExpressionOptimizer.fold(Opcodes.fromSymbol(c), first, second)
+        }
+        if (Character.isLetter(c)) {
+            def name = name(s, parser)
+            return chain.reverse().find { it.containsKey(name) }[name]
+        }
+        int start = parser.position
+        parser.position++
+        while (parser.position < s.length() && Character.isDigit(s.charAt(parser.position))) {
+            parser.position++
+        }
+        return new BigInteger(s.substring(start, parser.position)).longValue()
+    }
+
+    private static String name(String s, Map parser) {
+        int start = parser.position
+        while (Character.isLetter(s.charAt(parser.position))) {
+            parser.position++
+        }
+        return s.substring(start, parser.position)
+    }
+
+    private static String randomExpression(Random random, int depth, List<String> variables) {
+        int choice = random.nextInt(depth <= 0 ? 2 : 7)
+        if (choice == 0 || (choice == 1 && variables.isEmpty())) {
+            return ["0", "1", "-3", "7", "9223372036854775807"][random.nextInt(5)]
+        }
+        if (choice == 1) {
+            return variables[random.nextInt(variables.size())]
+        }
+        if (choice <= 3) {
+            def name = ["A", "B", "C"][random.nextInt(3)]
+            return "#(" + name + "," + randomExpression(random, depth - 1, variables) + "," + randomExpression(random, depth - 1, variables + [name]) + ")"
+        }
+        def symbol = ["+", "_", "/"][choice - 4]
+        return symbol + "(" + randomExpression(random, depth - 1, variables) + "," + randomExpression(random, depth - 1, variables) + ")"
+    }
+}
@@ -0,0 +1,158 @@
+package org.juancampos.engine
+
+import org.juancampos.enums.EvaluationStatus
+import org.juancampos.enums.NumericMode
+import org.juancampos.services.EvaluatorService
+import org.juancampos.utils.EvaluationResult
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class NumericEvaluatorSpec extends Specification {
+    @Unroll
+    def "Test numeric modes. When input = #inputString then wrapping = #wrapping, checked = #checked and big = #big"() {
+        given: "The compiled expression, and the optimized one"
+        CompiledExpression compiled = ExpressionCompiler.compile(inputString)
+        CompiledExpression optimized = ExpressionOptimizer.optimize(compiled)
+        expect: "Every mode gives its own result"
+        compiled.evaluate() == wrapping
+        outcome { NumericEvaluator.evaluateChecked(compiled) } == checked
+        NumericEvaluator.evaluateBig(compiled) == new BigInteger(big)
+        optimized.evaluate() == wrapping
+        NumericEvaluator.evaluateBig(optimized) == new BigInteger(big)
+        where: "Parameterized Values"
+        inputString                                        || wrapping             | checked              | big
+        "+(1,*(2,3))"                                      || 7                    | 7                    | "7"
+        "*(9223372036854775807,2)"                         || -2                   | NumericEvaluator.LONG_OVERFLOW | "18446744073709551614"
+        "+(9223372036854775807,1)"                         || Long.MIN_VALUE       | NumericEvaluator.LONG_OVERFLOW | "9223372036854775808"
+        "_(-9223372036854775808,1)"                        || Long.MAX_VALUE       | NumericEvaluator.LONG_OVERFLOW | "-9223372036854775809"
+        "/(-9223372036854775808,-1)"                       || Long.MIN_VALUE       | NumericEvaluator.LONG_OVERFLOW | "9223372036854775808"
+        "/(*(9223372036854775807,2),2)"                    || -1                   | NumericEvaluator.LONG_OVERFLOW | "9223372036854775807"
+        "#(A,*(4294967296,4294967296),_(A,A))"             || 0                    | NumericEvaluator.LONG_OVERFLOW | "0"
+        "#(A,*(4294967296,4294967296),*(A,A))"             || 0                    | NumericEvaluator.LONG_OVERFLOW | "340282366920938463463374607431768211456"
+        "*(-9223372036854775808,-1)"                       || Long.MIN_VALUE       | NumericEvaluator.LONG_OVERFLOW | "9223372036854775808"
+        "*(3037000499,3037000499)"                         || 9223372030926249001  | 9223372030926249001  | "9223372030926249001"
+    }
+
+    def "Test a division by zero throws in every mode"() {
+        given: "A division by zero"
+        CompiledExpression compiled = ExpressionCompiler.compile("/(*(9223372036854775807,2),0)")
+        when: "It is evaluated checked"
+        NumericEvaluator.evaluateChecked(compiled)
+        then: "The overflow comes first"
+        ArithmeticException e = thrown()
+        e.message == NumericEvaluator.LONG_OVERFLOW
+        when: "It is evaluated big"
+        NumericEvaluator.evaluateBig(compiled)
+        then: "The division throws"
+        thrown(ArithmeticException)
+    }
+
+    def "Test the modes with parameters"() {
+        given: "An expression with a parameter"
+        CompiledExpression compiled = ExpressionCompiler.compile("*(X,X)", "X")
+        def context = EvaluationContext.current()
+        expect: "The row is bound in every mode"
+        NumericEvaluator.evaluateChecked(compiled, [3037000499L] as long[], context) == 9223372030926249001L
+        NumericEvaluator.evaluateBig(compiled, [3037000500L] as long[], context) == new BigInteger("9223372037000250000")
+    }
+
+    @Unroll
+    def "Test the evaluator in mode #mode. When input = #expression then result = #expected"() {
+        expect: "The result line of the mode"
+        EvaluatorService.getInstance().evaluate(expression, mode).toString() == expected
+        where: "Parameterized Values"
+        expression                                     | mode                || expected
+        "mult(9223372036854775807, 2)"                 | NumericMode.WRAPPING || "RESULT = -2"
+        "mult(9223372036854775807, 2)"                 | NumericMode.CHECKED  || "ERROR = " + EvaluationStatus.OVERFLOW.getMessage()
+        "mult(9223372036854775807, 2)"                 | NumericMode.BIG      || "RESULT = 18446744073709551614"
+        "div(1, 0)"                                    | NumericMode.CHECKED  || "ERROR = " + EvaluationStatus.ARITHMETIC_ERROR.getMessage()
+        "div(1, 0)"                                    | NumericMode.BIG      || "ERROR = " + EvaluationStatus.ARITHMETIC_ERROR.getMessage()
+        "let(a, mult(4294967296, 4294967296), 5)"      | NumericMode.CHECKED  || "ERROR = " + EvaluationStatus.OVERFLOW.getMessage()
+        "add(1, 2)"                                    | NumericMode.BIG      || "RESULT = 3"
+    }
+
+    def "Test every mode caches its own result"() {
+        given: "An expression that overflows but fits once divided, evaluated again so the cache optimizes it"
+        def evaluator = EvaluatorService.getInstance()
+        def expression = "let(a, mult(9223372036854775807, 2), div(a, 2))"
+        expect: "The modes do not share their results"
+        (1..3).every {
+            evaluator.evaluate(expression, NumericMode.WRAPPING).getValue() == -1 &&
+                    evaluator.evaluate(expression, NumericMode.BIG).getValue() == Long.MAX_VALUE &&
+                    evaluator.evaluate(expression, NumericMode.CHECKED).getStatus() == EvaluationStatus.OVERFLOW
+        }
+    }
+
+    def "Test a big result keeps its exact value"() {
+        when: "The result does not fit in a long"
+        EvaluationResult result = EvaluationResult.of(new BigInteger("18446744073709551617"))
+        then: "The low bits are the long value"
+        result.isBig()
+        result.getValue() == 1
+        result.getValueString() == "18446744073709551617"
+        !EvaluationResult.of(BigInteger.TEN).isBig()
+        EvaluationResult.of(BigInteger.TEN) == EvaluationResult.of(10)
+    }
+
+    def "Test random expressions in the big mode give the exact result"() {
+        given: "Random expressions with overflows"
+        def random = new Random(17)
+        expect: "The promoted evaluation agrees with a BigInteger evaluation of the whole expression"
+        (1..1000).each {
+            def expression = randomExpression(random, 5)
+            CompiledExpression compiled = ExpressionCompiler.compile(expression)
+            def expected = outcome { reference(compiled) }
+            assert outcome { NumericEvaluator.evaluateBig(compiled) } == expected
+            assert outcome { NumericEvaluator.evaluateBig(ExpressionOptimizer.optimize(compiled)) } == expected
+            def checked = outcome { NumericEvaluator.evaluateChecked(compiled) }
+            assert checked == NumericEvaluator.LONG_OVERFLOW || checked == expected ||
+                    checked == ArithmeticException && expected == ArithmeticException
+        }
+    }
+
+    /**
+     * Every value a BigInteger, the plain definition of the BIG mode.
+     */
+    private static BigInteger reference(CompiledExpression expression) {
+        def stack = []
+        def slots = new BigInteger[expression.getSlotCount()]
+        for (int pc = 0; pc < expression.size(); pc++) {
+            switch (expression.getOpcode(pc)) {
+                case Opcodes.PUSH: stack.push(BigInteger.valueOf(expression.getOperand(pc))); break
+                case Opcodes.LOAD: stack.push(slots[(int) expression.getOperand(pc)]); break
+                case Opcodes.STORE: slots[(int) expression.getOperand(pc)] = stack.pop(); break
+                default:
+                    BigInteger second = stack.pop()
+                    BigInteger first = stack.pop()
+                    switch (expression.getOpcode(pc)) {
+                        case Opcodes.ADD: stack.push(first.add(second)); break
+                        case Opcodes.SUB: stack.push(first.subtract(second)); break
+                        case Opcodes.MULT: stack.push(first.multiply(second)); break
+                        default: stack.push(first.divide(second))
+                    }
+            }
+        }
+        return stack.pop()
+    }
+
+    private static Object outcome(Closure evaluation) {
+        try {
+            def result = evaluation()
+            return result instanceof BigInteger ? result : BigInteger.valueOf(result as long)
+        } catch (ArithmeticException e) {
+            return e.message == NumericEvaluator.LONG_OVERFLOW ? e.message : ArithmeticException
+        }
+    }
+
+    private static final List<String> LITERALS = ["0", "1", "-1", "2", "7", "9223372036854775807", "-9223372036854775808", "3037000500", "4294967296"]
+
+    private static String randomExpression(Random random, int depth) {
+        int choice = random.nextInt(depth <= 0 ? 1 : 6)
+        if (choice == 0) {
+            return LITERALS[random.nextInt(LITERALS.size())]
+        }
+        def symbol = ["+", "_", "*", "/", "*"][choice - 1]
+        return symbol + "(" + randomExpression(random, depth - 1) + "," + randomExpression(random, depth - 1) + ")"
+    }
+}
@@ -0,0 +1,113 @@
+package org.juancampos.engine
+
+import org.juancampos.exceptions.CalculatorException
+import org.juancampos.services.EvaluatorService
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class ParameterizedExpressionSpec extends Specification {
+    @Unroll
+    def "Test evaluate against rows. When input = #inputString and row = #row then evaluate(row) = #expectedResult"() {
+        given: "An expression compiled once with the parameters X and Y"
+        CompiledExpression compiled = ExpressionCompiler.compile(inputString, "X", "Y")
+        expect: "The row binds the parameters, with and without the optimizer"
+        compiled.evaluate(row as long[]) == expectedResult
+        ExpressionOptimizer.optimize(compiled).evaluate(row as long[]) == expectedResult
+        where: "Parameterized Values"
+        inputString                  | row        || expectedResult
+        "+(X,*(Y,2))"                | [1, 2]     || 5
+        "+(X,*(Y,2))"                | [-10, 3]   || -4
+        "/(X,Y)"                     | [7, 2]     || 3
+        "#(A,*(X,X),+(A,Y))"         | [3, 1]     || 10
+        "#(X,5,+(X,Y))"              | [100, 1]   || 6
+        "+(#(X,5,X),X)"              | [100, 1]   || 105
+        "*(+(X,Y),+(X,Y))"           | [2, 3]     || 25
+        "+(1,2)"                     | [9, 9]     || 3
+    }
+
+    def "Test the parameters take the first slots and resolve by name"() {
+        when: "An expression is compiled with parameters"
+        CompiledExpression compiled = ExpressionCompiler.compile("#(A,Y,+(A,X))", "X", "Y")
+        then: "They are resolved to their index once, ignoring the case, before the LET slots"
+        compiled.getParameterCount() == 2
+        compiled.getParameterIndex("X") == 0
+        compiled.getParameterIndex("y") == 1
+        compiled.getParameterIndex("A") == -1
+        compiled.getSlotName(2) == "A"
+        compiled.toString() == "LOAD 1; STORE 2; LOAD 2; LOAD 0; ADD"
+        !compiled.isConstant()
+    }
+
+    def "Test the optimizer keeps the parameters in their slots and shares the subexpressions over them"() {
+        when: "A repeated product of parameters is optimized"
+        CompiledExpression optimized = ExpressionOptimizer.optimize(ExpressionCompiler.compile("+(*(X,Y),*(X,Y))", "X", "Y"))
+        then: "The product is evaluated once into a temporary slot after the parameters"
+        optimized.toString() == "LOAD 0; LOAD 1; MULT; STORE 2; LOAD 2; LOAD 2; ADD"
+        optimized.getParameterCount() == 2
+        optimized.getSlotName(1) == "Y"
+        optimized.evaluate([3, 4] as long[]) == 24
+    }
+
+    def "Test evaluate column wise gives the result of every row"() {
+        given: "Columns of random values"
+        def random = new Random(14)
+        int rows = 1000
+        long[][] columns = [new long[rows], new long[rows]]
+        rows.times {
+            columns[0][it] = random.nextInt(2000) - 1000
+            columns[1][it] = random.nextInt(1000) + 1
+        }
+        CompiledExpression compiled = ExpressionCompiler.compile("#(A,+(X,Y),_(*(A,A),/(X,Y)))", "X", "Y")
+        long[] results = new long[rows]
+        when: "The expression is evaluated over the columns"
+        compiled.evaluate(columns, results)
+        then: "Every result is the one of its row"
+        (0..<rows).every {
+            long x = columns[0][it], y = columns[1][it]
+            results[it] == (x + y) * (x + y) - x.intdiv(y) && results[it] == compiled.evaluate([x, y] as long[])
+        }
+    }
+
+    def "Test a variable that is neither a parameter nor assigned is still an error"() {
+        when: "The expression uses Z with only X and Y bound"
+        ExpressionCompiler.compile("+(X,Z)", "X", "Y")
+        then: "It is reported when compiling"
+        CalculatorException e = thrown()
+        e.message == ExpressionCompiler.MISSING_VARIABLES_NOT_ASSIGNED
+    }
+
+    def "Test an expression with parameters needs the values of the parameters"() {
+        given: "An expression with parameters"
+        CompiledExpression compiled = ExpressionCompiler.compile("+(X,Y)", "X", "Y")
+        when: "It is evaluated without a row"
+        compiled.evaluate()
+        then: "The variables are missing"
+        CalculatorException e = thrown()
+        e.message == CompiledExpression.MISSING_VARIABLES_NOT_ASSIGNED
+        when: "The row is too short"
+        compiled.evaluate([1] as long[])
+        then: "It is rejected"
+        thrown(IllegalArgumentException)
+        when: "The columns are of different lengths"
+        compiled.evaluate([[1, 2], [1]] as long[][], new long[2])
+        then: "They are rejected"
+        thrown(IllegalArgumentException)
+        when: "It is encoded for the wire"
+        ExpressionEncoder.encode(compiled)
+        then: "There is no frame for it"
+        thrown(IllegalArgumentException)
+    }
+
+    def "Test the evaluator compiles raw expressions with parameters"() {
+        when: "A raw expression is compiled with lower case parameters"
+        CompiledExpression compiled = EvaluatorService.getInstance().compile("add(x, mult(y, 2))", "x", "y")
+        then: "It evaluates against rows"
+        compiled.evaluate([1, 2] as long[]) == 5
+        compiled.getParameterIndex("y") == 1
+        when: "The raw expression is not valid"
+        EvaluatorService.getInstance().compile("add(x, 2", "x")
+        then: "The validation error is thrown"
+        thrown(CalculatorException)
+    }
+}
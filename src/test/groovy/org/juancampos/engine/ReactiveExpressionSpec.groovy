@@ -0,0 +1,157 @@
+package org.juancampos.engine
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class ReactiveExpressionSpec extends Specification {
+    def "Test only the operations depending on the changed parameter are recomputed"() {
+        given: "A balanced sum of four products"
+        ReactiveExpression reactive = new ReactiveExpression(
+                ExpressionCompiler.compile("+(+(*(A,2),*(B,3)),+(*(C,4),*(D,5)))", "A", "B", "C", "D"), [1, 1, 1, 1] as long[])
+        expect: "The initial result"
+        reactive.getResult() == 14
+        reactive.getNodeCount() == 15
+        when: "One parameter changes"
+        long result = reactive.update("a", 10)
+        then: "Its product, the sum above it and the root are recomputed"
+        result == 32
+        reactive.getRecomputedCount() == 3
+        when: "Two parameters change in the same tick"
+        reactive.set("B", 2)
+        reactive.set("D", 2)
+        result = reactive.recompute()
+        then: "The paths of both are recomputed, the root once"
+        result == 20 + 6 + 4 + 10
+        reactive.getRecomputedCount() == 5
+        when: "A parameter is set to the value it has"
+        result = reactive.update("C", 1)
+        then: "Nothing is recomputed"
+        result == 40
+        reactive.getRecomputedCount() == 0
+    }
+
+    def "Test a subexpression whose value does not change stops the propagation"() {
+        given: "A product by zero"
+        ReactiveExpression reactive = new ReactiveExpression(ExpressionCompiler.compile("+(*(A,0),B)", "A", "B"), [5, 7] as long[])
+        def changes = []
+        reactive.addListener({ previous, current -> changes << [previous, current] } as ResultListener)
+        when: "The multiplied parameter changes"
+        long result = reactive.update("A", 9)
+        then: "Only the product is recomputed and the listeners are not called"
+        result == 7
+        reactive.getRecomputedCount() == 1
+        changes.isEmpty()
+    }
+
+    def "Test a let bound value is one node shared by all its uses"() {
+        given: "A let used twice"
+        ReactiveExpression reactive = new ReactiveExpression(ExpressionCompiler.compile("#(T,*(A,B),+(T,T))", "A", "B"), [2, 3] as long[])
+        expect: "Two parameters and two operations"
+        reactive.getNodeCount() == 4
+        reactive.getResult() == 12
+        reactive.update("B", 5) == 20
+        reactive.getRecomputedCount() == 2
+    }
+
+    def "Test the listeners are told every change of the result"() {
+        given: "An expression with a listener"
+        ReactiveExpression reactive = new ReactiveExpression(ExpressionCompiler.compile("_(X,Y)", "X", "Y"), [10, 4] as long[])
+        def changes = []
+        ResultListener listener = { previous, current -> changes << [previous, current] } as ResultListener
+        reactive.addListener(listener)
+        when: "The parameters change"
+        reactive.update("X", 20)
+        reactive.set("X", 30)
+        reactive.set("Y", 14)
+        reactive.recompute()
+        reactive.update("Y", 10)
+        then: "Every recompute that changes the result is reported with the previous result"
+        changes == [[6, 16], [16, 20]]
+        when: "The listener is removed"
+        reactive.removeListener(listener)
+        reactive.update("Y", 0)
+        then: "It is not called any more"
+        changes.size() == 2
+    }
+
+    @Unroll
+    def "Test a division by zero fails the result until it is cleared. When input = #inputString"() {
+        given: "A division by the parameter Y"
+        ReactiveExpression reactive = new ReactiveExpression(ExpressionCompiler.compile(inputString, "X", "Y"), [8, 2] as long[])
+        def changes = []
+        reactive.addListener({ previous, current -> changes << [previous, current] } as ResultListener)
+        when: "Y becomes zero"
+        reactive.update("Y", 0)
+        then: "The recompute throws"
+        thrown(ArithmeticException)
+        when: "The result is read"
+        reactive.getResult()
+        then: "It throws as well"
+        thrown(ArithmeticException)
+        when: "Y is not zero any more"
+        long result = reactive.update("Y", 4)
+        then: "The result is back, and reported against the last result"
+        result == expectedResult
+        changes == [[initialResult, expectedResult]]
+        where: "Parameterized Values"
+        inputString              || initialResult | expectedResult
+        "+(/(X,Y),1)"            || 5             | 3
+        "#(T,/(X,Y),_(X,Y))"     || 6             | 4
+    }
+
+    def "Test random updates give the result of the full evaluation"() {
+        given: "Random expressions over three parameters"
+        def random = new Random(20)
+        expect: "After every random update the result is the one of evaluating the whole row"
+        (1..200).each {
+            CompiledExpression compiled = ExpressionCompiler.compile(randomExpression(random, 5, ["X", "Y", "Z"]), "X", "Y", "Z")
+            long[] row = [random.nextInt(5) - 2, random.nextInt(5) - 2, random.nextInt(5) - 2]
+            ReactiveExpression reactive = new ReactiveExpression(compiled, row)
+            assert outcome { reactive.getResult() } == outcome { compiled.evaluate(row) }
+            (1..20).each {
+                int parameter = random.nextInt(3)
+                row[parameter] = random.nextInt(5) - 2
+                reactive.set(parameter, row[parameter])
+                assert outcome { reactive.recompute() } == outcome { compiled.evaluate(row) }
+            }
+        }
+    }
+
+    def "Test an unknown parameter is rejected"() {
+        given: "An expression of X"
+        ReactiveExpression reactive = new ReactiveExpression(ExpressionCompiler.compile("+(X,1)", "X"), [1] as long[])
+        when: "Another name is set"
+        reactive.set("Y", 1)
+        then: "It is rejected"
+        thrown(IllegalArgumentException)
+        when: "An index out of the parameters is set"
+        reactive.set(1, 1)
+        then: "It is rejected"
+        thrown(IllegalArgumentException)
+    }
+
+    private static Object outcome(Closure<Long> evaluation) {
+        try {
+            return evaluation()
+        } catch (ArithmeticException e) {
+            return e.getClass()
+        }
+    }
+
+    private static String randomExpression(Random random, int depth, List<String> variables) {
+        int choice = random.nextInt(depth <= 0 ? 2 : 8)
+        if (choice == 0) {
+            return ["0", "1", "-1", "3"][random.nextInt(4)]
+        }
+        if (choice == 1) {
+            return variables[random.nextInt(variables.size())]
+        }
+        if (choice == 2) {
+            def name = ["A", "B"][random.nextInt(2)]
+            return "#(" + name + "," + randomExpression(random, depth - 1, variables) + "," + randomExpression(random, depth - 1, variables + [name]) + ")"
+        }
+        def symbol = ["+", "_", "*", "/", "/"][choice - 3]
+        return symbol + "(" + randomExpression(random, depth - 1, variables) + "," + randomExpression(random, depth - 1, variables) + ")"
+    }
+}
@@ -0,0 +1,201 @@
+package org.juancampos.journal
+
+import org.juancampos.enums.EvaluationStatus
+import org.juancampos.enums.NumericMode
+import org.juancampos.exceptions.CalculatorException
+import org.juancampos.services.EvaluatorService
+import org.juancampos.services.IEvaluatorService
+import org.juancampos.utils.EvaluationResult
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.CountDownLatch
+
+
+class EvaluationJournalSpec extends Specification {
+    IEvaluatorService evaluator = EvaluatorService.getInstance()
+    Path directory = Files.createTempDirectory("journal")
+
+    def cleanup() {
+        evaluator.setJournal(null)
+        directory.toFile().deleteDir()
+    }
+
+    def "Test the evaluations are journaled with their results and read back in order"() {
+        given: "A journal set on the evaluator"
+        EvaluationJournal journal = new EvaluationJournal(directory)
+        evaluator.setJournal(journal)
+        long before = System.currentTimeMillis() * 1_000_000L
+        when: "Valid and invalid expressions are evaluated and the journal is closed"
+        evaluator.evaluate("add(1, mult(2, 3))")
+        evaluator.evaluate("mult(9223372036854775807, 4)", NumericMode.BIG)
+        evaluator.evaluate("sub(-5, 9223372036854775807)", NumericMode.CHECKED)
+        evaluator.evaluate("div(7, 0)")
+        evaluator.evaluate("add(1, 2")
+        journal.close()
+        List<JournalRecord> records = []
+        long read = new JournalReader(directory).forEachRecord({ records << it } as JournalReader.RecordConsumer)
+        then: "Every evaluation is read back with its normalized command, mode and result"
+        read == 5
+        journal.getWritten() == 5
+        journal.getDropped() == 0
+        records*.getCommand() == ["+(1,*(2,3))", "*(9223372036854775807,4)", "_(-5,9223372036854775807)", "/(7,0)", "+(1,2"]
+        records*.getMode() == [NumericMode.WRAPPING, NumericMode.BIG, NumericMode.CHECKED, NumericMode.WRAPPING, NumericMode.WRAPPING]
+        records[0].getResult() == EvaluationResult.of(7)
+        records[1].getResult().getBigValue() == new BigInteger("36893488147419103228")
+        records*.getResult()*.getStatus().drop(2) == [EvaluationStatus.OVERFLOW, EvaluationStatus.ARITHMETIC_ERROR, EvaluationStatus.INVALID_PARENTHESIS]
+        and: "The calculations are timed and the timestamps follow the clock"
+        records.take(4).every { it.getCalculationNanos() > 0 }
+        records[4].getCalculationNanos() == 0
+        records.every { it.getTimestamp() >= before - 1_000_000_000L && it.getTimestamp() <= System.currentTimeMillis() * 1_000_000L + 1_000_000_000L }
+        (1..4).every { records[it].getTimestamp() >= records[it - 1].getTimestamp() }
+    }
+
+    def "Test the segments rotate and only the newest ones are kept"() {
+        given: "A journal of segments of 512 bytes, keeping 3 of them"
+        EvaluationJournal journal = new EvaluationJournal(directory, 1024, 512, 3)
+        when: "Many records are journaled"
+        for (int i = 0; i < 1000; i++) {
+            while (!journal.record("+(" + i + ",1)", NumericMode.WRAPPING, EvaluationResult.of(i + 1), System.nanoTime(), 100)) {
+                Thread.yield() //the ring of 1024 records is full, wait for the writer
+            }
+        }
+        journal.close()
+        List<JournalRecord> records = []
+        new JournalReader(directory).forEachRecord({ records << it } as JournalReader.RecordConsumer)
+        then: "Three segments are left, holding the last records in order"
+        JournalReader.segments(directory).size() == 3
+        records.size() > 0 && records.size() < 1000
+        records*.getResult()*.getValue() == ((1000 - records.size() + 1)..1000).collect { it as long }
+        records.last().getCommand() == "+(999,1)"
+        when: "A new journal is opened in the same directory"
+        journal = new EvaluationJournal(directory)
+        journal.record("+(1,1)", NumericMode.WRAPPING, EvaluationResult.of(2), System.nanoTime(), 1)
+        journal.close()
+        records.clear()
+        new JournalReader(directory).forEachRecord({ records << it } as JournalReader.RecordConsumer)
+        then: "It goes on after the segments there, and its record is the last one"
+        JournalReader.segments(directory).size() == 4
+        records.last().getCommand() == "+(1,1)"
+    }
+
+    def "Test a record bigger than a segment gets a segment of its own"() {
+        given: "A journal of segments of 64 bytes"
+        EvaluationJournal journal = new EvaluationJournal(directory, 16, 64, 0)
+        String command = "+(" + ("1" * 5000) + ",1)"
+        when: "A long command is journaled"
+        journal.record("+(1,1)", NumericMode.WRAPPING, EvaluationResult.of(2), System.nanoTime(), 1)
+        journal.record(command, NumericMode.WRAPPING, EvaluationResult.failure(EvaluationStatus.INVALID_ARGUMENT), System.nanoTime(), 1)
+        journal.close()
+        List<JournalRecord> records = []
+        new JournalReader(directory).forEachRecord({ records << it } as JournalReader.RecordConsumer)
+        then: "Both are read back"
+        records*.getCommand() == ["+(1,1)", command]
+        JournalReader.segments(directory).size() == 2
+    }
+
+    def "Test concurrent evaluations are all journaled or counted as dropped"() {
+        given: "A journal and four evaluating threads"
+        EvaluationJournal journal = new EvaluationJournal(directory)
+        evaluator.setJournal(journal)
+        CountDownLatch start = new CountDownLatch(1)
+        List<Thread> threads = (0..3).collect { n ->
+            Thread.start {
+                start.await()
+                for (int i = 0; i < 5000; i++) {
+                    evaluator.evaluate("add(" + n + ", " + i + ")")
+                }
+            }
+        }
+        when: "They run at the same time"
+        start.countDown()
+        threads*.join()
+        journal.close()
+        Map<Long, List<Long>> byThread = [:].withDefault { [] }
+        new JournalReader(directory).forEachRecord({ JournalRecord record ->
+            def operands = record.getCommand().replaceAll(/[+()]/, "").split(",")*.toLong()
+            byThread[operands[0]] << operands[1]
+        } as JournalReader.RecordConsumer)
+        then: "No record is lost, and the records of every thread are in the order it evaluated them"
+        journal.getWritten() + journal.getDropped() == 20000
+        byThread.values().sum { it.size() } == journal.getWritten()
+        byThread.values().every { it == it.sort(false) }
+    }
+
+    def "Test a record racing the close is either written or returned as dropped"() {
+        given: "Journals closed while three threads keep recording"
+        long accepted = 0
+        long written = 0
+        long read = 0
+        when: "Every journal is closed in the middle of the records"
+        for (int round = 0; round < 3000; round++) {
+            Path roundDirectory = directory.resolve("round" + round)
+            EvaluationJournal journal = new EvaluationJournal(roundDirectory, 64, 1 << 16, 0)
+            CountDownLatch start = new CountDownLatch(3)
+            List<Long> counts = Collections.synchronizedList([])
+            List<Thread> threads = (0..2).collect { n ->
+                Thread.start {
+                    long count = 0
+                    start.countDown()
+                    for (int i = 0; i < 1000; i++) {
+                        if (journal.record("+(" + n + "," + i + ")", NumericMode.WRAPPING, EvaluationResult.of(n + i), System.nanoTime(), 1)) {
+                            count++
+                        }
+                    }
+                    counts << count
+                }
+            }
+            start.await()
+            journal.close()
+            threads*.join()
+            accepted += counts.sum() as long
+            written += journal.getWritten()
+            read += new JournalReader(roundDirectory).forEachRecord({ } as JournalReader.RecordConsumer)
+        }
+        then: "Every record that was accepted is in the segments"
+        written == accepted
+        read == accepted
+    }
+
+    def "Test a replay reports the results that are different"() {
+        given: "A journal with two right results, a wrong one and an invalid expression"
+        EvaluationJournal journal = new EvaluationJournal(directory)
+        journal.record("+(1,2)", NumericMode.WRAPPING, EvaluationResult.of(3), System.nanoTime(), 50)
+        journal.record("*(2,3)", NumericMode.WRAPPING, EvaluationResult.of(7), System.nanoTime(), 60)
+        journal.record("/(1,0)", NumericMode.WRAPPING, EvaluationResult.failure(EvaluationStatus.ARITHMETIC_ERROR), System.nanoTime(), 70)
+        journal.record("+(1,2", NumericMode.WRAPPING, EvaluationResult.failure(EvaluationStatus.INVALID_PARENTHESIS), System.nanoTime(), 0)
+        journal.close()
+        ByteArrayOutputStream report = new ByteArrayOutputStream()
+        JournalReplay replay = new JournalReplay(new PrintStream(report, true))
+        when: "It is replayed"
+        long differences = replay.run(directory)
+        then: "The wrong result is reported, the invalid expression skipped"
+        differences == 1
+        replay.getRecords() == 4
+        replay.getSkipped() == 1
+        replay.getJournaledLatency().getCount() == 3
+        replay.getReplayedLatency().getCount() == 3
+        report.toString().contains("DIFF *(2,3) WRAPPING: journaled RESULT = 7, replayed RESULT = 6")
+        report.toString().contains("Replayed 4 records, 1 skipped as not valid, 1 different results")
+        report.toString().contains("Journaled calculation nanos: count=3")
+    }
+
+    def "Test a file that is not a journal segment is rejected"() {
+        given: "A segment with a wrong header"
+        Files.write(directory.resolve("journal-000001.cjl"), "not a journal".getBytes("US-ASCII"))
+        when: "It is read"
+        new JournalReader(directory).forEachRecord({ } as JournalReader.RecordConsumer)
+        then: "The segment is invalid"
+        CalculatorException e = thrown()
+        e.getMessage().startsWith("Invalid journal segment")
+    }
+
+    def "Test a directory without segments is not a journal"() {
+        when: "An empty directory is read"
+        new JournalReader(directory).forEachRecord({ } as JournalReader.RecordConsumer)
+        then: "There is no journal to read"
+        CalculatorException e = thrown()
+        e.getMessage().startsWith("No journal segments in")
+    }
+}
@@ -0,0 +1,47 @@
+package org.juancampos.logging
+
+import org.apache.logging.log4j.Level
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class ConsoleLoggerSpec extends Specification {
+    def "Test the messages are printed with the pattern of log4j2.xml at the level and above"() {
+        given: "A context at the ERROR level printing to a stream"
+        ByteArrayOutputStream output = new ByteArrayOutputStream()
+        ConsoleLoggerContext context = new ConsoleLoggerContext(Level.ERROR, new PrintStream(output, true))
+        def logger = context.getLogger("org.juancampos.services.ValidatorService")
+        when: "Messages of every level are logged"
+        logger.debug("Not printed")
+        logger.info("Not printed")
+        logger.error("Input command has invalid parenthesis")
+        logger.fatal("Failed {}", 42)
+        List<String> lines = output.toString().readLines()
+        then: "Only ERROR and above are printed, as log4j-core would"
+        lines.size() == 2
+        lines[0] ==~ /\d\d:\d\d:\d\d\.\d\d\d \[${Thread.currentThread().getName()}\] ERROR org\.juancampos\.services\.ValidatorService - Input command has invalid parenthesis/
+        lines[1].endsWith("] FATAL org.juancampos.services.ValidatorService - Failed 42")
+        !logger.isInfoEnabled()
+        logger.isErrorEnabled()
+        and: "A logger is created once per name"
+        context.getLogger("org.juancampos.services.ValidatorService").is(logger)
+        context.hasLogger("org.juancampos.services.ValidatorService")
+        !context.hasLogger("Other")
+    }
+
+    @Unroll
+    def "Test the time #millis is formatted as #time"() {
+        given: "The offset of the default time zone"
+        long offset = TimeZone.getDefault().getOffset(millis)
+        StringBuilder line = new StringBuilder()
+        when: "The UTC time minus the offset is formatted"
+        ConsoleLogger.appendTime(line, millis - offset)
+        then: "It is the local time of day"
+        line.toString() == time
+        where: "Parameterized Values"
+        millis                     | time
+        0L                         | "00:00:00.000"
+        45_296_789L                | "12:34:56.789"
+        86_399_999L + 86_400_000L  | "23:59:59.999"
+    }
+}
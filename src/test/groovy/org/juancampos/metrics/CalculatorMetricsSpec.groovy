@@ -0,0 +1,116 @@
+package org.juancampos.metrics
+
+import org.juancampos.enums.NumericMode
+import org.juancampos.enums.Phase
+import org.juancampos.services.EvaluatorService
+import org.juancampos.services.IEvaluatorService
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.management.ObjectName
+import java.lang.management.ManagementFactory
+
+
+class CalculatorMetricsSpec extends Specification {
+    CalculatorMetrics metrics = CalculatorMetrics.getInstance()
+
+    def setup() {
+        metrics.reset()
+    }
+
+    def "Test the evaluations and their failures are counted by reason"() {
+        given: "The evaluator service"
+        IEvaluatorService evaluator = EvaluatorService.getInstance()
+        when: "Valid and invalid expressions are evaluated"
+        evaluator.evaluate("add(1, 2)")
+        evaluator.evaluate("add(1, 2")
+        evaluator.evaluate("add(1, 2")
+        evaluator.evaluate("")
+        evaluator.evaluate("let(a, 1, add(b, 2))")
+        evaluator.evaluate("div(1, 0)")
+        evaluator.evaluate("mult(9223372036854775807, 2)", NumericMode.CHECKED)
+        then: "Every evaluation is counted, and every failure under its reason"
+        metrics.getEvaluations() == 7
+        metrics.getValidationFailures() == [INVALID_PARENTHESIS: 2L, EMPTY_COMMAND: 1L]
+        metrics.getCalculatorExceptions() == 1
+        metrics.getArithmeticExceptions() == 2
+    }
+
+    def "Test the phases of the sampled evaluations are timed"() {
+        given: "The evaluator service"
+        IEvaluatorService evaluator = EvaluatorService.getInstance()
+        when: "Many expressions are evaluated"
+        for (int i = 0; i < 2000; i++) {
+            evaluator.evaluate("add(" + i + ", mult(2, 3))")
+        }
+        then: "A sample of them is timed in every phase"
+        Phase.values().every { phase ->
+            long count = metrics.getLatency(phase).getCount()
+            count > 0 && count < 2000 && metrics.getLatency(phase).getMax() > 0
+        }
+        metrics.getEvaluations() == 2000
+    }
+
+    @Unroll
+    def "Test #timed of 100 evaluations are timed with a sample of #sample"() {
+        given: "A batch file of 100 expressions"
+        def file = File.createTempFile("batch", ".txt")
+        file.deleteOnExit()
+        file.text = (1..100).collect { "add(${it}, 2)" }.join("\n")
+        when: "The batch is run by the command line in its own JVM, where the sample is read"
+        def java = new File(System.getProperty("java.home"), "bin/java").path
+        def process = new ProcessBuilder(java, "-D" + CalculatorMetrics.SAMPLE_PROPERTY + "=" + sample,
+                "-cp", System.getProperty("java.class.path"), "CalculatorLauncher",
+                "--batch", file.path, "--threads", "1", "--metrics", "0").start()
+        def output = new StringBuilder()
+        process.consumeProcessOutputStream(output)
+        def snapshot = process.errorStream.getText("UTF-8")
+        process.waitFor()
+        then: "The final snapshot counts the timed evaluations in every phase"
+        snapshot.startsWith("Calculator metrics: evaluations=100 ")
+        Phase.values().every { phase -> snapshot.contains(phase.getDisplayName() + " nanos: count=" + timed + " ") }
+        process.exitValue() == 0
+        where:
+        sample | timed
+        1      | 100
+        0      | 0
+    }
+
+    def "Test the size and depth of the compiled expressions"() {
+        when: "An expression three levels deep is compiled for the first time"
+        EvaluatorService.getInstance().compile("let(p, add(7, mult(w, 31)), sub(p, 1))", "w")
+        then: "Its size in instructions and its depth are recorded"
+        metrics.getExpressionSizeMax() == 9
+        metrics.getExpressionDepthMax() == 3
+        metrics.getExpressionSizeP50() == 9
+    }
+
+    def "Test the metrics are readable as MBeans"() {
+        given: "The registered MBeans"
+        metrics.registerMBeans()
+        metrics.registerMBeans()
+        def server = ManagementFactory.getPlatformMBeanServer()
+        when: "An expression is evaluated"
+        EvaluatorService.getInstance().evaluate("sub(5, 3)")
+        then: "The attributes are read through the MBean server"
+        server.getAttribute(new ObjectName(CalculatorMetrics.OBJECT_NAME), "Evaluations") == 1L
+        server.getAttribute(new ObjectName("org.juancampos:type=Phase,name=Calculate"), "SampleCount") >= 0L
+        (server.getAttribute(new ObjectName(CalculatorMetrics.OBJECT_NAME), "Snapshot") as String).startsWith("Calculator metrics: evaluations=1")
+        when: "The metrics are reset through the MBean"
+        server.invoke(new ObjectName(CalculatorMetrics.OBJECT_NAME), "reset", null, null)
+        then: "Nothing is counted"
+        metrics.getEvaluations() == 0
+    }
+
+    def "Test the snapshot is dumped periodically"() {
+        given: "A stream collecting the dumps"
+        ByteArrayOutputStream dumps = new ByteArrayOutputStream()
+        when: "The dump runs for a while"
+        metrics.startDump(20, new PrintStream(dumps, true))
+        Thread.sleep(200)
+        metrics.stopDump()
+        then: "Several snapshots were printed"
+        dumps.toString().count("Calculator metrics:") >= 2
+        dumps.toString().contains("Lex nanos: count=")
+    }
+}
@@ -0,0 +1,73 @@
+package org.juancampos.metrics
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.CountDownLatch
+
+
+class HistogramSpec extends Specification {
+    @Unroll
+    def "Test the value #value falls in a bucket within 1/16 of it"() {
+        when: "The bucket of the value"
+        int index = Histogram.index(value)
+        long highest = Histogram.highestValue(index)
+        then: "The bucket holds the value and its highest value is close"
+        index >= 0 && index < Histogram.BUCKETS
+        highest >= value
+        highest - value <= value / 16
+        index == 0 || Histogram.highestValue(index - 1) < value
+        where:
+        value << [0L, 1L, 15L, 16L, 17L, 31L, 32L, 33L, 1000L, 123456789L, Long.MAX_VALUE >> 1, Long.MAX_VALUE]
+    }
+
+    def "Test the percentiles of a uniform distribution"() {
+        given: "The values 1 to 10000"
+        Histogram histogram = new Histogram()
+        (1..10000).each { histogram.record(it) }
+        when: "A snapshot is taken"
+        Histogram.Snapshot snapshot = histogram.snapshot()
+        then: "The percentiles are within the precision of the buckets"
+        snapshot.getCount() == 10000
+        Math.abs(snapshot.getValueAt(0.5) - 5000) <= 5000 / 16
+        Math.abs(snapshot.getValueAt(0.99) - 9900) <= 9900 / 16
+        Math.abs(snapshot.getValueAt(0.999) - 9990) <= 9990 / 16
+        snapshot.getMax() >= 10000
+        snapshot.getMax() - 10000 <= 10000 / 16
+    }
+
+    def "Test an empty histogram and a reset"() {
+        given: "A histogram with one value"
+        Histogram histogram = new Histogram()
+        histogram.record(-5)
+        expect: "A negative value is recorded as zero"
+        histogram.snapshot().getCount() == 1
+        histogram.snapshot().getMax() == 0
+        when: "It is reset"
+        histogram.reset()
+        then: "Nothing is recorded"
+        histogram.snapshot().getCount() == 0
+        histogram.snapshot().getValueAt(0.99) == 0
+        histogram.snapshot().toString() == "count=0 p50=0 p99=0 p999=0 max=0"
+    }
+
+    def "Test concurrent recordings are not lost"() {
+        given: "Four threads recording 100000 values each"
+        Histogram histogram = new Histogram()
+        CountDownLatch start = new CountDownLatch(1)
+        List<Thread> threads = (1..4).collect { n ->
+            Thread.start {
+                start.await()
+                for (int i = 0; i < 100000; i++) {
+                    histogram.record(i % 64)
+                }
+            }
+        }
+        when: "They run at the same time"
+        start.countDown()
+        threads*.join()
+        then: "Every value is counted"
+        histogram.snapshot().getCount() == 400000
+        histogram.snapshot().getMax() == 63
+    }
+}
@@ -0,0 +1,183 @@
+package org.juancampos.script
+
+import org.juancampos.enums.EvaluationStatus
+import org.juancampos.enums.NumericMode
+import org.juancampos.exceptions.CalculatorException
+import org.juancampos.utils.EvaluationResult
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class ScriptSpec extends Specification {
+    static final List<String> PRICES = [
+            "total = add(price, shipping)",
+            "price = mult(quantity, 12)",
+            "",
+            "quantity = add(3, 4)",
+            "shipping = let(price, 5, add(price, 1))"
+    ]
+
+    @Unroll
+    def "Test a script is evaluated in the order of its dependencies with #threads threads"() {
+        given: "A script that reads its definitions before they are defined"
+        Script script = Script.parse(PRICES)
+        when: "It is evaluated"
+        List<EvaluationResult> results = new ScriptEvaluator(threads, NumericMode.WRAPPING).evaluate(script)
+        then: "Every definition has its value, in the order of the script"
+        script.definitions*.name == ["total", "price", "quantity", "shipping"]
+        script.definitions*.line == [1, 2, 4, 5]
+        results*.value == [90, 84, 7, 6]
+        and: "A let that shadows a name is not a dependency"
+        script.getDefinition(3).dependencies.length == 0
+        script.getDefinition(0).dependencies.collect { script.getDefinition(it).name } == ["price", "shipping"]
+        where:
+        threads << [1, 4]
+    }
+
+    @Unroll
+    def "Test cycles are reported with their definitions with #threads threads"() {
+        given: "A script with two cycles, a definition that depends on one and a definition out of them"
+        Script script = Script.parse([
+                "a = add(b, 1)",
+                "b = mult(c, 2)",
+                "c = sub(a, 3)",
+                "d = add(c, 1)",
+                "self = add(self, 1)",
+                "e = add(1, 2)"
+        ])
+        when: "It is evaluated"
+        List<EvaluationResult> results = new ScriptEvaluator(threads, NumericMode.WRAPPING).evaluate(script)
+        then: "The definitions on a cycle fail with the cycle and the rest is evaluated"
+        results*.status == [EvaluationStatus.CIRCULAR_DEFINITION] * 3 + [EvaluationStatus.FAILED_DEPENDENCY,
+                EvaluationStatus.CIRCULAR_DEFINITION, EvaluationStatus.OK]
+        results[0].message == "Circular definition a -> b -> c -> a"
+        results[3].message == "Depends on c, that failed"
+        results[4].message == "Circular definition self -> self"
+        results[5].value == 3
+        where:
+        threads << [1, 4]
+    }
+
+    def "Test a failure reaches every definition that depends on it"() {
+        given: "A division by zero, an invalid definition and an unknown name"
+        Script script = Script.parse([
+                "zero = sub(2, 2)",
+                "ratio = div(10, zero)",
+                "scaled = mult(ratio, 3)",
+                "broken = add(1, 2",
+                "user = add(broken, 1)",
+                "unknown = add(missing, 1)"
+        ])
+        when: "It is evaluated"
+        List<EvaluationResult> results = new ScriptEvaluator(2, NumericMode.WRAPPING).evaluate(script)
+        then: "Each one fails with the status of the first failure or the failed dependency"
+        results*.status == [EvaluationStatus.OK, EvaluationStatus.ARITHMETIC_ERROR, EvaluationStatus.FAILED_DEPENDENCY,
+                            EvaluationStatus.INVALID_PARENTHESIS, EvaluationStatus.FAILED_DEPENDENCY, EvaluationStatus.INVALID_ARGUMENT]
+        results[2].message == "Depends on ratio, that failed"
+        results[4].message == "Depends on broken, that failed"
+    }
+
+    @Unroll
+    def "Test the numeric mode #mode carries the values between definitions"() {
+        given: "A definition that overflows a long and one that reads it"
+        Script script = Script.parse(["big = mult(9223372036854775807, 4)", "half = div(big, 2)"])
+        expect: "The mode decides the values"
+        new ScriptEvaluator(2, mode).evaluate(script)*.valueString == expected
+        where:
+        mode                | expected
+        NumericMode.WRAPPING | ["-4", "-2"]
+        NumericMode.BIG     | ["36893488147419103228", "18446744073709551614"]
+    }
+
+    def "Test an overflow of the checked mode fails the definitions that read it"() {
+        when: "A checked script overflows"
+        List<EvaluationResult> results = new ScriptEvaluator(1, NumericMode.CHECKED).evaluate(
+                Script.parse(["big = mult(9223372036854775807, 4)", "half = div(big, 2)"]))
+        then: "The overflow fails the reader"
+        results*.status == [EvaluationStatus.OVERFLOW, EvaluationStatus.FAILED_DEPENDENCY]
+    }
+
+    def "Test a big script gives the same results on one thread and on many"() {
+        given: "A chain of sums and a fan of products over it, defined backwards"
+        List<String> lines = (0..<2000).collect { i ->
+            i < 1000 ? "q${name(i)} = add(${i == 999 ? 1 : 'q' + name(i + 1)}, 1)".toString() : "w${name(i)} = mult(q${name(i % 1000)}, 3)".toString()
+        }
+        Script script = Script.parse(lines.reverse())
+        when: "It is evaluated sequentially and in parallel"
+        List<EvaluationResult> sequential = new ScriptEvaluator(1, NumericMode.WRAPPING).evaluate(script)
+        List<EvaluationResult> parallel = new ScriptEvaluator(4, NumericMode.WRAPPING).evaluate(script)
+        then: "The results are the same"
+        parallel*.value == sequential*.value
+        sequential.every { it.ok }
+        parallel[script.definitions.findIndexOf { it.name == "q" + name(0) }].value == 1001
+    }
+
+    def "Test every definition is evaluated once, after all its dependencies"() {
+        given: "Many independent definitions, the sums of every two of them and the sums of every two sums"
+        List<String> lines = (0..<500).collect { "q${name(it)} = add($it, 0)".toString() } +
+                (0..<499).collect { "w${name(it)} = add(q${name(it)}, q${name(it + 1)})".toString() } +
+                (0..<498).collect { "x${name(it)} = add(w${name(it)}, w${name(it + 1)})".toString() }
+        Script script = Script.parse(lines)
+        expect: "Every sum reads the values of both its definitions, run after run"
+        (1..20).every {
+            List<EvaluationResult> results = new ScriptEvaluator(4, NumericMode.WRAPPING).evaluate(script)
+            (0..<498).every { results[999 + it].ok && results[999 + it].value == 4 * it + 4 }
+        }
+    }
+
+    @Unroll
+    def "Test the invalid line #line is rejected"() {
+        when: "The script is parsed"
+        Script.parse(["a = add(1, 2)", line])
+        then: "The line is reported"
+        CalculatorException e = thrown()
+        e.message == message
+        where:
+        line                 | message
+        "add(1, 2)"          | "Invalid definition on line 2, expected name = expression"
+        "subtotal = add(1, 2)" | "Invalid definition name subtotal on line 2, a name is made of letters and contains no operation name"
+        "a1 = add(1, 2)"     | "Invalid definition name a1 on line 2, a name is made of letters and contains no operation name"
+        "A = add(3, 4)"      | "Duplicate definition A on line 2"
+    }
+
+    def "Test a script file is run to the output"() {
+        given: "A script file"
+        def file = File.createTempFile("script", ".txt")
+        file.deleteOnExit()
+        file.text = (PRICES + ["loop = add(loop, 1)"]).join("\n")
+        def output = new ByteArrayOutputStream()
+        def evaluator = new ScriptEvaluator(2, NumericMode.WRAPPING)
+        when: "It is run"
+        long definitions = evaluator.run(file.path, output)
+        then: "Every definition is printed with its value or its error"
+        definitions == 5
+        evaluator.errors == 1
+        output.toString("UTF-8") == "total = 90\nprice = 84\nquantity = 7\nshipping = 6\nloop: ERROR = Circular definition loop -> loop (line 6)\n"
+    }
+
+    def "Test the standard output of a script on the command line is only its definition lines"() {
+        given: "A script with a cycle and an undefined name"
+        def file = File.createTempFile("script", ".txt")
+        file.deleteOnExit()
+        file.text = "a = add(b, 1)\nb = mult(a, 2)\nc = add(missing, 1)\nd = add(2, 3)\n"
+        when: "The script is run by the command line in its own JVM, with the log configuration of the jar"
+        def java = new File(System.getProperty("java.home"), "bin/java").path
+        def process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "CalculatorLauncher",
+                "--script", file.path).start()
+        def errors = new StringBuilder()
+        process.consumeProcessErrorStream(errors)
+        def output = process.inputStream.getText("UTF-8")
+        process.waitFor()
+        then: "The failures are only in the definition lines"
+        output == "a: ERROR = Circular definition a -> b -> a (line 1)\n" +
+                "b: ERROR = Circular definition a -> b -> a (line 2)\n" +
+                "c: ERROR = Missing Variables Not assigned (line 3)\n" +
+                "d = 5\n"
+        process.exitValue() == 0
+    }
+
+    private static String name(int index) {
+        //letters only, never an operation name
+        Integer.toString(index, 5).collect { "QWXYZ"[it as int] }.join()
+    }
+}
@@ -0,0 +1,77 @@
+package org.juancampos.server
+
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+
+class CalculatorServerSpec extends Specification {
+    @AutoCleanup
+    CalculatorServer server = new CalculatorServer(0, 2)
+
+    def "Test pipelined lines get their replies in order"() {
+        given: "A client"
+        def socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())
+        when: "Many lines are sent before reading any reply"
+        socket.outputStream.write("add(1, 2)\r\nsub!@(5, 1)\n\ndiv(9, 0)\nlet(a, 5, add(a, a))\nlet(a, 5, add(a, b))\nmult(2, 3)".getBytes(StandardCharsets.US_ASCII))
+        socket.shutdownOutput()
+        def replies = socket.inputStream.newReader("UTF-8").readLines()
+        then: "Every line gets one reply, in order, and the last line does not need a new line"
+        replies == [
+                "RESULT = 3",
+                "ERROR = Invalid characters in input",
+                "ERROR = Input is empty command",
+                "ERROR = Arithmetic error",
+                "RESULT = 10",
+                "ERROR = Missing Variables Not assigned",
+                "RESULT = 6"]
+        cleanup:
+        socket?.close()
+    }
+
+    def "Test many concurrent clients pipelining many lines"() {
+        given: "50 clients"
+        def executor = Executors.newFixedThreadPool(50)
+        when: "Every client sends 2000 lines, split across many writes, and reads the replies"
+        def futures = (1..50).collect { client ->
+            executor.submit({
+                def socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())
+                try {
+                    def writer = socket.outputStream
+                    Thread.start {
+                        (1..2000).each { writer.write("add(${client}, ${it})\n".getBytes(StandardCharsets.US_ASCII)) }
+                        socket.shutdownOutput()
+                    }
+                    return socket.inputStream.newReader("UTF-8").readLines() == (1..2000).collect { "RESULT = ${client + it}".toString() }
+                } finally {
+                    socket.close()
+                }
+            } as Callable<Boolean>)
+        }
+        then: "Every client gets its own replies, in order"
+        futures.every { it.get() }
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "Test a line longer than the limit gets an error reply and the next lines are evaluated"() {
+        given: "A client"
+        def socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())
+        when: "It sends a line longer than the limit and then a valid line"
+        Thread.start {
+            def chunk = new byte[1 << 16]
+            Arrays.fill(chunk, (byte) '1')
+            (1..(Connection.MAXIMUM_LINE / chunk.length * 2)).each { socket.outputStream.write(chunk) }
+            socket.outputStream.write("\nadd(1, 2)\n".getBytes(StandardCharsets.US_ASCII))
+            socket.shutdownOutput()
+        }
+        def replies = socket.inputStream.newReader("UTF-8").readLines()
+        then: "The long line gets one error and the next line its result"
+        replies == [Connection.LINE_TOO_LONG.trim(), "RESULT = 3"]
+        cleanup:
+        socket?.close()
+    }
+}
@@ -0,0 +1,55 @@
+package org.juancampos.services
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class LexerServiceSpec extends Specification {
+    @Unroll
+    def "Test lexing the command line. When input = '#input' then command = '#command'"() {
+        given: "The lexer service"
+        def lexer = LexerService.getInstance()
+        when: "The command line tokens are lexed"
+        def lexed = lexer.lex([new StringBuilder(input)])
+        then: "The command is normalized and the validation facts are collected"
+        lexed.getCommand() == command
+        lexed.hasValidCharacters() == validCharacters
+        lexed.hasBalancedParenthesis() == balanced
+        where: "Parameterized Values"
+        input                                                  || command                              | validCharacters | balanced
+        "add(1, 2)"                                            || "+(1,2)"                             | true            | true
+        "ADD   (1,A   DD(1,   2))"                             || "+(1,+(1,2))"                        | true            | true
+        "let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))" || "#(A,#(B,10,+(B,B)),#(B,20,+(A,B)))" | true            | true
+        "mult(add(2, 2), div(9, 3))"                           || "*(+(2,2),/(9,3))"                   | true            | true
+        "sub!@(5, mult(-2, 3))"                                || "_!@(5,*(-2,3))"                     | false           | true
+        "add(1,2))("                                           || "+(1,2))("                           | true            | false
+        "ADDD(1,2)"                                            || "+(1,2)"                             | true            | true
+        "addiv(1,2)"                                           || "+IV(1,2)"                           | true            | true
+        ""                                                     || ""                                   | true            | true
+    }
+
+    @Unroll
+    def "Test the single pass matches the regular expression substitution. When input = '#input'"() {
+        given: "The lexer service"
+        def lexer = LexerService.getInstance()
+        when: "The command is lexed and substituted with the regular expressions"
+        def lexed = lexer.lex(input)
+        def expected = regexSubstitution(input.toUpperCase().replaceAll("\\s+", ""))
+        then: "Both produce the same command and character validation"
+        lexed.getCommand() == expected
+        lexed.hasValidCharacters() == (input.toUpperCase().replaceAll("\\s+", "") ==~ /^[a-zA-Z0-9,()-]*$/)
+        where: "Parameterized Values"
+        input << ["let(adder, 5, add(adder, adder))", "ADDDIV", "SUBBLETT", "MULET", "multt(div(1,2),3)", "ad d(1,2)",
+                  "DIVADD(x)", "letlet(1)", "a%b", "LEADDT"]
+    }
+
+    def "Test substituting operators keeps any other character"() {
+        expect: "Spaces and unknown characters are kept"
+        LexerService.getInstance().substituteOperators("ADD(1,2) MULT(1,2) add(3,4)") == "+(1,2) *(1,2) add(3,4)"
+    }
+
+    private static String regexSubstitution(String command) {
+        command.replaceAll("ADD+", "+").replaceAll("SUB+", "_").replaceAll("MULT+", "*")
+                .replaceAll("DIV+", "/").replaceAll("LET+", "#")
+    }
+}
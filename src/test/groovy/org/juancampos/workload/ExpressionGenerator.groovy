@@ -0,0 +1,79 @@
+package org.juancampos.workload
+
+/**
+ * Seeded generator of valid expressions of the calculator language, as typed on the command line, i.e.
+ * "add(-7, let(Q, 5, mult(Q, 2)))". The same shape and seed always give the same expressions.
+ * The operations and lets of an expression share its size between their operands at random, down to the maximum
+ * depth where everything left is a leaf: a literal, or a variable of the lets in scope. The variables are named with
+ * the letters QWXYZ, which are in no keyword, so the lexer never substitutes part of a name.
+ * The literals are never zero and the divisor of a division is always a leaf, otherwise most large expressions
+ * would divide by zero somewhere. They can still divide by a variable bound to zero, or overflow a long.
+ */
+class ExpressionGenerator {
+    private static final String NAME_LETTERS = "QWXYZ"
+
+    private final WorkloadShape shape
+    private final Random random
+    private final List<String> operators = []
+    private int names
+
+    ExpressionGenerator(WorkloadShape shape, long seed) {
+        this.shape = shape
+        this.random = new Random(seed)
+        shape.operatorMix.each { operator, weight -> weight.times { operators << operator } }
+    }
+
+    /**
+     * @return The next expression.
+     */
+    String next() {
+        names = 0
+        StringBuilder expression = new StringBuilder()
+        node(expression, shape.size, 0, [])
+        expression.toString()
+    }
+
+    private void node(StringBuilder expression, int size, int depth, List<String> scope) {
+        if (size == 0 || depth == shape.maxDepth) {
+            leaf(expression, scope)
+        } else if (random.nextDouble() < shape.letDensity) {
+            String name = !scope.isEmpty() && random.nextDouble() < shape.shadowingRate ? scope[random.nextInt(scope.size())] : name(names++)
+            int valueSize = random.nextInt(size)
+            expression.append("let(").append(name).append(", ")
+            node(expression, valueSize, depth + 1, scope)
+            expression.append(", ")
+            node(expression, size - 1 - valueSize, depth + 1, scope + name)
+            expression.append(')')
+        } else {
+            String operator = operators[random.nextInt(operators.size())]
+            int leftSize = operator == "div" ? size - 1 : random.nextInt(size)
+            expression.append(operator).append('(')
+            node(expression, leftSize, depth + 1, scope)
+            expression.append(", ")
+            node(expression, size - 1 - leftSize, depth + 1, scope)
+            expression.append(')')
+        }
+    }
+
+    private void leaf(StringBuilder expression, List<String> scope) {
+        if (!scope.isEmpty() && random.nextBoolean()) {
+            expression.append(scope[random.nextInt(scope.size())])
+        } else {
+            long magnitude = shape.literalMagnitude
+            long literal = 1 + (magnitude < Integer.MAX_VALUE ? random.nextInt((int) magnitude) : (long) (random.nextDouble() * magnitude))
+            expression.append(random.nextBoolean() ? literal : -literal)
+        }
+    }
+
+    static String name(int index) {
+        StringBuilder name = new StringBuilder()
+        int n = index
+        while (true) {
+            name.append(NAME_LETTERS.charAt(n % NAME_LETTERS.length()))
+            n = n.intdiv(NAME_LETTERS.length()) - 1
+            if (n < 0) {
+                return name.toString()
+            }
+        }
+    }
+}
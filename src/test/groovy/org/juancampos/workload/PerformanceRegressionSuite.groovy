@@ -0,0 +1,150 @@
+package org.juancampos.workload
+
+import org.juancampos.enums.NumericMode
+import org.juancampos.services.EvaluatorService
+import org.juancampos.services.IEvaluatorService
+import org.juancampos.utils.EvaluationResult
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.lang.management.ManagementFactory
+
+/**
+ * Performance regression suite, run with mvn test -Pperf. It is not part of the default build, its numbers only
+ * mean something on a quiet machine.
+ * For every shape class it measures the throughput and the allocation per expression of the evaluator service:
+ * - cold: a pool of distinct expressions four times bigger than the expression cache, so every evaluation lexes,
+ *   validates, compiles, optimizes and evaluates;
+ * - hot: a pool of expressions that fits in the cache, so every evaluation is a cache hit.
+ * The throughput is the best of a few timed rounds after a warm up, the allocation is counted by the JVM for the
+ * thread. Both are compared with the baseline file, perf-baseline.properties, and a measure worse than the baseline
+ * by more than the threshold fails, 25% by default (-Dperf.threshold=0.25).
+ * With -Dperf.record=true, or when there is no baseline yet, the measures are written as the new baseline instead.
+ * Before any timing every expression of the pools is cross checked with the ReferenceEvaluator, so a faster
+ * build that gives other results fails too.
+ */
+class PerformanceRegressionSuite extends Specification {
+    static final int COLD_POOL = 4096
+    static final int HOT_POOL = 256
+    static final int ROUNDS = 5
+    static final long ROUND_NANOS = 500_000_000L
+    static final NumericMode MODE = NumericMode.WRAPPING
+
+    @Shared IEvaluatorService evaluator = EvaluatorService.getInstance()
+    @Shared File baselineFile = new File(System.getProperty("perf.baseline", "perf-baseline.properties"))
+    @Shared double threshold = Double.parseDouble(System.getProperty("perf.threshold", "0.25"))
+    @Shared Properties baseline = new Properties()
+    @Shared Properties measures = new Properties()
+    @Shared boolean record
+
+    def setupSpec() {
+        record = Boolean.getBoolean("perf.record") || !baselineFile.exists()
+        if (!record) {
+            baselineFile.withInputStream { baseline.load(it) }
+        }
+    }
+
+    def cleanupSpec() {
+        if (record) {
+            baselineFile.withWriter("ISO-8859-1") { writer ->
+                writer.writeLine("# Expressions per second and bytes allocated per expression, mvn test -Pperf -Dperf.record=true")
+                measures.stringPropertyNames().sort().each { writer.writeLine(it + "=" + measures.getProperty(it)) }
+            }
+            println "Performance baseline recorded in " + baselineFile.absolutePath
+        }
+    }
+
+    @Unroll
+    def "Test the #shape shape did not regress"() {
+        given: "The seeded pools of the shape"
+        def generator = new ExpressionGenerator(shape, shape.name.hashCode())
+        List<String> cold = (1..COLD_POOL).collect { generator.next() }
+        List<String> hot = cold.subList(0, HOT_POOL)
+        when: "The pools are cross checked and measured"
+        cold.each { crossCheck(it) }
+        Measure coldMeasure = measure(cold)
+        Measure hotMeasure = measure(hot)
+        store(shape.name + ".cold", coldMeasure)
+        store(shape.name + ".hot", hotMeasure)
+        println String.format("%-10s cold %,12.0f expressions/s %,10.0f bytes/expression, hot %,12.0f expressions/s %,10.0f bytes/expression",
+                shape.name, coldMeasure.throughput, coldMeasure.allocation, hotMeasure.throughput, hotMeasure.allocation)
+        then: "No measure is worse than the baseline by more than the threshold"
+        regressions(shape.name + ".cold", coldMeasure) + regressions(shape.name + ".hot", hotMeasure) == []
+        where:
+        shape << WorkloadShape.CLASSES
+    }
+
+    private void crossCheck(String expression) {
+        EvaluationResult expected = ReferenceEvaluator.evaluate(expression, MODE)
+        EvaluationResult actual = evaluator.evaluate(expression, MODE)
+        assert [actual.status, actual.bigValue] == [expected.status, expected.bigValue]: expression
+    }
+
+    private Measure measure(List<String> pool) {
+        String[] expressions = pool as String[]
+        long deadline = System.nanoTime() + ROUND_NANOS
+        while (System.nanoTime() < deadline) {
+            evaluateAll(expressions)
+        }
+        Measure best = null
+        ROUNDS.times {
+            long count = 0
+            long allocated = allocatedBytes()
+            long start = System.nanoTime()
+            long end = start + ROUND_NANOS
+            long now = start
+            while (now < end) {
+                evaluateAll(expressions)
+                count += expressions.length
+                now = System.nanoTime()
+            }
+            Measure round = new Measure(throughput: count * 1e9d / (now - start), allocation: (allocatedBytes() - allocated) / (double) count)
+            if (best == null || round.throughput > best.throughput) {
+                best = round
+            }
+        }
+        best
+    }
+
+    private void evaluateAll(String[] expressions) {
+        for (String expression : expressions) {
+            evaluator.evaluate(expression, MODE)
+        }
+    }
+
+    private static long allocatedBytes() {
+        ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().id)
+    }
+
+    private void store(String key, Measure measure) {
+        measures.setProperty(key + ".throughput", String.format(Locale.ROOT, "%.0f", measure.throughput))
+        measures.setProperty(key + ".allocation", String.format(Locale.ROOT, "%.0f", measure.allocation))
+    }
+
+    private List<String> regressions(String key, Measure measure) {
+        List<String> regressions = []
+        if (record || baseline.getProperty(key + ".throughput") == null) {
+            return regressions
+        }
+        double throughput = Double.parseDouble(baseline.getProperty(key + ".throughput"))
+        double allocation = Double.parseDouble(baseline.getProperty(key + ".allocation"))
+        if (measure.throughput < throughput * (1 - threshold)) {
+            regressions << String.format("%s throughput %,.0f expressions/s, baseline %,.0f", key, measure.throughput, throughput)
+        }
+        if (measure.allocation > allocation * (1 + threshold) + 16) { //a few bytes of noise on the small shapes
+            regressions << String.format("%s allocation %,.0f bytes/expression, baseline %,.0f", key, measure.allocation, allocation)
+        }
+        regressions
+    }
+
+    static class Measure {
+        double throughput
+        double allocation
+
+        @Override
+        String toString() {
+            String.format("%,.0f expressions/s, %,.0f bytes/expression", throughput, allocation)
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.juancampos.workload
+
+import org.juancampos.enums.EvaluationStatus
+import org.juancampos.enums.NumericMode
+import org.juancampos.utils.EvaluationResult
+
+/**
+ * A reference evaluator of the expressions of the ExpressionGenerator, sharing no code with the engine: it parses
+ * the raw text by recursive descent and evaluates the tree with BigIntegers and a scope chain of maps.
+ * The numeric modes are applied to the exact value of every operation: WRAPPING keeps its low 64 bits, CHECKED
+ * fails when it does not fit in a long and BIG keeps it. The operands are evaluated left to right and the value of a
+ * let before its body, so the first error is the same one the engine meets.
+ */
+class ReferenceEvaluator {
+    private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE)
+    private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE)
+
+    private final String text
+    private final NumericMode mode
+    private int position
+
+    private ReferenceEvaluator(String text, NumericMode mode) {
+        this.text = text
+        this.mode = mode
+    }
+
+    static EvaluationResult evaluate(String expression, NumericMode mode) {
+        try {
+            EvaluationResult.of(new ReferenceEvaluator(expression, mode).expression([:]))
+        } catch (OverflowFailure e) {
+            EvaluationResult.failure(EvaluationStatus.OVERFLOW)
+        } catch (ArithmeticException e) {
+            EvaluationResult.failure(EvaluationStatus.ARITHMETIC_ERROR)
+        }
+    }
+
+    private BigInteger expression(Map<String, BigInteger> scope) {
+        skipSpaces()
+        int start = position
+        while (position < text.length() && Character.isLetter(text.charAt(position))) {
+            position++
+        }
+        String word = text.substring(start, position).toUpperCase()
+        if (word.isEmpty()) {
+            return number()
+        }
+        if (position == text.length() || text.charAt(position) != (char) '(') {
+            if (!scope.containsKey(word)) {
+                throw new IllegalStateException("Unbound variable " + word + " in " + text)
+            }
+            return scope[word]
+        }
+        position++
+        if (word == "LET") {
+            skipSpaces()
+            int nameStart = position
+            while (Character.isLetter(text.charAt(position))) {
+                position++
+            }
+            String name = text.substring(nameStart, position).toUpperCase()
+            expect((char) ',')
+            BigInteger value = expression(scope)
+            expect((char) ',')
+            Map<String, BigInteger> inner = new HashMap<>(scope)
+            inner[name] = value
+            BigInteger body = expression(inner)
+            expect((char) ')')
+            return body
+        }
+        BigInteger first = expression(scope)
+        expect((char) ',')
+        BigInteger second = expression(scope)
+        expect((char) ')')
+        switch (word) {
+            case "ADD": return reduce(first.add(second))
+            case "SUB": return reduce(first.subtract(second))
+            case "MULT": return reduce(first.multiply(second))
+            case "DIV": return reduce(first.divide(second)) //truncated like the long division, throws on zero
+            default: throw new IllegalStateException("Unknown operation " + word + " in " + text)
+        }
+    }
+
+    private BigInteger number() {
+        int start = position
+        if (text.charAt(position) == (char) '-') {
+            position++
+        }
+        while (position < text.length() && Character.isDigit(text.charAt(position))) {
+            position++
+        }
+        reduce(new BigInteger(text.substring(start, position)))
+    }
+
+    private BigInteger reduce(BigInteger value) {
+        switch (mode) {
+            case NumericMode.WRAPPING:
+                return BigInteger.valueOf(value.longValue())
+            case NumericMode.CHECKED:
+                if (value < MIN_LONG || value > MAX_LONG) {
+                    throw new OverflowFailure()
+                }
+                return value
+            default:
+                return value
+        }
+    }
+
+    private void expect(char c) {
+        skipSpaces()
+        if (text.charAt(position) != c) {
+            throw new IllegalStateException("Expected " + c + " at " + position + " in " + text)
+        }
+        position++
+    }
+
+    private void skipSpaces() {
+        while (position < text.length() && text.charAt(position) == (char) ' ') {
+            position++
+        }
+    }
+
+    private static class OverflowFailure extends RuntimeException {
+    }
+}
@@ -0,0 +1,81 @@
+package org.juancampos.workload
+
+import org.juancampos.enums.NumericMode
+import org.juancampos.services.EvaluatorService
+import org.juancampos.services.IEvaluatorService
+import org.juancampos.utils.EvaluationResult
+import spock.lang.Specification
+import spock.lang.Unroll
+
+
+class WorkloadCrossCheckSpec extends Specification {
+    static final int EXPRESSIONS = 200
+
+    IEvaluatorService evaluator = EvaluatorService.getInstance()
+
+    def "Test the generator is deterministic for a seed"() {
+        given: "Two generators with the same seed and one with another seed"
+        WorkloadShape shape = WorkloadShape.named("letHeavy")
+        def first = new ExpressionGenerator(shape, 42)
+        def second = new ExpressionGenerator(shape, 42)
+        def other = new ExpressionGenerator(shape, 43)
+        when: "They generate expressions"
+        def expressions = (1..10).collect { first.next() }
+        then: "The same seed gives the same expressions"
+        expressions == (1..10).collect { second.next() }
+        expressions != (1..10).collect { other.next() }
+    }
+
+    @Unroll
+    def "Test the generator follows the knobs of the #shape shape"() {
+        given: "A generator"
+        def generator = new ExpressionGenerator(shape, 7)
+        expect: "Every expression has the size and at most the depth of the shape"
+        (1..20).every {
+            String expression = generator.next()
+            int operations = expression.findAll(/(?i)(add|sub|mult|div|let)\(/).size()
+            int depth = 0
+            int maxDepth = 0
+            expression.each {
+                if (it == '(') {
+                    maxDepth = Math.max(maxDepth, ++depth)
+                } else if (it == ')') {
+                    depth--
+                }
+            }
+            operations <= shape.size && maxDepth <= shape.maxDepth && (shape.maxDepth < shape.size || operations == shape.size)
+        }
+        where:
+        shape << WorkloadShape.CLASSES
+    }
+
+    def "Test the shadowing rate rebinds the variables in scope"() {
+        given: "Generators of lets only, that always or never shadow"
+        def shadowing = new ExpressionGenerator(new WorkloadShape(name: "shadowing", size: 30, maxDepth: 30, letDensity: 1, shadowingRate: 1), 1)
+        def fresh = new ExpressionGenerator(new WorkloadShape(name: "fresh", size: 30, maxDepth: 30, letDensity: 1, shadowingRate: 0), 1)
+        expect: "Shadowing reuses the names, otherwise every let has its own"
+        names(fresh.next()).unique().size() == 30
+        names(shadowing.next()).unique().size() < 30
+        and: "The reference evaluator resolves the innermost binding"
+        ReferenceEvaluator.evaluate("let(Q, 2, add(let(Q, mult(Q, 3), Q), Q))", NumericMode.WRAPPING).value == 8
+    }
+
+    private static List<String> names(String expression) {
+        expression.findAll(/let\((\w+),/) { it[1] }
+    }
+
+    @Unroll
+    def "Test the engine agrees with the reference evaluator on the #shape shape in the #mode mode"() {
+        given: "Seeded expressions of the shape"
+        def generator = new ExpressionGenerator(shape, shape.name.hashCode() + mode.ordinal())
+        expect: "The same status and value for every expression"
+        (1..EXPRESSIONS).each {
+            String expression = generator.next()
+            EvaluationResult expected = ReferenceEvaluator.evaluate(expression, mode)
+            EvaluationResult actual = evaluator.evaluate(expression, mode)
+            assert [actual.status, actual.bigValue] == [expected.status, expected.bigValue]: expression
+        }
+        where:
+        [shape, mode] << [WorkloadShape.CLASSES, NumericMode.values()].combinations()
+    }
+}
@@ -0,0 +1,40 @@
+package org.juancampos.workload
+
+/**
+ * The knobs of the ExpressionGenerator, and the shape classes the cross check and the regression suite run.
+ * - size: the number of operations and lets of an expression;
+ * - maxDepth: the deepest nesting of operations and lets;
+ * - letDensity: the probability that a node is a let rather than an operation;
+ * - shadowingRate: the probability that a let rebinds a variable already in scope instead of a new one;
+ * - operatorMix: the relative weights of add, sub, mult and div;
+ * - literalMagnitude: the largest absolute value of a literal.
+ */
+class WorkloadShape {
+    String name
+    int size
+    int maxDepth
+    double letDensity
+    double shadowingRate
+    Map<String, Integer> operatorMix = [add: 1, sub: 1, mult: 1, div: 1]
+    long literalMagnitude = 100
+
+    static final List<WorkloadShape> CLASSES = [
+            new WorkloadShape(name: "small", size: 4, maxDepth: 3, letDensity: 0.2, shadowingRate: 0.2),
+            new WorkloadShape(name: "flat", size: 64, maxDepth: 4, letDensity: 0, shadowingRate: 0),
+            new WorkloadShape(name: "deep", size: 150, maxDepth: 150, letDensity: 0.1, shadowingRate: 0.1),
+            new WorkloadShape(name: "letHeavy", size: 100, maxDepth: 30, letDensity: 0.5, shadowingRate: 0.4),
+            new WorkloadShape(name: "arithmetic", size: 60, maxDepth: 12, letDensity: 0.05, shadowingRate: 0,
+                    operatorMix: [add: 1, sub: 1, mult: 4, div: 3], literalMagnitude: 3_000_000_000L),
+            new WorkloadShape(name: "large", size: 2000, maxDepth: 40, letDensity: 0.1, shadowingRate: 0.2,
+                    operatorMix: [add: 4, sub: 4, mult: 1, div: 1])
+    ]
+
+    static WorkloadShape named(String name) {
+        CLASSES.find { it.name == name }
+    }
+
+    @Override
+    String toString() {
+        name
+    }
+}